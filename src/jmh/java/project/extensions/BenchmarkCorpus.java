@@ -0,0 +1,142 @@
+package project.extensions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Генератор наборов файлов для бенчмарков.
+ *
+ * <p>Все файлы создаются во временной директории с фиксированным зерном
+ * генератора случайных чисел, поэтому результаты запусков сопоставимы.</p>
+ */
+final class BenchmarkCorpus {
+
+    /**
+     * Заголовки основных типов встроенной базы сигнатур и один нераспознаваемый.
+     */
+    static final byte[][] HEADERS = {
+            {(byte) 0x89, 0x50, 0x4E, 0x47},
+            {0x50, 0x4B, 0x03, 0x04},
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0},
+            {0x52, 0x49, 0x46, 0x46, 0x00, 0x00, 0x00, 0x00, 0x57, 0x45, 0x42, 0x50},
+            {0x0D, 0x44, 0x4F, 0x43},
+            {0x47, 0x49, 0x46, 0x38},
+            {0x25, 0x50, 0x44, 0x46},
+            {0x52, 0x61, 0x72, 0x21},
+            {0x49, 0x44, 0x33, 0x03},
+            {0x00, 0x00, 0x00, 0x18, 0x66, 0x74, 0x79, 0x70},
+            {0x37, 0x7A, (byte) 0xBC, (byte) 0xAF},
+            {0x43, 0x44, 0x30, 0x30},
+            {0x42, 0x4D, 0x36, 0x00},
+            {0x00, 0x11, 0x22, 0x33},
+    };
+
+    private final Path root;
+    private final Random random = new Random(42);
+
+    private BenchmarkCorpus(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Создает пустой набор во временной директории.
+     *
+     * @return набор файлов
+     * @throws IOException если не удалось создать директорию
+     */
+    static BenchmarkCorpus create() throws IOException {
+        return new BenchmarkCorpus(Files.createTempDirectory("expander-bench"));
+    }
+
+    /**
+     * Создает небольшие файлы всех типов по кругу.
+     *
+     * @param count количество файлов
+     * @param size размер каждого файла в байтах (не меньше 16)
+     * @return пути к файлам
+     * @throws IOException если не удалось записать файл
+     */
+    List<Path> smallFiles(int count, int size) throws IOException {
+        List<Path> files = new ArrayList<>(count);
+        byte[] body = new byte[Math.max(size, 16)];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(body);
+            byte[] header = HEADERS[i % HEADERS.length];
+            System.arraycopy(header, 0, body, 0, header.length);
+            Path file = root.resolve("small-" + i);
+            Files.write(file, body);
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Создает ZIP-архив из случайных записей; при необходимости последней
+     * записью добавляется часть OOXML-документа.
+     *
+     * @param name имя файла
+     * @param entries количество случайных записей
+     * @param entrySize размер каждой записи в байтах
+     * @param lastEntry имя последней записи (например, "word/document.xml") или {@code null}
+     * @return путь к архиву
+     * @throws IOException если не удалось записать архив
+     */
+    Path zip(String name, int entries, int entrySize, String lastEntry) throws IOException {
+        Path file = root.resolve(name);
+        byte[] data = new byte[entrySize];
+        try (OutputStream output = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(output)) {
+            for (int i = 0; i < entries; i++) {
+                random.nextBytes(data);
+                zip.putNextEntry(new ZipEntry("media/image" + i + ".bin"));
+                zip.write(data);
+                zip.closeEntry();
+            }
+            if (lastEntry != null) {
+                zip.putNextEntry(new ZipEntry(lastEntry));
+                zip.write("<document/>".getBytes());
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Создает смешанный набор: небольшие файлы всех типов и несколько архивов.
+     *
+     * @param count количество небольших файлов
+     * @return пути к файлам в случайном порядке
+     * @throws IOException если не удалось записать файл
+     */
+    List<Path> mixed(int count) throws IOException {
+        List<Path> files = new ArrayList<>(smallFiles(count, 4096));
+        files.add(zip("mixed-docx", 16, 16 * 1024, "word/document.xml"));
+        files.add(zip("mixed-xlsx", 16, 16 * 1024, "xl/workbook.xml"));
+        files.add(zip("mixed-zip", 16, 16 * 1024, null));
+        Collections.shuffle(files, random);
+        return files;
+    }
+
+    /**
+     * Удаляет все созданные файлы.
+     *
+     * @throws IOException если не удалось удалить файл
+     */
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package project.extensions;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измеряет определение типа файлов на диске: чтение заголовка через
+ * {@link Expander#getExtensions()} и полное определение типа через
+ * {@link Expander#detectExtension(File)} для небольших и смешанных наборов.
+ * Результат выражается в файлах в секунду; с {@code -prof gc} видно
+ * количество байтов, выделяемых на одно определение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDetectionBenchmark {
+
+    private static final int FILES = 1000;
+
+    /**
+     * Небольшие файлы и три архива из {@link BenchmarkCorpus#mixed(int)}.
+     */
+    private static final int MIXED = FILES + 3;
+
+    @Param({"64", "65536"})
+    public int fileSize;
+
+    private BenchmarkCorpus corpus;
+    private List<Path> small;
+    private List<Path> mixed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Expander.init();
+        corpus = BenchmarkCorpus.create();
+        small = corpus.smallFiles(FILES, fileSize);
+        mixed = corpus.mixed(FILES);
+        new Position(small.get(0).getParent());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void getExtensions(Blackhole blackhole) {
+        for (Path path : small) {
+            Position.setFile(path.toString());
+            blackhole.consume(Expander.getExtensions());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void detectSmall(Blackhole blackhole) throws IOException {
+        for (Path path : small) {
+            blackhole.consume(Expander.detectExtension(path.toFile()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MIXED)
+    public void detectMixed(Blackhole blackhole) throws IOException {
+        for (Path path : mixed) {
+            blackhole.consume(Expander.detectExtension(path.toFile()));
+        }
+    }
+}
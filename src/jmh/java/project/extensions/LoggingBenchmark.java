@@ -0,0 +1,112 @@
+package project.extensions;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Измеряет стоимость журнала в пересчете на один обработанный файл: поиск
+ * сигнатуры в памяти и одно сообщение о результате. Режимы: {@code off} -
+ * без журнала, {@code sync} - синхронная запись в файл, как в основной
+ * конфигурации {@code log4j2.xml}, {@code async} - профиль
+ * {@code log4j2-batch.xml} с асинхронными логгерами. Журналы пишутся во
+ * временную директорию. Запуск в нескольких потоках ({@code -t 4}) показывает
+ * конкуренцию за синхронный файл.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    /**
+     * Количество заголовков в {@link BenchmarkCorpus#HEADERS}.
+     */
+    private static final int HEADERS = 14;
+
+    @Param({"off", "sync", "async"})
+    public String mode;
+
+    private Path directory;
+    private LoggerContext context;
+    private Logger logger;
+
+    @Setup
+    public void setUp() throws IOException, URISyntaxException {
+        if (BenchmarkCorpus.HEADERS.length != HEADERS) {
+            throw new IllegalStateException("update HEADERS to match the corpus");
+        }
+        Expander.init();
+        directory = Files.createTempDirectory("expander-logging");
+        System.setProperty("expander.log.dir", directory.toString());
+
+        context = (LoggerContext) LogManager.getContext(false);
+        switch (mode) {
+            case "off":
+                context.reconfigure(fileConfiguration(Level.OFF));
+                break;
+            case "sync":
+                context.reconfigure(fileConfiguration(Level.INFO));
+                break;
+            case "async":
+                context.setConfigLocation(getClass().getResource("/" + Launcher.BATCH_LOGGING).toURI());
+                break;
+            default:
+                throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+        logger = context.getLogger(Expander.class.getName());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.stop();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HEADERS)
+    public void detectAndLog(Blackhole blackhole) {
+        byte[][] headers = BenchmarkCorpus.HEADERS;
+        for (int i = 0; i < headers.length; i++) {
+            String type = Expander.lookup(headers[i], headers[i].length);
+            logger.info("file {} detected as {}", i, type);
+            blackhole.consume(type);
+        }
+    }
+
+    /**
+     * Создает синхронную конфигурацию с тем же файловым приложением, что и
+     * основная конфигурация, но с файлом во временной директории.
+     */
+    private Configuration fileConfiguration(Level level) {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.add(builder.newAppender("File", "File")
+                .addAttribute("fileName", directory.resolve("sync.log").toString())
+                .add(builder.newLayout("PatternLayout")
+                        .addAttribute("pattern", "%d{yyyy-MM-dd HH:mm:ss} [%t] %-5level %logger{36} - %msg%n")));
+        builder.add(builder.newRootLogger(level).add(builder.newAppenderRef("File")));
+        return builder.build(false);
+    }
+}
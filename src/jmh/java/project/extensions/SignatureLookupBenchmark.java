@@ -0,0 +1,59 @@
+package project.extensions;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает поиск сигнатуры в дереве {@link SignatureTrie} (с индексом
+ * коротких сигнатур {@link SignatureIndex} и без него) с прежним
+ * строковым поиском {@link Expander#legacyLookup(byte[])}. Заголовки уже
+ * находятся в памяти, поэтому измеряется только стоимость сопоставления.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureLookupBenchmark {
+
+    /**
+     * Количество заголовков в {@link BenchmarkCorpus#HEADERS}.
+     */
+    private static final int HEADERS = 14;
+
+    @Setup
+    public void setUp() {
+        if (BenchmarkCorpus.HEADERS.length != HEADERS) {
+            throw new IllegalStateException("update HEADERS to match the corpus");
+        }
+        Expander.init();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HEADERS)
+    public void trie(Blackhole blackhole) {
+        for (byte[] header : BenchmarkCorpus.HEADERS) {
+            blackhole.consume(Expander.lookup(header, header.length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HEADERS)
+    public void tree(Blackhole blackhole) {
+        SignatureTrie trie = Expander.signatures().trie();
+        for (byte[] header : BenchmarkCorpus.HEADERS) {
+            blackhole.consume(trie.matchTree(header, header.length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HEADERS)
+    public void legacy(Blackhole blackhole) {
+        for (byte[] header : BenchmarkCorpus.HEADERS) {
+            blackhole.consume(Expander.legacyLookup(header));
+        }
+    }
+}
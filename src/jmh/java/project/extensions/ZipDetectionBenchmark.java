@@ -0,0 +1,66 @@
+package project.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измеряет определение подтипа ZIP-архива {@link Expander#detectZipFileType(File)}
+ * на больших контейнерах: OOXML-документ с записью {@code word/} в конце
+ * архива и обычный ZIP, для которого просматриваются все записи. Для
+ * сравнения измеряется и последовательное чтение записей
+ * {@link Expander#detectZipFileTypeByStream(File)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipDetectionBenchmark {
+
+    /**
+     * Количество записей по 64 КиБ в архиве.
+     */
+    @Param({"16", "512"})
+    public int entries;
+
+    private BenchmarkCorpus corpus;
+    private File docxWordLast;
+    private File plainZip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Expander.init();
+        corpus = BenchmarkCorpus.create();
+        docxWordLast = corpus.zip("word-last", entries, 64 * 1024, "word/document.xml").toFile();
+        plainZip = corpus.zip("plain", entries, 64 * 1024, null).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public String docxWordLast() {
+        return Expander.detectZipFileType(docxWordLast);
+    }
+
+    @Benchmark
+    public String plainZip() {
+        return Expander.detectZipFileType(plainZip);
+    }
+
+    @Benchmark
+    public String docxWordLastByStream() {
+        return Expander.detectZipFileTypeByStream(docxWordLast);
+    }
+
+    @Benchmark
+    public String plainZipByStream() {
+        return Expander.detectZipFileTypeByStream(plainZip);
+    }
+}
@@ -2,7 +2,9 @@ module project.extensions {
     requires javafx.controls;
     requires javafx.fxml;
     requires org.apache.logging.log4j;
+    requires com.lmax.disruptor;
     requires java.logging;
+    requires java.management;
 
 
     opens project.extensions to javafx.fxml;
@@ -0,0 +1,37 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+/**
+ * Отчет о пакетном восстановлении расширений.
+ *
+ * @param files количество обработанных файлов
+ * @param renamed количество переименованных файлов (при пробном запуске - файлов,
+ *                которые были бы переименованы)
+ * @param unknown количество файлов с нераспознанным типом
+ * @param failed количество ошибок при обработке файлов и директорий
+ * @param duplicates количество файлов, совпавших по содержимому с уже
+ *                   восстановленными и пропущенных или замененных ссылками
+ * @param elapsedNanos длительность работы в наносекундах
+ */
+public record BatchReport(long files, long renamed, long unknown, long failed, long duplicates,
+                          long elapsedNanos) {
+
+    /**
+     * Возвращает скорость обработки.
+     *
+     * @return количество файлов в секунду
+     */
+    public double filesPerSecond() {
+        return elapsedNanos == 0 ? 0 : files * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("files: %d, renamed: %d, unknown: %d, failed: %d, duplicates: %d,"
+                        + " time: %.2f s, %.1f files/sec",
+                files, renamed, unknown, failed, duplicates, elapsedNanos / 1_000_000_000.0, filesPerSecond());
+    }
+}
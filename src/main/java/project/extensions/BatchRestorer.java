@@ -0,0 +1,395 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Класс, выполняющий пакетное восстановление расширений всех файлов в дереве
+ * каталогов.
+ *
+ * <p>Обход начинается с указанной директории (по умолчанию {@link Position#getPath()}).
+ * Каждая директория и каждая порция файлов обрабатывается отдельной задачей
+ * {@link ForkJoinPool} с ограниченным числом рабочих потоков. Ошибка при
+ * обработке одного файла не прерывает обработку остальных. С журналом
+ * ({@link #setJournal(RestoreJournal)}) прерванное восстановление можно
+ * продолжить: обработанные директории и файлы пропускаются.
+ *
+ */
+public class BatchRestorer implements Restorer {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(BatchRestorer.class);
+
+    /**
+     * Количество файлов в одной задаче.
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * Количество рабочих потоков.
+     */
+    private final int threads;
+
+    /**
+     * Признак пробного запуска, при котором файлы не переименовываются.
+     */
+    private boolean dryRun;
+
+    /**
+     * Получатель результатов обработки отдельных файлов.
+     */
+    private Consumer<RestoreEvent> listener = event -> { };
+
+    /**
+     * Признак отмены восстановления.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Переименование с проверкой имен по спискам директорий; создается на каждое восстановление.
+     */
+    private volatile Renamer renamer = new Renamer();
+
+    /**
+     * Журнал задачи или {@code null}.
+     */
+    private RestoreJournal journal;
+
+    /**
+     * Журнал текущего восстановления; при пробном запуске не используется.
+     */
+    private volatile RestoreJournal progress;
+
+    /**
+     * Счетчики обработанных файлов.
+     */
+    private final LongAdder files = new LongAdder();
+    private final LongAdder renamed = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Конструктор класса.
+     *
+     * @param threads количество рабочих потоков
+     * @throws IllegalArgumentException если количество потоков меньше единицы
+     */
+    public BatchRestorer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("the number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Включает или выключает пробный запуск. При пробном запуске типы файлов
+     * определяются, но файлы не переименовываются.
+     *
+     * @param dryRun {@code true} для пробного запуска
+     */
+    @Override
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Устанавливает получателя результатов обработки отдельных файлов.
+     * Получатель вызывается из рабочих потоков и должен быть потокобезопасным.
+     *
+     * @param listener получатель результатов
+     */
+    @Override
+    public void setListener(Consumer<RestoreEvent> listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Устанавливает журнал задачи: обработанные файлы и директории записываются
+     * в него, а записанные при прошлом запуске пропускаются. При пробном запуске
+     * журнал не используется.
+     *
+     * @param journal журнал или {@code null}, чтобы обрабатывать все файлы
+     */
+    public void setJournal(RestoreJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Отменяет восстановление. Файлы, обработка которых уже началась,
+     * обрабатываются до конца, остальные пропускаются. Отмена действует на все
+     * последующие вызовы {@link #restore(Path)} этого объекта.
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Проверяет, было ли восстановление отменено.
+     *
+     * @return {@code true}, если вызван {@link #cancel()}
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Восстанавливает расширения всех файлов в дереве текущей директории {@link Position#getPath()}.
+     *
+     * @return отчет о выполненной работе
+     */
+    public BatchReport restore() {
+        return restore(Position.getPath());
+    }
+
+    /**
+     * Восстанавливает расширения всех файлов в дереве указанной директории.
+     *
+     * @param root корневая директория
+     * @return отчет о выполненной работе
+     * @throws IllegalArgumentException если путь не является директорией
+     */
+    @Override
+    public BatchReport restore(Path root) {
+        if (root == null || !Files.isDirectory(root)) {
+            logger.error("batch restore: the directory was not found");
+            throw new IllegalArgumentException("directory not found: " + root);
+        }
+
+        if (journal != null && !dryRun && !journal.root().equals(root.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("the journal belongs to a job in " + journal.root());
+        }
+
+        reloadSignatures();
+
+        logger.info("batch restore started in {} with {} threads{}", root, threads, dryRun ? " (dry run)" : "");
+        files.reset();
+        renamed.reset();
+        unknown.reset();
+        failed.reset();
+        renamer = new Renamer();
+        progress = dryRun ? null : journal;
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new DirectoryTask(progress == null ? root : journal.root()));
+        } finally {
+            pool.shutdown();
+        }
+        if (progress != null && !cancelled) {
+            progress.finish();
+        }
+
+        BatchReport report = new BatchReport(files.sum(), renamed.sum(), unknown.sum(),
+                failed.sum(), 0, System.nanoTime() - start);
+        logger.info("batch restore {}: {}", cancelled ? "cancelled" : "finished", report);
+        return report;
+    }
+
+    /**
+     * Перечитывает базу сигнатур, если ее файл изменился. При ошибке остается
+     * прежняя база.
+     */
+    static void reloadSignatures() {
+        try {
+            if (Expander.reloadSignatures()) {
+                logger.info("batch restore: the signature database was reloaded");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("batch restore: failed to reload the signature database, keeping the previous one: {}",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Читает атрибуты записи директории одним вызовом {@code lstat}, не
+     * переходя по символическим ссылкам. В Windows атрибуты берутся из уже
+     * прочитанного списка директории без обращения к файловой системе.
+     *
+     * @param entry запись директории
+     * @return атрибуты или {@code null}, если запись исчезла или недоступна
+     */
+    static BasicFileAttributes attributes(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Обрабатывает один файл: определяет тип и переименовывает его.
+     *
+     * @param path путь к файлу
+     */
+    private void restoreFile(Path path) {
+        files.increment();
+        String extension = null;
+        try {
+            extension = Expander.detectExtension(path.toFile());
+            if (extension == null) {
+                unknown.increment();
+                record(path);
+                listener.accept(new RestoreEvent(path, null, null, RestoreEvent.Status.UNKNOWN, null));
+                return;
+            }
+            if (dryRun) {
+                renamed.increment();
+                Path target = Expander.targetFile(path.toFile(), extension).toPath();
+                listener.accept(new RestoreEvent(path, extension, target, RestoreEvent.Status.PLANNED, null));
+                return;
+            }
+            Path target = renamer.rename(path, extension);
+            renamed.increment();
+            record(target);
+            listener.accept(new RestoreEvent(path, extension, target, RestoreEvent.Status.RENAMED, null));
+        } catch (Exception e) {
+            failed.increment();
+            Metrics.FAILURES.increment();
+            record(path);
+            logger.warn("batch restore: failed to process {}: {}", path, e.getMessage());
+            listener.accept(new RestoreEvent(path, extension, null, RestoreEvent.Status.FAILED, e.getMessage()));
+        }
+    }
+
+    /**
+     * Записывает обработанный файл в журнал задачи, если он есть.
+     *
+     * @param path файл с именем после обработки
+     */
+    private void record(Path path) {
+        RestoreJournal current = progress;
+        if (current != null) {
+            current.processed(path);
+        }
+    }
+
+    /**
+     * Задача, обходящая одну директорию.
+     */
+    @SuppressWarnings("serial") // задачи не сериализуются
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+
+        /**
+         * Поддерево прочитано полностью и без отмены.
+         */
+        private boolean complete;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            RestoreJournal current = progress;
+            if (current != null && current.isCompleted(directory)) {
+                complete = true;
+                return;
+            }
+            if (cancelled) {
+                return;
+            }
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> chunk = new ArrayList<>(CHUNK_SIZE);
+            boolean listed = true;
+            // имена записей передаются переименованию, чтобы оно не читало директорию второй раз
+            Set<String> names = dryRun ? null : ConcurrentHashMap.newKeySet();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (names != null) {
+                        names.add(entry.getFileName().toString());
+                    }
+                    BasicFileAttributes attributes = attributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        tasks.add(new DirectoryTask(entry));
+                    } else if (attributes.isRegularFile() && (current == null || !current.isProcessed(entry))) {
+                        chunk.add(entry);
+                        if (chunk.size() == CHUNK_SIZE) {
+                            tasks.add(new FileChunkTask(chunk));
+                            chunk = new ArrayList<>(CHUNK_SIZE);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                listed = false;
+                failed.increment();
+                Metrics.FAILURES.increment();
+                logger.warn("batch restore: failed to read directory {}: {}", directory, e.getMessage());
+            }
+
+            if (!chunk.isEmpty()) {
+                tasks.add(new FileChunkTask(chunk));
+            }
+            if (names != null && listed) {
+                renamer.listed(directory, names);
+            }
+            invokeAll(tasks);
+            renamer.release(directory);
+            complete = listed && !cancelled;
+            for (RecursiveAction task : tasks) {
+                if (task instanceof DirectoryTask subdirectory && !subdirectory.complete) {
+                    complete = false;
+                }
+            }
+            // поддерево обработано полностью: при продолжении директория не читается
+            if (current != null && complete) {
+                current.completed(directory);
+            }
+        }
+    }
+
+    /**
+     * Задача, обрабатывающая порцию файлов одной директории.
+     */
+    @SuppressWarnings("serial") // задачи не сериализуются
+    private class FileChunkTask extends RecursiveAction {
+
+        private final List<Path> chunk;
+
+        FileChunkTask(List<Path> chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path path : chunk) {
+                if (cancelled) {
+                    return;
+                }
+                restoreFile(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Вывод строк в консоль графического интерфейса порциями.
+ *
+ * <p>Строки из любых потоков складываются в очередь, а в поток интерфейса
+ * передается не больше одной задачи вывода одновременно: задача забирает все
+ * накопившиеся строки и выводит их одним вызовом. Так тысячи строк, выведенных
+ * фоновой командой, превращаются в несколько обновлений экрана вместо тысяч.
+ * Если интерфейс не успевает выводить строки, фоновые потоки ждут, пока очередь
+ * не уменьшится, поэтому очередь не растет без ограничений. Строки из самого
+ * потока интерфейса выводятся сразу вместе с накопившимися: этот поток не может
+ * ждать вывода, который выполняет только он.
+ *
+ * <p>Класс не зависит от JavaFX: планировщик задач (например
+ * {@code Platform::runLater}), проверка потока интерфейса (например
+ * {@code Platform::isFxApplicationThread}) и получатель строк передаются в конструктор.
+ *
+ */
+final class BatchedOutput implements Consumer<String> {
+
+    /**
+     * Наибольшее количество строк в очереди, после которого фоновые потоки ждут вывода.
+     */
+    static final int MAX_PENDING = 4096;
+
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Consumer<Runnable> scheduler;
+    private final BooleanSupplier uiThread;
+    private final Consumer<List<String>> target;
+    private final Object drained = new Object();
+
+    /**
+     * Конструктор класса.
+     *
+     * @param scheduler планировщик задач потока интерфейса
+     * @param uiThread проверка, выполняется ли вызов в потоке интерфейса
+     * @param target получатель строк; вызывается в потоке интерфейса со всеми
+     *               строками, накопившимися с прошлого вызова
+     */
+    BatchedOutput(Consumer<Runnable> scheduler, BooleanSupplier uiThread, Consumer<List<String>> target) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.uiThread = Objects.requireNonNull(uiThread);
+        this.target = Objects.requireNonNull(target);
+    }
+
+    /**
+     * Добавляет строку в очередь вывода.
+     *
+     * @param line строка без перевода строки
+     */
+    @Override
+    public void accept(String line) {
+        if (uiThread.getAsBoolean()) {
+            queue.add(line);
+            pending.incrementAndGet();
+            drain();
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        if (pending.get() >= MAX_PENDING) {
+            synchronized (drained) {
+                while (pending.get() >= MAX_PENDING) {
+                    try {
+                        drained.wait(100);
+                    } catch (InterruptedException e) {
+                        thread.interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        queue.add(line);
+        pending.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.accept(this::drain);
+        }
+    }
+
+    /**
+     * Выводит все накопившиеся строки. Вызывается в потоке интерфейса.
+     */
+    void drain() {
+        scheduled.set(false);
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = queue.poll()) != null) {
+            lines.add(line);
+        }
+        if (!lines.isEmpty()) {
+            pending.addAndGet(-lines.size());
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+            target.accept(lines);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Определение конца файлов, найденных внутри образа диска.
+ *
+ * <p>Начало файла дает сигнатура, а конец определяется по структуре формата:
+ * по полям длины (RIFF, BMP, 7z), по цепочке блоков до завершающего
+ * (PNG, GIF, JPEG) или по завершающей записи (ZIP, PDF). Для каждого формата
+ * проверяется согласованность структуры, поэтому случайное совпадение
+ * сигнатуры внутри других данных обычно отбрасывается после чтения нескольких
+ * байтов. Форматы без надежного признака конца (mp3, gz и другие) не вырезаются.
+ *
+ */
+final class CarvedFormats {
+
+    /**
+     * Способ определения конца файла.
+     */
+    private interface End {
+
+        /**
+         * Определяет конец файла.
+         *
+         * @param blob образ
+         * @param start позиция начала файла
+         * @param limit позиция, за которую файл не может выходить
+         * @return позиция за последним байтом файла или -1, если структура не распознана
+         */
+        long find(MappedBlob blob, long start, long limit);
+    }
+
+    private static final byte[] PDF_EOF = ascii("%%EOF");
+    private static final byte[] ZIP_END = {0x50, 0x4B, 0x05, 0x06};
+
+    /**
+     * Форматы, которые можно вырезать, по расширению из базы сигнатур.
+     */
+    private static final Map<String, End> FORMATS = Map.of(
+            "jpg", CarvedFormats::jpeg,
+            "png", CarvedFormats::png,
+            "gif", CarvedFormats::gif,
+            "bmp", CarvedFormats::bmp,
+            "pdf", CarvedFormats::pdf,
+            "zip", CarvedFormats::zip,
+            "7z", CarvedFormats::sevenZip,
+            "wav", CarvedFormats::riff,
+            "avi", CarvedFormats::riff,
+            "webp", CarvedFormats::riff);
+
+    private CarvedFormats() {
+    }
+
+    /**
+     * Проверяет, можно ли вырезать файлы указанного типа.
+     *
+     * @param type расширение
+     * @return {@code true}, если конец файла этого типа определяется
+     */
+    static boolean supports(String type) {
+        return type != null && FORMATS.containsKey(type);
+    }
+
+    /**
+     * Определяет конец файла указанного типа.
+     *
+     * @param type расширение
+     * @param blob образ
+     * @param start позиция начала файла
+     * @param limit позиция, за которую файл не может выходить
+     * @return позиция за последним байтом файла или -1
+     */
+    static long end(String type, MappedBlob blob, long start, long limit) {
+        End end = FORMATS.get(type);
+        if (end == null) {
+            return -1;
+        }
+        long result = end.find(blob, start, limit);
+        return result > start && result <= limit ? result : -1;
+    }
+
+    /**
+     * JPEG: сегменты с длиной до начала сжатых данных, затем поиск маркера,
+     * отличного от заполнения {@code FF00} и маркеров перезапуска; после
+     * сжатых данных могут идти новые сегменты (прогрессивный JPEG).
+     */
+    private static long jpeg(MappedBlob blob, long start, long limit) {
+        long position = start + 2;
+        while (position < limit) {
+            if (blob.get(position) != 0xFF) {
+                return -1;
+            }
+            int marker = blob.get(position + 1);
+            if (marker == 0xFF) {
+                position++;
+                continue;
+            }
+            if (marker == 0xD9) {
+                return position + 2;
+            }
+            if (marker < 0 || marker == 0x00 || marker == 0xD8) {
+                return -1;
+            }
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7) {
+                position += 2;
+                continue;
+            }
+            int length = blob.u16be(position + 2);
+            if (length < 2) {
+                return -1;
+            }
+            position += 2 + length;
+            if (marker != 0xDA) {
+                continue;
+            }
+            // сжатые данные до следующего маркера
+            while (true) {
+                if (position + 1 >= limit) {
+                    return -1;
+                }
+                if (blob.get(position) != 0xFF) {
+                    position++;
+                    continue;
+                }
+                int next = blob.get(position + 1);
+                if (next == 0x00 || next >= 0xD0 && next <= 0xD7) {
+                    position += 2;
+                } else if (next == 0xFF) {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * PNG: цепочка блоков "длина, тип, данные, CRC" до блока {@code IEND}.
+     */
+    private static long png(MappedBlob blob, long start, long limit) {
+        long position = start + 8;
+        while (position + 12 <= limit) {
+            long length = blob.u32be(position);
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                return -1;
+            }
+            for (int i = 4; i < 8; i++) {
+                int c = blob.get(position + i);
+                if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z')) {
+                    return -1;
+                }
+            }
+            boolean end = blob.get(position + 4) == 'I' && blob.get(position + 5) == 'E'
+                    && blob.get(position + 6) == 'N' && blob.get(position + 7) == 'D';
+            position += 12 + length;
+            if (end) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * GIF: заголовок, палитра и блоки изображений и расширений до завершающего байта {@code 3B}.
+     */
+    private static long gif(MappedBlob blob, long start, long limit) {
+        int version = blob.get(start + 4);
+        if (version != '7' && version != '9' || blob.get(start + 5) != 'a') {
+            return -1;
+        }
+        int flags = blob.get(start + 10);
+        long position = start + 13 + palette(flags);
+        while (position < limit) {
+            int block = blob.get(position);
+            if (block == 0x3B) {
+                return position + 1;
+            } else if (block == 0x21) {
+                position = subBlocks(blob, position + 2, limit);
+            } else if (block == 0x2C) {
+                position += 10 + palette(blob.get(position + 9)) + 1;
+                position = subBlocks(blob, position, limit);
+            } else {
+                return -1;
+            }
+            if (position < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int palette(int flags) {
+        return flags >= 0 && (flags & 0x80) != 0 ? 3 * (2 << (flags & 7)) : 0;
+    }
+
+    private static long subBlocks(MappedBlob blob, long position, long limit) {
+        while (position < limit) {
+            int size = blob.get(position);
+            if (size < 0) {
+                return -1;
+            }
+            position += size + 1;
+            if (size == 0) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * BMP: размер файла в заголовке, проверенный по нулевым зарезервированным
+     * полям, смещению данных и размеру второго заголовка.
+     */
+    private static long bmp(MappedBlob blob, long start, long limit) {
+        long size = blob.u32le(start + 2);
+        long offset = blob.u32le(start + 10);
+        long header = blob.u32le(start + 14);
+        if (size < 26 || blob.u32le(start + 6) != 0 || offset < 26 || offset >= size) {
+            return -1;
+        }
+        if (header != 12 && header != 40 && header != 52 && header != 56 && header != 108 && header != 124) {
+            return -1;
+        }
+        return start + size;
+    }
+
+    /**
+     * RIFF (wav, avi, webp): размер после идентификатора и выравнивание до четного байта.
+     */
+    private static long riff(MappedBlob blob, long start, long limit) {
+        long size = blob.u32le(start + 4);
+        if (size < 4) {
+            return -1;
+        }
+        return start + 8 + size + (size & 1);
+    }
+
+    /**
+     * 7z: смещение и размер заголовка в конце архива из начального заголовка.
+     */
+    private static long sevenZip(MappedBlob blob, long start, long limit) {
+        if (blob.get(start + 4) != 0x27 || blob.get(start + 5) != 0x1C) {
+            return -1;
+        }
+        long offset = blob.u64le(start + 12);
+        long size = blob.u64le(start + 20);
+        if (offset < 0 || size <= 0 || offset > limit - start || size > limit - start) {
+            return -1;
+        }
+        return start + 32 + offset + size;
+    }
+
+    /**
+     * ZIP: запись конца центрального каталога, у которой смещение и размер
+     * каталога согласуются с ее позицией (записи вложенных архивов с другим
+     * смещением пропускаются).
+     */
+    private static long zip(MappedBlob blob, long start, long limit) {
+        long position = start;
+        while ((position = blob.indexOf(ZIP_END, position, limit)) >= 0) {
+            long size = blob.u32le(position + 12);
+            long offset = blob.u32le(position + 16);
+            int comment = blob.u16le(position + 20);
+            boolean zip64 = size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL;
+            if (comment >= 0 && (zip64 || start + offset + size == position)) {
+                return position + 22 + comment;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * PDF: маркер {@code %%EOF}; если за ним следует продолжение документа
+     * (объекты или таблица ссылок инкрементального обновления), ищется следующий маркер.
+     */
+    private static long pdf(MappedBlob blob, long start, long limit) {
+        long end = -1;
+        long position = start;
+        while ((position = blob.indexOf(PDF_EOF, position, limit)) >= 0) {
+            end = position + PDF_EOF.length;
+            while (end < limit && (blob.get(end) == '\r' || blob.get(end) == '\n')) {
+                end++;
+            }
+            int next = blob.get(end);
+            boolean continued = next >= '0' && next <= '9' || next == 'x' && blob.get(end + 1) == 'r';
+            if (!continued) {
+                return end;
+            }
+            position = end;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Извлечение файлов, записанных подряд внутри образа диска или другого
+ * большого файла.
+ *
+ * <p>Образ просматривается один раз, последовательно, окнами, отображаемыми
+ * в память ({@link MappedBlob}). Каждый байт проходит через автомат
+ * {@link PatternScanner}, построенный по начальным байтам сигнатур тех
+ * форматов, конец которых можно определить ({@link CarvedFormats}). Найденное
+ * начало проверяется полным деревом сигнатур, как заголовок обычного файла,
+ * затем по структуре формата определяется конец, и файл копируется в выходную
+ * директорию с именем из смещения и расширением, уточненным
+ * {@link Expander#detectExtension(java.io.File)} (например, docx вместо zip).
+ * После извлеченного файла просмотр продолжается с его конца, поэтому файлы,
+ * вложенные в уже извлеченные, отдельно не извлекаются.
+ *
+ * <p>Максимальный размер извлекаемого файла задается системным свойством
+ * {@code expander.carve.max} (по умолчанию 1 ГиБ).
+ *
+ */
+public final class Carver {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(Carver.class);
+
+    /**
+     * Максимальный размер извлекаемого файла.
+     */
+    private static final long MAX_LENGTH = Long.getLong("expander.carve.max", 1L << 30);
+
+    /**
+     * Минимальная длина начала сигнатуры, по которому ищутся кандидаты.
+     */
+    private static final int MIN_ANCHOR = 2;
+
+    /**
+     * Количество недавно проверенных позиций, которые запоминаются, чтобы не
+     * проверять одну позицию несколько раз (образцы разной длины с одним началом
+     * находятся на разных байтах).
+     */
+    private static final int RECENT = 64;
+
+    /**
+     * Извлеченный файл.
+     *
+     * @param offset смещение начала в образе
+     * @param length длина в байтах
+     * @param type расширение
+     * @param file созданный файл или {@code null} в режиме проверки
+     */
+    public record Extracted(long offset, long length, String type, Path file) {
+    }
+
+    /**
+     * Итоги просмотра образа.
+     *
+     * @param bytes размер образа
+     * @param candidates количество проверенных совпадений начала сигнатуры
+     * @param extracted количество извлеченных файлов
+     * @param failed количество файлов, которые не удалось записать
+     * @param elapsedNanos время работы
+     */
+    public record Report(long bytes, long candidates, long extracted, long failed, long elapsedNanos) {
+
+        /**
+         * Возвращает скорость просмотра.
+         *
+         * @return мегабайт в секунду
+         */
+        public double megabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes / 1e6 / (elapsedNanos / 1e9);
+        }
+    }
+
+    private boolean dryRun;
+    private long maxLength = MAX_LENGTH;
+    private Consumer<Extracted> listener = extracted -> {
+    };
+    private volatile boolean cancelled;
+
+    /**
+     * Включает режим проверки: файлы находятся, но не записываются.
+     *
+     * @param dryRun {@code true}, чтобы не записывать файлы
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Задает максимальный размер извлекаемого файла вместо
+     * {@code expander.carve.max}.
+     *
+     * @param maxLength размер в байтах
+     */
+    void setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Задает получателя извлеченных файлов. Вызывается из потока, вызвавшего
+     * {@link #carve(Path, Path)}.
+     *
+     * @param listener получатель
+     */
+    public void setListener(Consumer<Extracted> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Прерывает просмотр. Может вызываться из любого потока; просмотр
+     * останавливается на границе окна.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Извлекает файлы из образа.
+     *
+     * @param image образ
+     * @param output директория для извлеченных файлов; создается при необходимости
+     * @return итоги просмотра
+     * @throws IOException если образ не удалось прочитать или директорию создать
+     */
+    public Report carve(Path image, Path output) throws IOException {
+        if (!Files.isRegularFile(image)) {
+            throw new NoSuchFileException(image.toString());
+        }
+        if (!dryRun) {
+            Files.createDirectories(output);
+        }
+        long started = System.nanoTime();
+        SignatureRegistry registry = Expander.signatures();
+        SignatureTrie trie = registry.trie();
+        List<byte[]> anchors = anchors(registry);
+        logger.info("carving {} with {} anchor patterns", image, anchors.size());
+
+        long candidates = 0;
+        long extracted = 0;
+        long failed = 0;
+        long size;
+        try (MappedBlob blob = new MappedBlob(image)) {
+            size = blob.size();
+            if (anchors.isEmpty()) {
+                return new Report(size, 0, 0, 0, System.nanoTime() - started);
+            }
+            PatternScanner scanner = PatternScanner.compile(anchors);
+            byte[] header = new byte[trie.maxLength()];
+            long[] recent = new long[RECENT];
+            Arrays.fill(recent, -1);
+
+            long position = 0;
+            int state = PatternScanner.start();
+            scan:
+            while (position < size && !cancelled) {
+                MappedByteBuffer window = blob.map(position);
+                int limit = window.limit();
+                for (int i = 0; i < limit; i++) {
+                    state = scanner.next(state, window.get(i) & 0xFF);
+                    int[] lengths = scanner.matches(state);
+                    if (lengths == null) {
+                        continue;
+                    }
+                    for (int length : lengths) {
+                        long start = position + i - length + 1;
+                        int slot = (int) (start % RECENT);
+                        if (recent[slot] == start) {
+                            continue;
+                        }
+                        recent[slot] = start;
+                        candidates++;
+
+                        String type = trie.match(header, blob.read(start, header));
+                        if (!CarvedFormats.supports(type)) {
+                            continue;
+                        }
+                        long end = CarvedFormats.end(type, blob, start, Math.min(size, start + maxLength));
+                        if (end < 0) {
+                            continue;
+                        }
+                        try {
+                            listener.accept(extract(blob, start, end, type, output));
+                            extracted++;
+                        } catch (IOException e) {
+                            failed++;
+                            logger.warn("failed to extract {} bytes at offset {}: {}", end - start, start,
+                                    e.getMessage());
+                        }
+                        // файлы внутри извлеченного не ищутся
+                        position = end;
+                        state = PatternScanner.start();
+                        continue scan;
+                    }
+                }
+                position += limit;
+            }
+        }
+        Report report = new Report(size, candidates, extracted, failed, System.nanoTime() - started);
+        logger.info("carved {}: {} files from {} candidates, {} failed{}", image, extracted, candidates, failed,
+                cancelled ? ", cancelled" : "");
+        return report;
+    }
+
+    /**
+     * Выбирает образцы для поиска: начальные байты сигнатур, проверяемые
+     * полностью (без масок), у форматов, которые можно извлечь.
+     *
+     * @param registry набор сигнатур
+     * @return образцы
+     */
+    private static List<byte[]> anchors(SignatureRegistry registry) {
+        List<byte[]> anchors = new ArrayList<>();
+        SignatureDatabase database = registry.database();
+        if (database == null) {
+            return anchors;
+        }
+        for (Signature signature : database.signatures()) {
+            if (!CarvedFormats.supports(signature.extension())) {
+                continue;
+            }
+            int length = 0;
+            while (length < signature.length() && signature.mask()[length] == (byte) 0xFF) {
+                length++;
+            }
+            if (length >= MIN_ANCHOR) {
+                anchors.add(Arrays.copyOf(signature.pattern(), length));
+            }
+        }
+        return anchors;
+    }
+
+    /**
+     * Копирует найденный файл в выходную директорию.
+     *
+     * @param blob образ
+     * @param start смещение начала
+     * @param end смещение за последним байтом
+     * @param type расширение по сигнатуре
+     * @param output выходная директория
+     * @return извлеченный файл
+     * @throws IOException если файл не удалось записать
+     */
+    private Extracted extract(MappedBlob blob, long start, long end, String type, Path output) throws IOException {
+        long length = end - start;
+        if (dryRun) {
+            return new Extracted(start, length, type, null);
+        }
+        String name = String.format("%012x", start);
+        Path file = output.resolve(name + "." + type);
+        try (FileChannel target = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < length) {
+                long count = blob.channel().transferTo(start + copied, length - copied, target);
+                if (count <= 0) {
+                    throw new IOException("unexpected end of the image");
+                }
+                copied += count;
+            }
+        }
+
+        // контейнеры уточняются по содержимому: zip может оказаться docx или jar
+        String detected = Expander.detectExtension(file.toFile());
+        if (detected != null && !detected.equals(type)) {
+            Path refined = output.resolve(name + "." + detected);
+            Files.move(file, refined);
+            file = refined;
+            type = detected;
+        }
+        logger.debug("extracted {} bytes at offset {} as {}", length, start, file);
+        return new Extracted(start, length, type, file);
+    }
+}
@@ -0,0 +1,739 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Консольный режим приложения без графического интерфейса.
+ *
+ * <p>Класс не использует JavaFX, поэтому работает на серверах без дисплея и
+ * запускается без инициализации графической подсистемы. Результаты выводятся
+ * в стандартный поток вывода построчно в формате JSON (одна запись на строку),
+ * журнал событий - в поток ошибок.
+ *
+ * <p>Поддерживаемые команды:
+ * <ul>
+ *     <li>restore &lt;dir&gt; [--threads N] [--dry-run] [--pipeline] [--plan &lt;manifest&gt;]
+ *     [--duplicates skip|link] [--journal &lt;file&gt;] - пакетное восстановление расширений;
+ *     с {@code --pipeline} чтение, сопоставление и переименование выполняются
+ *     отдельными стадиями ({@link RestorePipeline}), а N задает количество потоков чтения;
+ *     с {@code --plan <manifest>} файлы не переименовываются, а план записывается в манифест;
+ *     с {@code --duplicates skip|link} (включает {@code --pipeline}) файлы с одинаковым
+ *     содержимым восстанавливаются один раз, а повторы пропускаются или заменяются жесткими ссылками;
+ *     с {@code --journal <file>} ход восстановления записывается в журнал ({@link RestoreJournal}),
+ *     и прерванное восстановление продолжается с того же места при повторном запуске</li>
+ *     <li>apply &lt;manifest&gt; [--threads N] - выполнение переименований из манифеста ({@link RenameManifest})</li>
+ *     <li>undo &lt;manifest&gt; [--threads N] - отмена переименований из манифеста</li>
+ *     <li>detect &lt;file&gt;... - определение типа файлов без переименования</li>
+ *     <li>watch &lt;dir&gt; [--dry-run] [--quiet MS] - восстановление расширений файлов директории по
+ *     мере их появления ({@link DirectoryWatcher}) до завершения процесса</li>
+ *     <li>carve &lt;image&gt; &lt;dir&gt; [--dry-run] - извлечение файлов, записанных подряд
+ *     внутри образа диска ({@link Carver})</li>
+ *     <li>help - вывод справки</li>
+ * </ul>
+ * Для всех команд можно указать {@code --signatures <file>}, чтобы использовать
+ * внешнюю базу сигнатур вместо встроенной, и {@code --cache <file>}, чтобы
+ * сохранять результаты определения типов между запусками, {@code --stats},
+ * чтобы по окончании вывести в поток ошибок показатели {@link Metrics}, и
+ * {@code --jmx}, чтобы показатели были доступны через JMX во время работы.
+ *
+ */
+public final class Cli {
+
+    /**
+     * Код завершения при успешной работе.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * Код завершения, если часть файлов обработать не удалось.
+     */
+    public static final int EXIT_FAILURES = 1;
+
+    /**
+     * Код завершения при неверных аргументах.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    private Cli() {
+    }
+
+    /**
+     * Проверяет, является ли первый аргумент командой консольного режима.
+     *
+     * @param args аргументы командной строки
+     * @return {@code true}, если нужно запустить консольный режим
+     */
+    public static boolean accepts(String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        switch (args[0]) {
+            case "restore":
+            case "apply":
+            case "undo":
+            case "detect":
+            case "carve":
+            case "watch":
+            case "help":
+            case "--help":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Основной метод консольного режима.
+     *
+     * @param args аргументы командной строки
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Выполняет команду консольного режима.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @return код завершения
+     */
+    public static int run(String[] args, PrintStream out) {
+        if (args.length == 0) {
+            usage(System.err);
+            return EXIT_USAGE;
+        }
+        // справка и неизвестные команды не требуют загрузки базы сигнатур
+        if (args[0].equals("help") || args[0].equals("--help")) {
+            usage(out);
+            return EXIT_OK;
+        }
+        if (!accepts(args)) {
+            System.err.println("unknown command: " + args[0]);
+            usage(System.err);
+            return EXIT_USAGE;
+        }
+
+        Setup setup = null;
+        boolean stats = List.of(args).contains("--stats");
+        boolean jmx = List.of(args).contains("--jmx");
+        if (stats || jmx) {
+            List<String> rest = new ArrayList<>(List.of(args));
+            rest.remove("--stats");
+            rest.remove("--jmx");
+            args = rest.toArray(new String[0]);
+        }
+        // регистрация в JMX загружает подсистему управления, поэтому выполняется только по запросу
+        if (jmx) {
+            Metrics.registerMBean();
+        }
+        try {
+            String signatures = option(args, "--signatures");
+            if (signatures != null) {
+                args = remove(args, "--signatures");
+            }
+            String cacheFile = option(args, "--cache");
+            if (cacheFile != null) {
+                args = remove(args, "--cache");
+            }
+            setup = new Setup(signatures, cacheFile);
+            switch (args[0]) {
+                case "restore":
+                    return restore(args, out, setup);
+                case "apply":
+                    return manifest(args, out, false);
+                case "undo":
+                    return manifest(args, out, true);
+                case "detect":
+                    return detect(args, out, setup);
+                case "carve":
+                    return carve(args, out, setup);
+                default:
+                    return watch(args, out, setup);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            return EXIT_USAGE;
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            return EXIT_USAGE;
+        } finally {
+            if (setup != null) {
+                setup.close();
+            }
+            if (stats) {
+                System.err.println(Metrics.dump());
+            }
+        }
+    }
+
+    /**
+     * База сигнатур и кэш, указанные в командной строке. Загружаются только
+     * командами, которые определяют типы файлов, и только после разбора их
+     * аргументов, поэтому справка и ошибки в аргументах выводятся без загрузки.
+     */
+    private static final class Setup {
+
+        private final String signatures;
+        private final String cacheFile;
+        private DetectionCache cache;
+
+        Setup(String signatures, String cacheFile) {
+            this.signatures = signatures;
+            this.cacheFile = cacheFile;
+        }
+
+        /**
+         * Загружает базу сигнатур (внешнюю, если она указана, иначе встроенную)
+         * и открывает кэш, если он указан.
+         *
+         * @throws IOException если файл базы или кэша не прочитан; сообщение называет файл
+         */
+        void load() throws IOException {
+            try {
+                if (signatures == null) {
+                    Expander.init();
+                } else {
+                    Expander.loadSignatures(Paths.get(signatures));
+                }
+            } catch (IOException e) {
+                throw new IOException("failed to read the signature database: " + e.getMessage(), e);
+            }
+            if (cacheFile != null) {
+                try {
+                    cache = Expander.setCache(Paths.get(cacheFile));
+                } catch (IOException e) {
+                    throw new IOException("failed to open the cache: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        /**
+         * Отключает и закрывает кэш, если он был открыт.
+         */
+        void close() {
+            if (cache != null) {
+                closeCache(cache);
+            }
+        }
+    }
+
+    /**
+     * Отключает и закрывает кэш результатов определения.
+     *
+     * @param cache открытый кэш
+     */
+    private static void closeCache(DetectionCache cache) {
+        try {
+            Expander.setCache(null);
+            cache.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to write the cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает значение параметра командной строки.
+     *
+     * @param args аргументы командной строки
+     * @param name имя параметра
+     * @return значение или {@code null}, если параметр не указан
+     * @throws IllegalArgumentException если значение не указано
+     */
+    private static String option(String[] args, String name) {
+        int index = List.of(args).indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        if (index + 1 == args.length) {
+            throw new IllegalArgumentException(name + " requires a file");
+        }
+        return args[index + 1];
+    }
+
+    /**
+     * Удаляет параметр командной строки вместе с его значением.
+     *
+     * @param args аргументы командной строки
+     * @param name имя параметра
+     * @return аргументы без параметра
+     */
+    private static String[] remove(String[] args, String name) {
+        List<String> rest = new ArrayList<>(List.of(args));
+        int index = rest.indexOf(name);
+        rest.subList(index, index + 2).clear();
+        return rest.toArray(new String[0]);
+    }
+
+    /**
+     * Выполняет команду restore.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @param setup база сигнатур и кэш
+     * @return код завершения
+     * @throws IOException если базу сигнатур или кэш не удалось прочитать
+     */
+    private static int restore(String[] args, PrintStream out, Setup setup) throws IOException {
+        Path root = null;
+        Integer threads = null;
+        boolean dryRun = false;
+        boolean pipeline = false;
+        Path plan = null;
+        Path journalFile = null;
+        RestorePipeline.Duplicates duplicates = RestorePipeline.Duplicates.KEEP;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = threads(args, ++i);
+                    break;
+                case "--dry-run":
+                    dryRun = true;
+                    break;
+                case "--pipeline":
+                    pipeline = true;
+                    break;
+                case "--plan":
+                    if (++i == args.length) {
+                        throw new IllegalArgumentException("--plan requires a file");
+                    }
+                    plan = Paths.get(args[i]);
+                    break;
+                case "--journal":
+                    if (++i == args.length) {
+                        throw new IllegalArgumentException("--journal requires a file");
+                    }
+                    journalFile = Paths.get(args[i]);
+                    break;
+                case "--duplicates":
+                    duplicates = duplicates(args, ++i);
+                    pipeline = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--") || root != null) {
+                        throw new IllegalArgumentException("unexpected argument: " + args[i]);
+                    }
+                    root = Paths.get(args[i]);
+                    break;
+            }
+        }
+        if (root == null) {
+            throw new IllegalArgumentException("restore requires a directory");
+        }
+        if (journalFile != null && (pipeline || dryRun || plan != null)) {
+            throw new IllegalArgumentException("--journal cannot be combined with --pipeline, --duplicates,"
+                    + " --dry-run or --plan");
+        }
+        setup.load();
+
+        Restorer restorer;
+        if (pipeline) {
+            RestorePipeline stages = new RestorePipeline(threads == null ? RestorePipeline.DEFAULT_READERS : threads);
+            stages.setDuplicates(duplicates);
+            restorer = stages;
+        } else {
+            restorer = new BatchRestorer(threads == null ? Runtime.getRuntime().availableProcessors() : threads);
+        }
+        root = root.toAbsolutePath().normalize();
+        restorer.setDryRun(dryRun || plan != null);
+        Consumer<RestoreEvent> print = event -> out.println(toJson(event));
+        BatchReport report;
+        if (journalFile != null) {
+            try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+                if (journal.isResumed()) {
+                    out.println("{\"status\":\"resumed\",\"directories\":" + journal.resumedDirectories()
+                            + ",\"files\":" + journal.resumedFiles() + "}");
+                }
+                ((BatchRestorer) restorer).setJournal(journal);
+                restorer.setListener(print);
+                report = restorer.restore(root);
+            } catch (IOException e) {
+                out.flush();
+                System.err.println("error: failed to write the journal: " + e.getMessage());
+                return EXIT_FAILURES;
+            }
+        } else if (plan == null) {
+            restorer.setListener(print);
+            report = restorer.restore(root);
+        } else {
+            try (RenameManifest.Writer manifest = RenameManifest.writer(plan, root)) {
+                restorer.setListener(print.andThen(manifest));
+                report = restorer.restore(root);
+            } catch (IOException e) {
+                out.flush();
+                System.err.println("error: failed to write the manifest: " + e.getMessage());
+                return EXIT_FAILURES;
+            }
+        }
+        out.println(toJson(report));
+        out.flush();
+
+        return report.failed() == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Читает значение параметра {@code --duplicates}.
+     *
+     * @param args аргументы командной строки
+     * @param index позиция значения
+     * @return обработка повторов
+     * @throws IllegalArgumentException если значение не указано или неизвестно
+     */
+    private static RestorePipeline.Duplicates duplicates(String[] args, int index) {
+        if (index == args.length) {
+            throw new IllegalArgumentException("--duplicates requires skip or link");
+        }
+        switch (args[index]) {
+            case "skip":
+                return RestorePipeline.Duplicates.SKIP;
+            case "link":
+                return RestorePipeline.Duplicates.LINK;
+            default:
+                throw new IllegalArgumentException("invalid duplicates mode: " + args[index]);
+        }
+    }
+
+    /**
+     * Выполняет команды apply и undo.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @param undo {@code true} для отмены переименований
+     * @return код завершения
+     */
+    private static int manifest(String[] args, PrintStream out, boolean undo) {
+        Path manifest = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                threads = threads(args, ++i);
+            } else if (args[i].startsWith("--") || manifest != null) {
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+            } else {
+                manifest = Paths.get(args[i]);
+            }
+        }
+        if (manifest == null) {
+            throw new IllegalArgumentException(args[0] + " requires a manifest file");
+        }
+
+        Consumer<RestoreEvent> print = event -> out.println(toJson(event));
+        RenameManifest.Report report;
+        try {
+            report = undo
+                    ? RenameManifest.undo(manifest, threads, print)
+                    : RenameManifest.apply(manifest, threads, print);
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("error: failed to read the manifest: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+        out.println(String.format(Locale.ROOT,
+                "{\"status\":\"summary\",\"entries\":%d,\"renamed\":%d,\"skipped\":%d,\"failed\":%d,"
+                        + "\"seconds\":%.3f}",
+                report.entries(), report.renamed(), report.skipped(), report.failed(),
+                report.elapsedNanos() / 1_000_000_000.0));
+        out.flush();
+
+        return report.failed() == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Читает значение параметра {@code --threads}.
+     *
+     * @param args аргументы командной строки
+     * @param index позиция значения
+     * @return количество потоков
+     * @throws IllegalArgumentException если значение не указано или не является числом
+     */
+    private static int threads(String[] args, int index) {
+        if (index == args.length) {
+            throw new IllegalArgumentException("--threads requires a value");
+        }
+        try {
+            return Integer.parseInt(args[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number of threads: " + args[index]);
+        }
+    }
+
+    /**
+     * Выполняет команду detect.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @param setup база сигнатур и кэш
+     * @return код завершения
+     * @throws IOException если базу сигнатур или кэш не удалось прочитать
+     */
+    private static int detect(String[] args, PrintStream out, Setup setup) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("detect requires at least one file");
+        }
+        setup.load();
+
+        int result = EXIT_OK;
+        for (int i = 1; i < args.length; i++) {
+            Path file = Paths.get(args[i]).toAbsolutePath().normalize();
+            try {
+                if (!Files.isRegularFile(file)) {
+                    throw new IOException("file not found");
+                }
+                String type = Expander.detectExtension(file.toFile());
+                out.println("{\"file\":" + quote(file.toString()) + ",\"type\":" + quote(type) + "}");
+            } catch (IOException e) {
+                out.println("{\"file\":" + quote(file.toString()) + ",\"error\":" + quote(e.getMessage()) + "}");
+                result = EXIT_FAILURES;
+            }
+        }
+        out.flush();
+        return result;
+    }
+
+    /**
+     * Выполняет команду watch. Наблюдение продолжается до завершения процесса
+     * (например, по Ctrl+C): обработчик завершения останавливает его и ждет
+     * вывода итогового отчета.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @param setup база сигнатур и кэш
+     * @return код завершения
+     * @throws IOException если базу сигнатур или кэш не удалось прочитать
+     */
+    private static int watch(String[] args, PrintStream out, Setup setup) throws IOException {
+        Path directory = null;
+        boolean dryRun = false;
+        long quiet = DirectoryWatcher.DEFAULT_QUIET_MILLIS;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dry-run":
+                    dryRun = true;
+                    break;
+                case "--quiet":
+                    if (++i == args.length) {
+                        throw new IllegalArgumentException("--quiet requires a value");
+                    }
+                    try {
+                        quiet = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid quiet period: " + args[i]);
+                    }
+                    break;
+                default:
+                    if (args[i].startsWith("--") || directory != null) {
+                        throw new IllegalArgumentException("unexpected argument: " + args[i]);
+                    }
+                    directory = Paths.get(args[i]).toAbsolutePath().normalize();
+                    break;
+            }
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("watch requires a directory");
+        }
+        setup.load();
+
+        DirectoryWatcher watcher = new DirectoryWatcher(directory);
+        watcher.setQuietMillis(quiet);
+        watcher.setDryRun(dryRun);
+        watcher.setListener(event -> {
+            out.println(toJson(event));
+            out.flush();
+        });
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread hook = new Thread(() -> {
+            watcher.cancel();
+            try {
+                finished.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "watch-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        BatchReport report;
+        try {
+            report = watcher.watch();
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("error: failed to watch the directory: " + e.getMessage());
+            return EXIT_FAILURES;
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // процесс уже завершается, обработчик ждет отчета
+            }
+        }
+        out.println(toJson(report));
+        out.flush();
+        finished.countDown();
+
+        return report.failed() == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Выполняет команду carve.
+     *
+     * @param args аргументы командной строки
+     * @param out поток для вывода результатов
+     * @param setup база сигнатур и кэш
+     * @return код завершения
+     * @throws IOException если базу сигнатур или кэш не удалось прочитать
+     */
+    private static int carve(String[] args, PrintStream out, Setup setup) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        boolean dryRun = false;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--dry-run")) {
+                dryRun = true;
+            } else if (args[i].startsWith("--") || paths.size() == 2) {
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+            } else {
+                paths.add(Paths.get(args[i]).toAbsolutePath().normalize());
+            }
+        }
+        if (paths.size() < 2) {
+            throw new IllegalArgumentException("carve requires an image and an output directory");
+        }
+        setup.load();
+
+        Carver carver = new Carver();
+        carver.setDryRun(dryRun);
+        String status = quote(dryRun ? "planned" : "extracted");
+        carver.setListener(extracted -> out.println("{\"status\":" + status
+                + ",\"offset\":" + extracted.offset() + ",\"length\":" + extracted.length()
+                + ",\"type\":" + quote(extracted.type())
+                + (extracted.file() == null ? "" : ",\"file\":" + quote(extracted.file().toString())) + "}"));
+        Carver.Report report;
+        try {
+            report = carver.carve(paths.get(0), paths.get(1));
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("error: failed to read the image: " + e.getMessage());
+            return EXIT_FAILURES;
+        }
+        out.println(String.format(Locale.ROOT,
+                "{\"status\":\"summary\",\"bytes\":%d,\"candidates\":%d,\"extracted\":%d,\"failed\":%d,"
+                        + "\"seconds\":%.3f,\"megabytesPerSecond\":%.1f}",
+                report.bytes(), report.candidates(), report.extracted(), report.failed(),
+                report.elapsedNanos() / 1_000_000_000.0, report.megabytesPerSecond()));
+        out.flush();
+
+        return report.failed() == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Преобразует результат обработки файла в строку JSON.
+     *
+     * @param event результат обработки файла
+     * @return строка JSON
+     */
+    static String toJson(RestoreEvent event) {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"status\":").append(quote(event.status().name().toLowerCase(Locale.ROOT)));
+        json.append(",\"file\":").append(quote(event.file().toString()));
+        json.append(",\"type\":").append(quote(event.type()));
+        if (event.target() != null) {
+            json.append(",\"target\":").append(quote(event.target().toString()));
+        }
+        if (event.message() != null) {
+            json.append(",\"error\":").append(quote(event.message()));
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Преобразует отчет о пакетном восстановлении в строку JSON.
+     *
+     * @param report отчет
+     * @return строка JSON
+     */
+    static String toJson(BatchReport report) {
+        return String.format(Locale.ROOT,
+                "{\"status\":\"summary\",\"files\":%d,\"renamed\":%d,\"unknown\":%d,\"failed\":%d,"
+                        + "\"duplicates\":%d,\"seconds\":%.3f,\"filesPerSecond\":%.1f}",
+                report.files(), report.renamed(), report.unknown(), report.failed(), report.duplicates(),
+                report.elapsedNanos() / 1_000_000_000.0, report.filesPerSecond());
+    }
+
+    /**
+     * Записывает строку в виде строкового литерала JSON.
+     *
+     * @param value строка или {@code null}
+     * @return литерал JSON
+     */
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+                    break;
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /**
+     * Выводит справку по командам консольного режима.
+     *
+     * @param out поток вывода
+     */
+    private static void usage(PrintStream out) {
+        out.println("usage:");
+        out.println("  restore <dir> [--threads N] [--dry-run] [--pipeline] [--plan <manifest>]"
+                + " [--duplicates skip|link] [--journal <file>] - restore the extensions of all files in the tree");
+        out.println("  apply <manifest> [--threads N] - perform the renames planned with --plan");
+        out.println("  undo <manifest> [--threads N] - revert the renames performed by apply");
+        out.println("  detect <file>... - print the detected type of the files");
+        out.println("  watch <dir> [--dry-run] [--quiet MS] - restore the extensions of new files as they appear");
+        out.println("  carve <image> <dir> [--dry-run] - extract files stored back to back inside a disk image");
+        out.println("  help - show this help");
+        out.println("options: --signatures <file> - use an external signature database");
+        out.println("         --cache <file> - remember detected types between runs");
+        out.println("         --stats - print throughput and latency statistics to stderr at the end");
+        out.println("         --jmx - publish the statistics over JMX while the command runs");
+        out.println("without arguments the graphical interface is started");
+    }
+}
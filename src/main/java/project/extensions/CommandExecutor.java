@@ -0,0 +1,246 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Исполнитель долгих команд в фоновом потоке.
+ *
+ * <p>Команды выполняются по одной в порядке поступления в отдельном потоке,
+ * поэтому поток графического интерфейса не блокируется чтением диска.
+ * Выполняемую команду можно отменить и узнать ее прогресс через {@link Job}.
+ * Сообщения об ошибках передаются получателю, указанному в конструкторе.
+ *
+ */
+public final class CommandExecutor implements AutoCloseable {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(CommandExecutor.class);
+
+    /**
+     * Команда, выполняемая в фоновом потоке.
+     */
+    @FunctionalInterface
+    public interface Command {
+
+        /**
+         * Выполняет команду.
+         *
+         * @param job задача, через которую команда сообщает о прогрессе и узнает об отмене
+         * @throws Exception если команда завершилась с ошибкой
+         */
+        void run(Job job) throws Exception;
+    }
+
+    /**
+     * Задача исполнителя: одна отправленная команда.
+     */
+    public static final class Job {
+
+        private final String name;
+        private volatile boolean cancelled;
+        private volatile Thread thread;
+        private volatile long done;
+        private volatile long total = -1;
+        private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
+
+        private Job(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Возвращает имя команды.
+         *
+         * @return имя команды
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Сообщает о прогрессе выполнения.
+         *
+         * @param done количество выполненных шагов
+         * @param total общее количество шагов или -1, если оно неизвестно
+         */
+        public void progress(long done, long total) {
+            this.done = done;
+            this.total = total;
+        }
+
+        /**
+         * Возвращает прогресс в виде строки, например {@code "120/500"} или {@code "120"}.
+         *
+         * @return прогресс выполнения
+         */
+        public String getProgress() {
+            long currentTotal = total;
+            return currentTotal < 0 ? Long.toString(done) : done + "/" + currentTotal;
+        }
+
+        /**
+         * Регистрирует действие, выполняемое при отмене, например
+         * {@link BatchRestorer#cancel()}. Если задача уже отменена, действие
+         * выполняется сразу.
+         *
+         * @param listener действие
+         */
+        public void onCancel(Runnable listener) {
+            cancelListeners.add(listener);
+            if (cancelled) {
+                listener.run();
+            }
+        }
+
+        /**
+         * Отменяет задачу: выполняет зарегистрированные действия и прерывает поток команды.
+         */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (Runnable listener : cancelListeners) {
+                listener.run();
+            }
+            Thread running = thread;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+
+        /**
+         * Проверяет, отменена ли задача.
+         *
+         * @return {@code true}, если задача отменена
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Прерывает команду, если задача отменена.
+         *
+         * @throws CancellationException если задача отменена
+         */
+        public void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException(name + " cancelled");
+            }
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "command");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Выполняемая задача или {@code null}.
+     */
+    private final AtomicReference<Job> current = new AtomicReference<>();
+
+    /**
+     * Получатель сообщений об ошибках и отмене.
+     */
+    private final Consumer<String> output;
+
+    /**
+     * Конструктор класса.
+     *
+     * @param output получатель сообщений об ошибках и отмене команд
+     */
+    public CommandExecutor(Consumer<String> output) {
+        this.output = Objects.requireNonNull(output);
+    }
+
+    /**
+     * Отправляет команду на выполнение.
+     *
+     * @param name имя команды
+     * @param command команда
+     * @param finished действие после завершения команды (успешного, с ошибкой
+     *                 или отмененного), выполняется в фоновом потоке
+     * @return задача команды
+     */
+    public Job submit(String name, Command command, Runnable finished) {
+        Job job = new Job(name);
+        executor.execute(() -> {
+            job.thread = Thread.currentThread();
+            current.set(job);
+            try {
+                if (!job.isCancelled()) {
+                    command.run(job);
+                }
+                if (job.isCancelled()) {
+                    output.accept(name + " cancelled");
+                }
+            } catch (CancellationException | InterruptedException e) {
+                output.accept(name + " cancelled");
+            } catch (Exception e) {
+                logger.error("command {} failed: {}", name, e.getMessage());
+                output.accept("error executing command: " + e.getMessage());
+            } finally {
+                current.set(null);
+                job.thread = null;
+                Thread.interrupted();
+                finished.run();
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Возвращает выполняемую задачу.
+     *
+     * @return задача или {@code null}, если исполнитель свободен
+     */
+    public Job current() {
+        return current.get();
+    }
+
+    /**
+     * Отменяет выполняемую задачу.
+     *
+     * @return {@code true}, если была выполняемая задача
+     */
+    public boolean cancel() {
+        Job job = current.get();
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        return true;
+    }
+
+    /**
+     * Отменяет выполняемую задачу и останавливает исполнитель.
+     */
+    @Override
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
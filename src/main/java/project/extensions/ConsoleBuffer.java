@@ -0,0 +1,154 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Содержимое консоли графического интерфейса: последние строки вывода в
+ * кольцевом буфере ограниченного размера.
+ *
+ * <p>Когда буфер заполнен, новые строки вытесняют самые старые, поэтому
+ * расход памяти и время добавления не зависят от длительности сеанса. Буфер
+ * является наблюдаемым списком JavaFX и отображается через {@code ListView},
+ * который создает ячейки только для видимых строк.
+ *
+ * <p>Количество строк задается системным свойством {@code expander.console.lines}
+ * (по умолчанию {@value #DEFAULT_LINES}). Методы изменения нужно вызывать в
+ * потоке интерфейса.
+ *
+ */
+final class ConsoleBuffer extends ObservableListBase<String> {
+
+    /**
+     * Количество строк по умолчанию.
+     */
+    static final int DEFAULT_LINES = 10_000;
+
+    /**
+     * Наименьшее допустимое количество строк.
+     */
+    private static final int MIN_LINES = 100;
+
+    /**
+     * Строки буфера; самая старая строка находится в ячейке {@code head}.
+     */
+    private final String[] lines;
+    private int head;
+    private int size;
+
+    /**
+     * Создает буфер с размером из системного свойства {@code expander.console.lines}.
+     */
+    ConsoleBuffer() {
+        this(Math.max(MIN_LINES, Integer.getInteger("expander.console.lines", DEFAULT_LINES)));
+    }
+
+    /**
+     * Создает буфер указанного размера.
+     *
+     * @param capacity наибольшее количество строк
+     * @throws IllegalArgumentException если размер меньше единицы
+     */
+    ConsoleBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the console capacity must be positive");
+        }
+        lines = new String[capacity];
+    }
+
+    /**
+     * Возвращает наибольшее количество строк.
+     *
+     * @return размер буфера
+     */
+    int capacity() {
+        return lines.length;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return lines[(head + index) % lines.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет строки в конец буфера, вытесняя самые старые. Строки,
+     * содержащие переводы строки, разбиваются на несколько строк. Слушатели
+     * получают одно изменение на весь вызов.
+     *
+     * @param text добавляемые строки
+     */
+    void append(List<String> text) {
+        List<String> added = new ArrayList<>(text.size());
+        for (String line : text) {
+            if (line.indexOf('\n') < 0) {
+                added.add(line);
+            } else {
+                added.addAll(Arrays.asList(line.split("\n", -1)));
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        if (added.size() > lines.length) {
+            added = added.subList(added.size() - lines.length, added.size());
+        }
+
+        int overflow = Math.max(0, size + added.size() - lines.length);
+        beginChange();
+        if (overflow > 0) {
+            List<String> removed = new ArrayList<>(overflow);
+            for (int i = 0; i < overflow; i++) {
+                removed.add(lines[head]);
+                lines[head] = null;
+                head = (head + 1) % lines.length;
+            }
+            size -= overflow;
+            nextRemove(0, removed);
+        }
+        int from = size;
+        for (String line : added) {
+            lines[(head + size) % lines.length] = line;
+            size++;
+        }
+        nextAdd(from, size);
+        endChange();
+    }
+
+    /**
+     * Добавляет одну строку в конец буфера.
+     *
+     * @param line строка
+     */
+    void append(String line) {
+        append(List.of(line));
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        List<String> removed = new ArrayList<>(this);
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        beginChange();
+        nextRemove(0, removed);
+        endChange();
+    }
+}
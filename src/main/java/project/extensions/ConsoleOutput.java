@@ -0,0 +1,46 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Класс, через который {@link Position} и {@link Expander} выводят сообщения
+ * пользователю.
+ *
+ * <p>По умолчанию сообщения печатаются в стандартный поток вывода, поэтому
+ * классы работают без JavaFX. Графический интерфейс при запуске направляет
+ * вывод в свою консоль {@link MainApp#appendToConsole(String)}.
+ *
+ */
+public final class ConsoleOutput {
+
+    /**
+     * Получатель сообщений.
+     */
+    private static volatile Consumer<String> sink = System.out::println;
+
+    private ConsoleOutput() {
+    }
+
+    /**
+     * Устанавливает получателя сообщений.
+     *
+     * @param sink получатель сообщений
+     */
+    public static void setSink(Consumer<String> sink) {
+        ConsoleOutput.sink = Objects.requireNonNull(sink);
+    }
+
+    /**
+     * Выводит сообщение.
+     *
+     * @param text текст сообщения
+     */
+    public static void println(String text) {
+        sink.accept(text);
+    }
+}
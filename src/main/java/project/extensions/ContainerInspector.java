@@ -0,0 +1,215 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Правила определения форматов, основанных на ZIP, по именам записей архива.
+ *
+ * <p>Каждое правило связывает имя записи (или начало имени) с форматом.
+ * Решающее правило определяет формат сразу, и просмотр архива на этом
+ * заканчивается; например, запись {@code word/} бывает только в docx, а
+ * {@code classes.dex} - только в apk. Правило-подсказка лишь запоминает
+ * формат: {@code META-INF/MANIFEST.MF} есть и в jar, и в apk, поэтому jar
+ * выбирается, только если до конца каталога не встретилось решающее правило.
+ * Из подсказок выбирается подсказка с наибольшим приоритетом.
+ *
+ * <p>Записи {@code mimetype} (ODF, EPUB) и {@code [Content_Types].xml}
+ * (OOXML, XPS) определяют формат по содержимому; объект только запоминает их
+ * позиции, а прочитать их содержимое должен вызывающий код. Чтобы добавить
+ * формат, достаточно добавить правило в {@link #RULES} или тип содержимого в
+ * {@link #MEDIA_TYPES} и {@link #CONTENT_TYPES}; количество чтений архива от
+ * этого не меняется.
+ *
+ * <p>Объект хранит состояние просмотра одного архива и не является потокобезопасным.
+ *
+ */
+final class ContainerInspector {
+
+    /**
+     * Приоритет решающего правила.
+     */
+    private static final int DECISIVE = Integer.MAX_VALUE;
+
+    /**
+     * Правило: имя записи или начало имени и соответствующий формат.
+     */
+    private record Rule(byte[] name, boolean prefix, String type, int priority) {
+    }
+
+    /**
+     * Правила по именам записей.
+     */
+    private static final List<Rule> RULES = List.of(
+            prefix("word/", "docx", DECISIVE),
+            prefix("ppt/", "pptx", DECISIVE),
+            prefix("xl/", "xlsx", DECISIVE),
+            exact("AndroidManifest.xml", "apk", DECISIVE),
+            exact("classes.dex", "apk", DECISIVE),
+            exact("FixedDocumentSequence.fdseq", "xps", DECISIVE),
+            exact("FixedDocSeq.fdseq", "xps", DECISIVE),
+            exact("META-INF/container.xml", "epub", 2),
+            exact("META-INF/MANIFEST.MF", "jar", 1));
+
+    /**
+     * Форматы по содержимому записи {@code mimetype}.
+     */
+    private static final Map<String, String> MEDIA_TYPES = Map.of(
+            "application/vnd.oasis.opendocument.text", "odt",
+            "application/vnd.oasis.opendocument.spreadsheet", "ods",
+            "application/vnd.oasis.opendocument.presentation", "odp",
+            "application/vnd.oasis.opendocument.graphics", "odg",
+            "application/epub+zip", "epub");
+
+    /**
+     * Форматы по типу основной части документа в {@code [Content_Types].xml}.
+     */
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "wordprocessingml.document.main+xml", "docx",
+            "presentationml.presentation.main+xml", "pptx",
+            "spreadsheetml.sheet.main+xml", "xlsx",
+            "application/vnd.ms-package.xps-fixeddocumentsequence+xml", "xps",
+            "application/vnd.openxmlformats-package.xps-fixeddocumentsequence+xml", "xps");
+
+    /**
+     * Имя записи с типом документа ODF и EPUB.
+     */
+    static final byte[] MIMETYPE = ascii("mimetype");
+
+    /**
+     * Имя записи с типами частей документа OOXML и XPS.
+     */
+    static final byte[] CONTENT_TYPES_XML = ascii("[Content_Types].xml");
+
+    /**
+     * Наибольший размер записи {@code mimetype}, который имеет смысл читать.
+     */
+    static final int MAX_MIMETYPE = 128;
+
+    private String hint;
+    private int hintPriority = -1;
+    private int mimetype = -1;
+    private int contentTypes = -1;
+
+    /**
+     * Обрабатывает имя очередной записи архива.
+     *
+     * @param buffer буфер с именем записи
+     * @param name позиция имени в буфере
+     * @param length длина имени
+     * @param entry позиция записи в центральном каталоге (запоминается для
+     *              {@code mimetype} и {@code [Content_Types].xml})
+     * @return формат, если он определен решающим правилом, иначе {@code null}
+     */
+    String entry(ByteBuffer buffer, int name, int length, int entry) {
+        for (Rule rule : RULES) {
+            if (rule.prefix() ? length >= rule.name().length : length == rule.name().length) {
+                if (startsWith(buffer, name, rule.name())) {
+                    if (rule.priority() == DECISIVE) {
+                        return rule.type();
+                    }
+                    if (rule.priority() > hintPriority) {
+                        hint = rule.type();
+                        hintPriority = rule.priority();
+                    }
+                }
+            }
+        }
+        if (length == MIMETYPE.length && startsWith(buffer, name, MIMETYPE)) {
+            mimetype = entry;
+        } else if (length == CONTENT_TYPES_XML.length && startsWith(buffer, name, CONTENT_TYPES_XML)) {
+            contentTypes = entry;
+        }
+        return null;
+    }
+
+    /**
+     * Обрабатывает имя очередной записи архива.
+     *
+     * @param name имя записи
+     * @return формат, если он определен решающим правилом, иначе {@code null}
+     */
+    String entry(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return entry(ByteBuffer.wrap(bytes), 0, bytes.length, 0);
+    }
+
+    /**
+     * Возвращает позицию записи {@code mimetype}.
+     *
+     * @return позиция в центральном каталоге или -1
+     */
+    int mimetype() {
+        return mimetype;
+    }
+
+    /**
+     * Возвращает позицию записи {@code [Content_Types].xml}.
+     *
+     * @return позиция в центральном каталоге или -1
+     */
+    int contentTypes() {
+        return contentTypes;
+    }
+
+    /**
+     * Возвращает формат по подсказкам, если решающее правило не сработало.
+     *
+     * @return формат или {@code null}
+     */
+    String hint() {
+        return hint;
+    }
+
+    /**
+     * Определяет формат по содержимому записи {@code mimetype}.
+     *
+     * @param content содержимое записи
+     * @return формат или {@code null}
+     */
+    static String byMediaType(String content) {
+        return MEDIA_TYPES.get(content.strip());
+    }
+
+    /**
+     * Определяет формат по содержимому {@code [Content_Types].xml}.
+     *
+     * @param xml содержимое записи
+     * @return формат или {@code null}
+     */
+    static String byContentTypes(String xml) {
+        for (Map.Entry<String, String> type : CONTENT_TYPES.entrySet()) {
+            if (xml.contains(type.getKey())) {
+                return type.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Rule prefix(String name, String type, int priority) {
+        return new Rule(ascii(name), true, type, priority);
+    }
+
+    private static Rule exact(String name, String type, int priority) {
+        return new Rule(ascii(name), false, type, priority);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+}
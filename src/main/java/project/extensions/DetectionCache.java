@@ -0,0 +1,502 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Постоянный кэш результатов определения типа файлов.
+ *
+ * <p>Ключ записи - устройство и номер индексного дескриптора (inode) файла,
+ * а к результату прилагаются размер и время изменения файла на момент
+ * определения. Если размер или время изменения отличаются, запись считается
+ * устаревшей, и тип определяется заново. Поскольку переименование не меняет ни
+ * inode, ни время изменения, повторный проход по уже обработанному дереву
+ * стоит только одного вызова {@code stat} на файл.
+ *
+ * <p>Это верно только для файловых систем с атрибутами unix. Там, где их нет
+ * (например, в Windows), ключом служит хэш абсолютного пути: кэш по-прежнему
+ * ускоряет повторный проход по неизмененному дереву, но переименованный файл
+ * получает новый ключ, и после восстановления каждый переименованный файл при
+ * следующем проходе читается заново.
+ *
+ * <p>На диске кэш хранится как журнал, в который записи только дописываются;
+ * при открытии журнал читается целиком в компактный индекс с открытой
+ * адресацией на примитивных массивах, а сильно разросшийся журнал сжимается.
+ * Новые записи накапливаются в буфере, а отдельный поток раз в секунду
+ * (свойство {@code expander.cache.sync}, в миллисекундах) переносит их в файл и
+ * сбрасывает его на диск, в том числе когда новых файлов нет (режим
+ * наблюдения), поэтому при аварийном завершении теряется не больше последней
+ * секунды. Сброс на диск выполняется вне блокировки кэша и не задерживает
+ * {@link #lookup} и {@link #put}.
+ * Кэш привязан к отпечатку базы сигнатур: при смене базы все записи сбрасываются.
+ *
+ */
+public final class DetectionCache implements Closeable {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(DetectionCache.class);
+
+    private static final int MAGIC = 0x45585043;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 33;
+    private static final int MAX_TYPE = 255;
+
+    /**
+     * Наибольший промежуток между сбросами журнала на диск.
+     */
+    private static final long SYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("expander.cache.sync", 1000));
+
+    /**
+     * Обозначение нераспознанного типа в индексе.
+     */
+    private static final String UNKNOWN = "";
+
+    /**
+     * Признак отсутствия записи, возвращаемый {@link #lookup}.
+     */
+    static final String MISS = new String("miss");
+
+    private final Path file;
+    private FileChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocate(64 * 1024);
+    private long fingerprint;
+
+    /**
+     * Признак записей, не сброшенных на диск.
+     */
+    private boolean dirty;
+
+    /**
+     * Поток периодического сброса журнала на диск.
+     */
+    private ScheduledExecutorService syncer;
+
+    /**
+     * Индекс: пары (устройство, inode) в {@code keys}, размер, время изменения и тип.
+     */
+    private long[] keys;
+    private long[] sizes;
+    private long[] times;
+    private String[] types;
+    private boolean[] used;
+    private int count;
+
+    /**
+     * Количество записей в журнале, включая устаревшие.
+     */
+    private long records;
+
+    /**
+     * Единственные экземпляры строк типов, чтобы индекс не хранил копии.
+     */
+    private final Map<String, String> names = new HashMap<>();
+
+    private DetectionCache(Path file) {
+        this.file = file;
+        allocate(1024);
+    }
+
+    /**
+     * Открывает кэш, создавая файл при необходимости.
+     *
+     * @param file файл кэша
+     * @param fingerprint отпечаток базы сигнатур; при несовпадении записи сбрасываются
+     * @return открытый кэш
+     * @throws IOException если файл не удалось прочитать или создать
+     */
+    public static DetectionCache open(Path file, long fingerprint) throws IOException {
+        DetectionCache cache = new DetectionCache(file);
+        cache.fingerprint = fingerprint;
+        cache.load();
+        cache.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "detection-cache-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cache.syncer.scheduleWithFixedDelay(cache::sync, SYNC_NANOS, SYNC_NANOS, TimeUnit.NANOSECONDS);
+        return cache;
+    }
+
+    /**
+     * Ищет тип файла в кэше.
+     *
+     * @param key ключ файла
+     * @return тип файла, {@code null} для нераспознанного файла или {@link #MISS},
+     * если записи нет или она устарела
+     */
+    public synchronized String lookup(Key key) {
+        int slot = find(key.device(), key.inode());
+        if (!used[slot] || sizes[slot] != key.size() || times[slot] != key.modified()) {
+            return MISS;
+        }
+        return types[slot] == UNKNOWN ? null : types[slot];
+    }
+
+    /**
+     * Сохраняет тип файла в кэше.
+     *
+     * @param key ключ файла
+     * @param type тип файла или {@code null} для нераспознанного файла
+     * @throws IOException если запись не удалось добавить в журнал
+     */
+    public synchronized void put(Key key, String type) throws IOException {
+        String name = intern(type);
+        int slot = find(key.device(), key.inode());
+        if (used[slot] && sizes[slot] == key.size() && times[slot] == key.modified() && types[slot].equals(name)) {
+            return;
+        }
+        store(slot, key.device(), key.inode(), key.size(), key.modified(), name);
+        append(key.device(), key.inode(), key.size(), key.modified(), name);
+    }
+
+    /**
+     * Удаляет все записи и привязывает кэш к новой базе сигнатур.
+     *
+     * @param fingerprint отпечаток новой базы сигнатур
+     * @throws IOException если файл кэша не удалось перезаписать
+     */
+    public synchronized void reset(long fingerprint) throws IOException {
+        if (this.fingerprint == fingerprint) {
+            return;
+        }
+        this.fingerprint = fingerprint;
+        allocate(1024);
+        output.clear();
+        channel.truncate(0);
+        writeHeader(channel);
+        records = 0;
+        logger.info("the detection cache was reset");
+    }
+
+    /**
+     * Возвращает количество записей в индексе.
+     *
+     * @return количество файлов в кэше
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Записывает накопленные записи в файл.
+     *
+     * @throws IOException если запись не удалась
+     */
+    public synchronized void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    /**
+     * Переносит накопленные записи в файл и сбрасывает его на диск, если с
+     * прошлого сброса были новые записи. Медленный {@link FileChannel#force}
+     * выполняется вне блокировки кэша.
+     */
+    private void sync() {
+        FileChannel target;
+        try {
+            synchronized (this) {
+                if (!dirty || !channel.isOpen()) {
+                    return;
+                }
+                flush();
+                dirty = false;
+                target = channel;
+            }
+            target.force(false);
+        } catch (ClosedChannelException e) {
+            // кэш закрыт во время сброса, записи уже перенесены в файл
+        } catch (IOException e) {
+            logger.warn("failed to sync the detection cache: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (syncer != null) {
+            // без прерывания: прерванный force закрыл бы канал
+            syncer.shutdown();
+        }
+        if (channel != null && channel.isOpen()) {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Читает ключ файла: устройство, inode, размер и время изменения.
+     * Если файловая система не поддерживает атрибуты unix, вместо inode
+     * используется хэш абсолютного пути, который меняется при переименовании.
+     *
+     * @param path путь к файлу
+     * @return ключ файла
+     * @throws IOException если атрибуты не удалось прочитать
+     */
+    public static Key key(Path path) throws IOException {
+        try {
+            Map<String, Object> attributes = Files.readAttributes(path, "unix:dev,ino,size,lastModifiedTime");
+            return new Key(((Number) attributes.get("dev")).longValue(), ((Number) attributes.get("ino")).longValue(),
+                    ((Number) attributes.get("size")).longValue(),
+                    ((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.MICROSECONDS));
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Key(0, pathHash(path.toAbsolutePath().toString()), attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    /**
+     * Ключ файла в кэше.
+     *
+     * @param device номер устройства
+     * @param inode номер индексного дескриптора
+     * @param size размер файла
+     * @param modified время изменения в микросекундах
+     */
+    public record Key(long device, long inode, long size, long modified) {
+    }
+
+    /**
+     * Читает журнал в индекс, при необходимости сбрасывая или сжимая его.
+     *
+     * @throws IOException если файл не удалось прочитать
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // читаем заголовок полностью
+        }
+        header.flip();
+
+        if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT
+                || header.getLong(8) != fingerprint) {
+            if (channel.size() > 0) {
+                logger.info("the detection cache was created by another version or signature database, resetting it");
+            }
+            channel.truncate(0);
+            writeHeader(channel);
+            return;
+        }
+
+        long position = HEADER_SIZE;
+        ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+        long end = channel.size();
+        while (position < end) {
+            input.clear();
+            int read = channel.read(input, position);
+            if (read <= 0) {
+                break;
+            }
+            input.flip();
+            int consumed = 0;
+            while (input.remaining() >= RECORD_SIZE) {
+                int start = input.position();
+                int length = input.get(start + RECORD_SIZE - 1) & 0xFF;
+                if (input.remaining() < RECORD_SIZE + length) {
+                    break;
+                }
+                long device = input.getLong();
+                long inode = input.getLong();
+                long size = input.getLong();
+                long modified = input.getLong();
+                input.get();
+                byte[] name = new byte[length];
+                input.get(name);
+                String type = intern(length == 0 ? null : new String(name, StandardCharsets.UTF_8));
+                store(find(device, inode), device, inode, size, modified, type);
+                records++;
+                consumed = input.position();
+            }
+            if (consumed == 0) {
+                break;
+            }
+            position += consumed;
+        }
+
+        if (position < end) {
+            // последняя запись записана не полностью (например, при аварийном завершении)
+            channel.truncate(position);
+        }
+        channel.position(channel.size());
+
+        if (records > 1024 && records > 2L * count) {
+            compact();
+        }
+        logger.info("the detection cache was loaded: {} files", count);
+    }
+
+    /**
+     * Перезаписывает журнал, оставляя только актуальные записи.
+     *
+     * @throws IOException если файл не удалось перезаписать
+     */
+    private void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(target);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int slot = 0; slot < used.length; slot++) {
+                if (used[slot]) {
+                    if (buffer.remaining() < RECORD_SIZE + MAX_TYPE) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            target.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                    encode(buffer, keys[slot * 2], keys[slot * 2 + 1], sizes[slot], times[slot], types[slot]);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+        channel.close();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        logger.info("the detection cache was compacted from {} to {} records", records, count);
+        records = count;
+    }
+
+    private void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT).putLong(fingerprint).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += target.write(header, position);
+        }
+        target.position(HEADER_SIZE);
+    }
+
+    private void append(long device, long inode, long size, long modified, String type) throws IOException {
+        if (output.remaining() < RECORD_SIZE + MAX_TYPE) {
+            flush();
+        }
+        encode(output, device, inode, size, modified, type);
+        records++;
+        dirty = true;
+    }
+
+    private static void encode(ByteBuffer buffer, long device, long inode, long size, long modified, String type) {
+        byte[] name = type.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(device).putLong(inode).putLong(size).putLong(modified);
+        buffer.put((byte) name.length).put(name);
+    }
+
+    private String intern(String type) {
+        if (type == null) {
+            return UNKNOWN;
+        }
+        if (type.getBytes(StandardCharsets.UTF_8).length > MAX_TYPE) {
+            throw new IllegalArgumentException("the type name is too long: " + type);
+        }
+        return names.computeIfAbsent(type, name -> name);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        sizes = new long[capacity];
+        times = new long[capacity];
+        types = new String[capacity];
+        used = new boolean[capacity];
+        count = 0;
+    }
+
+    /**
+     * Ищет ячейку индекса для ключа линейным пробированием.
+     *
+     * @return ячейка с этим ключом или первая свободная ячейка
+     */
+    private int find(long device, long inode) {
+        int mask = used.length - 1;
+        int slot = (int) mix(device * 31 + inode) & mask;
+        while (used[slot] && (keys[slot * 2] != device || keys[slot * 2 + 1] != inode)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void store(int slot, long device, long inode, long size, long modified, String type) {
+        if (!used[slot]) {
+            if ((count + 1) * 4L > used.length * 3L) {
+                grow();
+                slot = find(device, inode);
+            }
+            used[slot] = true;
+            keys[slot * 2] = device;
+            keys[slot * 2 + 1] = inode;
+            count++;
+        }
+        sizes[slot] = size;
+        times[slot] = modified;
+        types[slot] = type;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldSizes = sizes;
+        long[] oldTimes = times;
+        String[] oldTypes = types;
+        boolean[] oldUsed = used;
+        allocate(oldUsed.length * 2);
+        for (int slot = 0; slot < oldUsed.length; slot++) {
+            if (oldUsed[slot]) {
+                int target = find(oldKeys[slot * 2], oldKeys[slot * 2 + 1]);
+                used[target] = true;
+                keys[target * 2] = oldKeys[slot * 2];
+                keys[target * 2 + 1] = oldKeys[slot * 2 + 1];
+                sizes[target] = oldSizes[slot];
+                times[target] = oldTimes[slot];
+                types[target] = oldTypes[slot];
+                count++;
+            }
+        }
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long pathHash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash = (hash ^ path.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
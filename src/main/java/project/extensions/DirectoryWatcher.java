@@ -0,0 +1,347 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Наблюдение за директорией: восстановление расширений файлов по мере их появления.
+ *
+ * <p>Директория не перечитывается периодически: при запуске ее содержимое
+ * один раз читается через {@link Position#streamFilesDirectory()}, а дальше
+ * новые и измененные файлы приходят событиями {@link WatchService}. Каждое
+ * событие откладывает обработку файла на время тишины
+ * ({@link #setQuietMillis(long)}), поэтому файл, который еще записывается,
+ * обрабатывается только после последней записи, а серия событий об одном
+ * файле сводится к одной обработке. Готовые файлы определяются и
+ * переименовываются порциями до {@value #BATCH} файлов. Ожидание заканчивается
+ * точно к сроку ближайшего файла, поэтому задержка обработки - время тишины
+ * плюс время определения типа.
+ *
+ * <p>Переименованные файлы и файлы, у которых уже правильное расширение,
+ * повторно не обрабатываются. Поддиректории не наблюдаются. Если очередь
+ * событий системы переполнилась, директория перечитывается один раз.
+ * Получатель результатов вызывается из потока, вызвавшего {@link #watch()}.
+ *
+ */
+public final class DirectoryWatcher {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(DirectoryWatcher.class);
+
+    /**
+     * Время тишины по умолчанию.
+     */
+    public static final long DEFAULT_QUIET_MILLIS = 250;
+
+    /**
+     * Наибольшее количество файлов, обрабатываемых за раз.
+     */
+    private static final int BATCH = 256;
+
+    private final Path directory;
+    private final Position position;
+
+    private long quietNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_QUIET_MILLIS);
+    private boolean dryRun;
+    private Consumer<RestoreEvent> listener = event -> { };
+    private volatile boolean cancelled;
+    private volatile WatchService service;
+
+    /**
+     * Файлы, ожидающие обработки, и время последнего события о каждом. Порядок
+     * записей совпадает с порядком сроков: запись переставляется в конец при
+     * каждом событии.
+     */
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+
+    /**
+     * Файлы, созданные самим наблюдением, события о которых нужно пропустить.
+     */
+    private final Set<Path> produced = new HashSet<>();
+
+    /**
+     * Счетчики обработанных файлов.
+     */
+    private long files;
+    private long renamed;
+    private long unknown;
+    private long failed;
+
+    /**
+     * Конструктор класса.
+     *
+     * @param directory наблюдаемая директория
+     * @throws IllegalArgumentException если путь не является директорией
+     */
+    public DirectoryWatcher(Path directory) {
+        if (directory == null || !Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("directory not found: " + directory);
+        }
+        this.directory = directory.toAbsolutePath().normalize();
+        this.position = new Position(new Session(this.directory));
+    }
+
+    /**
+     * Задает время тишины: файл обрабатывается, если событий о нем не было
+     * указанное время.
+     *
+     * @param millis время в миллисекундах
+     * @throws IllegalArgumentException если время отрицательно
+     */
+    public void setQuietMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("the quiet period must not be negative");
+        }
+        quietNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Включает или выключает пробный запуск. При пробном запуске типы файлов
+     * определяются, но файлы не переименовываются.
+     *
+     * @param dryRun {@code true} для пробного запуска
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Устанавливает получателя результатов обработки отдельных файлов.
+     *
+     * @param listener получатель результатов
+     */
+    public void setListener(Consumer<RestoreEvent> listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Останавливает наблюдение. Может вызываться из любого потока; файлы,
+     * ожидающие обработки, не обрабатываются.
+     */
+    public void cancel() {
+        cancelled = true;
+        WatchService current = service;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.warn("watch: failed to close the watch service: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Наблюдает за директорией до вызова {@link #cancel()} или прерывания потока.
+     *
+     * @return отчет об обработанных файлах
+     * @throws IOException если наблюдение не удалось начать
+     */
+    public BatchReport watch() throws IOException {
+        BatchRestorer.reloadSignatures();
+        files = 0;
+        renamed = 0;
+        unknown = 0;
+        failed = 0;
+        pending.clear();
+        produced.clear();
+        long start = System.nanoTime();
+        logger.info("watch started in {}{}", directory, dryRun ? " (dry run)" : "");
+
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            service = watchService;
+            // регистрация до чтения директории: файл, появившийся между ними, не теряется
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            scan(System.nanoTime());
+            while (!cancelled) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = pending.values().iterator().next() + quietNanos - System.nanoTime();
+                    key = watchService.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                }
+                // события, накопившиеся к этому моменту, разбираются за один проход
+                for (; key != null; key = watchService.poll()) {
+                    if (!collect(key)) {
+                        logger.warn("watch: the directory {} is no longer available", directory);
+                        cancelled = true;
+                    }
+                }
+                processReady();
+            }
+        } catch (ClosedWatchServiceException e) {
+            if (!cancelled) {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            service = null;
+        }
+
+        BatchReport report = new BatchReport(files, renamed, unknown, failed, 0, System.nanoTime() - start);
+        logger.info("watch stopped in {}: {}", directory, report);
+        return report;
+    }
+
+    /**
+     * Разбирает события одного ключа.
+     *
+     * @return {@code false}, если ключ больше недействителен
+     */
+    private boolean collect(WatchKey key) {
+        long now = System.nanoTime();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.warn("watch: events were lost, reading the directory again");
+                scan(now);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (produced.remove(path)) {
+                continue;
+            }
+            pending.remove(path);
+            pending.put(path, now);
+        }
+        return key.reset();
+    }
+
+    /**
+     * Ставит в очередь все файлы директории.
+     */
+    private void scan(long now) {
+        try (Stream<Path> names = position.streamFilesDirectory()) {
+            names.forEach(name -> {
+                Path path = directory.resolve(name);
+                if (!produced.contains(path)) {
+                    pending.remove(path);
+                    pending.put(path, now);
+                }
+            });
+        } catch (DirectoryIteratorException | UncheckedIOException e) {
+            failed++;
+            Metrics.FAILURES.increment();
+            logger.warn("watch: failed to read directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Обрабатывает файлы, события о которых закончились, порциями до {@value #BATCH}.
+     */
+    private void processReady() {
+        List<Path> batch = new ArrayList<>();
+        while (!cancelled) {
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < BATCH) {
+                Map.Entry<Path, Long> entry = iterator.next();
+                if (now - entry.getValue() < quietNanos) {
+                    break;
+                }
+                batch.add(entry.getKey());
+                iterator.remove();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            long processed = files;
+            for (Path path : batch) {
+                if (cancelled) {
+                    return;
+                }
+                restoreFile(path);
+            }
+            if (files > processed) {
+                logger.info("watch: processed {} files in {}", files - processed, directory);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Определяет тип файла и переименовывает его.
+     */
+    private void restoreFile(Path path) {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        String extension;
+        try {
+            extension = Expander.detectExtension(path.toFile());
+        } catch (IOException | RuntimeException e) {
+            fail(path, null, e);
+            return;
+        }
+        String name = path.getFileName().toString();
+        if (extension != null && Expander.targetName(name, extension).equals(name)) {
+            return;
+        }
+        if (extension == null) {
+            files++;
+            unknown++;
+            listener.accept(new RestoreEvent(path, null, null, RestoreEvent.Status.UNKNOWN, null));
+            return;
+        }
+        Path target = Expander.targetFile(path.toFile(), extension).toPath();
+        if (dryRun) {
+            files++;
+            renamed++;
+            listener.accept(new RestoreEvent(path, extension, target, RestoreEvent.Status.PLANNED, null));
+            return;
+        }
+        produced.add(target);
+        try {
+            Expander.restoreExtension(path.toFile(), extension);
+        } catch (RuntimeException e) {
+            produced.remove(target);
+            fail(path, extension, e);
+            return;
+        }
+        files++;
+        renamed++;
+        listener.accept(new RestoreEvent(path, extension, target, RestoreEvent.Status.RENAMED, null));
+    }
+
+    /**
+     * Учитывает ошибку обработки файла.
+     */
+    private void fail(Path path, String extension, Exception e) {
+        files++;
+        failed++;
+        Metrics.FAILURES.increment();
+        logger.warn("watch: failed to process {}: {}", path, e.getMessage());
+        listener.accept(new RestoreEvent(path, extension, null, RestoreEvent.Status.FAILED, e.getMessage()));
+    }
+}
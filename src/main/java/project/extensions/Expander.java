@@ -10,10 +10,11 @@ import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -26,9 +27,26 @@ import java.util.zip.ZipInputStream;
 public class Expander extends Position{
 
     /**
-     * Карта, содержащая сигнатуры файлов для различных типов файлов.
+     * Текущий набор сигнатур. Набор неизменяем и заменяется целиком при загрузке
+     * новой базы, поэтому читается без блокировок.
      */
-    private static final HashMap<String, ArrayList<String>> extensions = new HashMap<>();
+    private static volatile SignatureRegistry registry = SignatureRegistry.EMPTY;
+
+    /**
+     * Версия алгоритма определения типа; увеличивается при изменении логики
+     * определения, чтобы сбросить сохраненные в кэше результаты.
+     */
+    private static final int DETECTOR_VERSION = 3;
+
+    /**
+     * Постоянный кэш результатов определения или {@code null}, если кэш не используется.
+     */
+    private static volatile DetectionCache cache;
+
+    /**
+     * Шестнадцатеричные цифры для вывода сигнатуры.
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
 
     /**
      * Логгер для записи событий класса.
@@ -46,21 +64,103 @@ public class Expander extends Position{
 
     /**
      * инициализирует карту сигнатур файлов.
+     *
+     * <p>Сигнатуры загружаются из файла, указанного в системном свойстве
+     * {@code expander.signatures}, а если свойство не задано - из встроенной
+     * базы {@link SignatureDatabase#BUNDLED}.
+     *
+     * @throws IllegalStateException если базу сигнатур не удалось загрузить
      */
     public static void init() {
-        extensions.put("png", new ArrayList<>(List.of("89 50 4E 47")));
-        extensions.put("zip", new ArrayList<>(List.of("50 4B 03 04")));
-        extensions.put("jpg", new ArrayList<>(List.of("FF D8 FF DB", "FF D8 FF E0", "FF D8 FF E1")));
-        extensions.put("webp",new ArrayList<>(List.of("52 49 46 46")));
-        extensions.put("doc", new ArrayList<>(List.of("0D 44 4F 43")));
-        extensions.put("gif", new ArrayList<>(List.of("47 49 46 38")));
-        extensions.put("pdf", new ArrayList<>(List.of("25 50 44 46")));
-        extensions.put("RAR", new ArrayList<>(List.of("52 61 72 21")));
-        extensions.put("mp3", new ArrayList<>(List.of("49 44 33")));
-        extensions.put("mp4", new ArrayList<>(List.of("66 74 79 70")));
-        extensions.put("7z", new ArrayList<>(List.of("37 7A BC AF")));
-        extensions.put("iso", new ArrayList<>(List.of("43 44 30 30")));
-        extensions.put("bmp", new ArrayList<>(List.of("42 4D")));
+        String file = System.getProperty("expander.signatures");
+        try {
+            install(file == null ? SignatureDatabase.bundled() : SignatureDatabase.load(Path.of(file)));
+        } catch (IOException e) {
+            logger.error("failed to load the signature database");
+            throw new IllegalStateException("failed to load the signature database", e);
+        }
+    }
+
+    /**
+     * Загружает базу сигнатур из файла и начинает использовать ее для определения типов.
+     *
+     * @param file файл базы сигнатур
+     * @throws IOException если файл не прочитан
+     * @throws IllegalArgumentException если файл записан неверно
+     */
+    public static void loadSignatures(Path file) throws IOException {
+        install(SignatureDatabase.load(file));
+    }
+
+    /**
+     * Загружает базу сигнатур заново, если ее файл изменился после загрузки.
+     *
+     * @return {@code true}, если база была загружена заново
+     * @throws IOException если файл не прочитан
+     * @throws IllegalArgumentException если файл записан неверно
+     */
+    public static boolean reloadSignatures() throws IOException {
+        SignatureDatabase current = registry.database();
+        if (current == null || !current.isModified()) {
+            return false;
+        }
+        install(SignatureDatabase.load(current.source()));
+        return true;
+    }
+
+    /**
+     * Компилирует базу сигнатур и заменяет ею текущую.
+     *
+     * @param loaded загруженная база
+     */
+    private static synchronized void install(SignatureDatabase loaded) {
+        registry = SignatureRegistry.of(loaded);
+        DetectionCache current = cache;
+        if (current != null) {
+            try {
+                current.reset(fingerprint());
+            } catch (IOException e) {
+                logger.warn("failed to reset the detection cache, disabling it: {}", e.getMessage());
+                cache = null;
+            }
+        }
+        logger.info("loaded {} signatures from {}", loaded.signatures().size(),
+                loaded.source() == null ? SignatureDatabase.BUNDLED : loaded.source());
+    }
+
+    /**
+     * Подключает постоянный кэш результатов определения типа.
+     *
+     * @param file файл кэша или {@code null}, чтобы отключить кэш
+     * @return открытый кэш или {@code null}; кэш нужно закрыть после работы
+     * @throws IOException если файл кэша не удалось открыть
+     */
+    public static synchronized DetectionCache setCache(Path file) throws IOException {
+        cache = null;
+        if (file == null) {
+            return null;
+        }
+        DetectionCache opened = DetectionCache.open(file, fingerprint());
+        cache = opened;
+        return opened;
+    }
+
+    /**
+     * Возвращает отпечаток текущей базы сигнатур вместе с версией алгоритма определения.
+     *
+     * @return 64-битный отпечаток
+     */
+    private static long fingerprint() {
+        return registry.fingerprint() * 31 + DETECTOR_VERSION;
+    }
+
+    /**
+     * Возвращает текущий набор сигнатур.
+     *
+     * @return неизменяемый набор сигнатур
+     */
+    static SignatureRegistry signatures() {
+        return registry;
     }
 
     /**
@@ -70,28 +170,37 @@ public class Expander extends Position{
      * @throws IllegalStateException если файл не выбран
      */
     public static StringBuilder getExtensions() {
-        StringBuilder result = new StringBuilder();
+        return getExtensions(Session.defaultSession());
+    }
+
+    /**
+     * Возвращает сигнатуру файла, выбранного в указанном сеансе.
+     *
+     * @param session сеанс
+     * @return сигнатура файла в виде строки
+     * @throws IllegalStateException если файл не выбран
+     */
+    public static StringBuilder getExtensions(Session session) {
+        StringBuilder result = new StringBuilder(12);
+        File file = session.getFile();
 
-        if (Position.getFile() == null) {
+        if (file == null) {
             logger.error("an attempt to view the file. the file is not selected");
             throw new IllegalStateException("the file is not selected!");
         } else {
 
+            try {
+                ByteBuffer header = HeaderReader.read(file.toPath(), 4);
 
-            try (FileInputStream input = new FileInputStream(Position.getFile())) {
-                byte[] bytes = new byte[4];
-                input.read(bytes);
-
-                for (byte b : bytes) {
-                    result.append(String.format("%02X ", b));
+                for (int i = 0; i < 4; i++) {
+                    int b = i < header.limit() ? header.get(i) & 0xFF : 0;
+                    result.append(HEX[b >>> 4]).append(HEX[b & 0x0F]).append(' ');
                 }
-                logger.info("getting the file extension");
+                logger.debug("getting the file extension");
                 return result;
 
-
             } catch (IOException e) {
-                logger.error("ioexception");
-                e.printStackTrace();
+                logger.error("failed to read the file header: {}", e.getMessage());
             }
             return result;
         }
@@ -103,86 +212,296 @@ public class Expander extends Position{
      * @throws Exception если возникает ошибка при переименовании файла
      */
     public static void renameFile() throws Exception {
-        File file = Position.getFile();
+        renameFile(Session.defaultSession());
+    }
+
+    /**
+     * Переименовывает файл, выбранный в указанном сеансе, и выбирает
+     * переименованный файл.
+     *
+     * @param session сеанс
+     * @throws Exception если возникает ошибка при переименовании файла
+     */
+    public static void renameFile(Session session) throws Exception {
+        File file = session.getFile();
 
         if (file == null) {
             logger.error("an attempt to view the fiIe. the file is not selected");
             throw new IllegalStateException("the file is not selected!");
 
         } else {
-            logger.info("an attempt to rename a file");
-            StringBuilder extension = getExtensions();
-            String signature = extension.toString().strip();
+            logger.debug("an attempt to rename a file");
+            File renamedFile = restoreExtension(file);
 
+            session.setFile(renamedFile.getAbsoluteFile());
+            ConsoleOutput.println("file renamed to: " + renamedFile.getName());
+        }
+    }
 
-            String newExtension = null;
-            for (String key : extensions.keySet()) {
+    /**
+     * Определяет расширение файла по его сигнатуре, не обращаясь к выбранному
+     * в {@link Position} файлу. Метод не изменяет общее состояние и может
+     * вызываться одновременно из нескольких потоков. Если подключен кэш
+     * ({@link #setCache(Path)}), файл с неизменными размером и временем
+     * изменения не читается повторно.
+     *
+     * @param file проверяемый файл
+     * @return расширение файла или {@code null}, если тип не распознан
+     * @throws IOException если не удалось прочитать файл
+     */
+    public static String detectExtension(File file) throws IOException {
+        DetectionCache current = cache;
+        if (current == null) {
+            return detectUncached(file);
+        }
 
-                for (String value : extensions.get(key)) {
+        DetectionCache.Key key = DetectionCache.key(file.toPath());
+        String cached = current.lookup(key);
+        if (cached != DetectionCache.MISS) {
+            Metrics.CACHE_HITS.increment();
+            return cached;
+        }
+        Metrics.CACHE_MISSES.increment();
+        String newExtension = detectUncached(file);
+        try {
+            current.put(key, newExtension);
+        } catch (IOException e) {
+            logger.warn("failed to write to the detection cache: {}", e.getMessage());
+        }
+        return newExtension;
+    }
 
-                    if (value.equalsIgnoreCase(signature)) {
-                        newExtension = key;
-                        break;
-                    }
-                }
-            }
+    /**
+     * Определяет расширение файла по его содержимому без обращения к кэшу:
+     * по сигнатуре, а если сигнатура не найдена - с помощью {@link TextClassifier}.
+     *
+     * @param file проверяемый файл
+     * @return расширение файла или {@code null}, если тип не распознан
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static String detectUncached(File file) throws IOException {
+        SignatureTrie signatures = registry.trie();
+        ByteBuffer header = HeaderReader.read(file.toPath(), signatures.maxLength());
 
-            if ("zip".equals(newExtension)) {
-                newExtension = detectZipFileType(file);
-            }
+        // сигнатуры нет: для проверки на текст нужно окно побольше; короткий файл уже прочитан целиком
+        if (signatures.match(header) == null && header.remaining() == signatures.maxLength()) {
+            header = HeaderReader.read(file.toPath(), TextClassifier.WINDOW);
+        }
+        return detect(signatures, header, file);
+    }
+
+    /**
+     * Определяет расширение файла по уже прочитанному началу файла: по
+     * сигнатуре, для архивов ZIP - по центральному каталогу, а если сигнатура
+     * не найдена - с помощью {@link TextClassifier}.
+     *
+     * @param signatures дерево сигнатур
+     * @param header начало файла: не меньше {@link SignatureTrie#maxLength()} байтов,
+     *               а если сигнатура не подходит - не меньше {@link TextClassifier#WINDOW}
+     *               (или весь файл, если он короче); см. {@link #headerLength(SignatureTrie)}
+     * @param file файл, из которого прочитано начало
+     * @return расширение файла или {@code null}, если тип не распознан
+     * @throws IOException если не удалось прочитать центральный каталог архива
+     */
+    static String detect(SignatureTrie signatures, ByteBuffer header, File file) throws IOException {
+        long start = System.nanoTime();
+        String newExtension = signatures.match(header);
+
+        if (newExtension == null) {
+            newExtension = TextClassifier.classify(header);
+        }
+        Metrics.MATCHES.record(System.nanoTime() - start);
+        if ("zip".equals(newExtension)) {
+            newExtension = detectZipFileType(file);
+        }
+        Metrics.type(newExtension);
+        return newExtension;
+    }
+
+    /**
+     * Возвращает длину начала файла, достаточную для {@link #detect(SignatureTrie, ByteBuffer, File)}.
+     *
+     * @param signatures дерево сигнатур
+     * @return длина в байтах
+     */
+    static int headerLength(SignatureTrie signatures) {
+        return Math.max(signatures.maxLength(), TextClassifier.WINDOW);
+    }
+
+    /**
+     * Возвращает подключенный кэш результатов определения.
+     *
+     * @return кэш или {@code null}
+     */
+    static DetectionCache cache() {
+        return cache;
+    }
+
+    /**
+     * Восстанавливает расширение указанного файла.
+     *
+     * @param file файл с неизвестным расширением
+     * @return переименованный файл
+     * @throws IOException если не удалось прочитать файл
+     * @throws IllegalStateException если тип файла не распознан или переименование не удалось
+     */
+    static File restoreExtension(File file) throws IOException {
+        String newExtension = detectExtension(file);
+
+        if (newExtension == null) {
+            logger.error("unknown file type. cannot rename");
+            throw new IllegalStateException("unknown file type. cannot rename");
+        }
+        return restoreExtension(file, newExtension);
+    }
 
+    /**
+     * Переименовывает файл, присваивая ему уже определенное расширение
+     * (см. {@link Renamer#renameOne(Path, String)}).
+     *
+     * @param file переименовываемый файл
+     * @param newExtension новое расширение
+     * @return переименованный файл
+     * @throws RenameException если переименование не удалось или файл
+     *                         с новым именем уже существует
+     */
+    static File restoreExtension(File file, String newExtension) {
+        try {
+            File renamedFile = Renamer.renameOne(file.toPath(), newExtension).toFile();
+            logger.debug("successful file renaming attempt");
+            return renamedFile;
+        } catch (RenameException e) {
+            logger.error("failed to rename file: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает файл, в который будет переименован исходный файл. Заменяется
+     * только последнее расширение: из {@code report.2023.bin} получается
+     * {@code report.2023.pdf}, а имена скрытых файлов вида {@code .profile}
+     * сохраняются целиком.
+     *
+     * @param file исходный файл
+     * @param newExtension новое расширение
+     * @return файл с восстановленным расширением
+     */
+    static File targetFile(File file, String newExtension) {
+        return new File(file.getParentFile(), targetName(file.getName(), newExtension));
+    }
+
+    /**
+     * Возвращает имя файла с восстановленным расширением.
+     *
+     * @param name исходное имя файла
+     * @param newExtension новое расширение
+     * @return новое имя файла
+     */
+    static String targetName(String name, String newExtension) {
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return base + "." + newExtension;
+    }
+
+    /**
+     * Ищет тип файла по заголовку в дереве сигнатур.
+     *
+     * @param header байты заголовка файла
+     * @param length количество прочитанных байтов
+     * @return расширение файла или {@code null}, если сигнатура неизвестна
+     */
+    static String lookup(byte[] header, int length) {
+        return registry.trie().match(header, length);
+    }
 
-            if (newExtension != null) {
+    /**
+     * Ищет тип файла по заголовку прежним способом: байты форматируются в
+     * строку и сравниваются со всеми сигнатурами карты. Оставлен для сравнения
+     * производительности с {@link SignatureTrie}.
+     *
+     * @param header байты заголовка файла
+     * @return расширение файла или {@code null}, если сигнатура неизвестна
+     */
+    static String legacyLookup(byte[] header) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 4 && i < header.length; i++) {
+            result.append(String.format("%02X ", header[i]));
+        }
+        String signature = result.toString().strip();
 
-                String newFileName = file.getParent() + File.separator + file.getName().split("\\.")[0] + "." + newExtension;
+        Map<String, List<String>> extensions = registry.legacy();
+        for (String key : extensions.keySet()) {
 
+            for (String value : extensions.get(key)) {
 
-                File renamedFile = new File(newFileName);
-                if (file.renameTo(renamedFile)) {
+                if (value.equalsIgnoreCase(signature)) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
 
-                    Position.setFile(renamedFile.getAbsolutePath());
-                    logger.info("successful file renaming attempt");
-                    MainApp.appendToConsole("file renamed to: " + renamedFile.getName());
-                } else {
-                    logger.error("failed to rename file");
-                    throw new IllegalStateException("failed to rename file");
+    /**
+     * Определяет тип файла в формате zip (docx, pptx, xlsx, odt, ods, odp, odg,
+     * epub, jar, apk, xps или zip).
+     *
+     * @param file файл в формате zip
+     * @return тип файла или "zip"
+     */
+    static String detectZipFileType(File file) {
+        logger.debug("trying to determine the zip extension");
+        long start = System.nanoTime();
+        try {
+            try {
+                String type = ZipCentralDirectory.detect(file.toPath());
+                if (type != null) {
+                    logger.debug("the file is a {}", type);
+                    return type;
                 }
-            } else {
-                logger.error("unknown file type. cannot rename");
-                throw new IllegalStateException("unknown file type. cannot rename");
+            } catch (IOException e) {
+                logger.error("failed to read the zip central directory");
             }
+            return detectZipFileTypeByStream(file);
+        } finally {
+            Metrics.ZIP_INSPECTIONS.record(System.nanoTime() - start);
         }
     }
 
     /**
-     * Определяет тип файла в формате zip (docx, pptx, xlsx или zip).
+     * Определяет тип файла в формате zip последовательным чтением записей.
+     * Используется, если центральный каталог не найден (например, у обрезанного
+     * файла), и для сравнения производительности с {@link ZipCentralDirectory}.
+     * Записи проверяются теми же правилами {@link ContainerInspector}.
      *
      * @param file файл в формате zip
-     * @return тип файла (docx, pptx, xlsx или zip)
+     * @return тип файла или "zip"
      */
-    private static String detectZipFileType(File file) {
-        logger.info("trying to determine the zip extension");
+    static String detectZipFileTypeByStream(File file) {
+        ContainerInspector inspector = new ContainerInspector();
+        String type = null;
         try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(file))) {
             ZipEntry entry;
 
-            while ((entry = zipInputStream.getNextEntry()) != null) {
+            while (type == null && (entry = zipInputStream.getNextEntry()) != null) {
                 String name = entry.getName();
 
-                if (name.startsWith("word/")) {
-                    logger.info("the file is a docx");
-                    return "docx";
-                } else if (name.startsWith("ppt/")) {
-                    logger.info("the file is a pptx");
-                    return "pptx";
-                } else if (name.startsWith("xl/")) {
-                    logger.info("the file is a xlsx");
-                    return "xlsx";
+                type = inspector.entry(name);
+                if (type == null && name.equals("mimetype")) {
+                    type = ContainerInspector.byMediaType(new String(
+                            zipInputStream.readNBytes(ContainerInspector.MAX_MIMETYPE), StandardCharsets.US_ASCII));
+                } else if (type == null && name.equals("[Content_Types].xml")) {
+                    type = ContainerInspector.byContentTypes(new String(
+                            zipInputStream.readNBytes(1 << 20), StandardCharsets.UTF_8));
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("the zip file is damaged: {}", e.getMessage());
+        }
+        if (type == null) {
+            type = inspector.hint() != null ? inspector.hint() : "zip";
         }
-        logger.info("the file is a zip");
-        return "zip";
+        logger.debug("the file is a {}", type);
+        return type;
     }
 }
@@ -0,0 +1,107 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Класс, читающий заголовки файлов без создания буферов на каждый вызов.
+ *
+ * <p>Чтение выполняется через {@link FileChannel} в прямой {@link ByteBuffer},
+ * который создается один раз для каждого потока и затем переиспользуется.
+ * Размер буфера задается системным свойством {@code expander.header.max}
+ * (по умолчанию 64 КиБ). Участки, которые не помещаются в буфер, отображаются
+ * в память. Возвращаемый буфер действителен только до следующего чтения в том
+ * же потоке.
+ *
+ */
+final class HeaderReader {
+
+    /**
+     * Наибольшая длина заголовка, читаемого в буфер потока.
+     */
+    static final int MAX_HEADER = Math.max(16, Math.min(Integer.getInteger("expander.header.max", 64 * 1024), 1 << 24));
+
+    /**
+     * Буфер заголовка для каждого потока.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAX_HEADER));
+
+    private HeaderReader() {
+    }
+
+    /**
+     * Читает первые байты файла.
+     *
+     * @param path путь к файлу
+     * @param length количество байтов
+     * @return буфер с прочитанными байтами от позиции до границы; у короткого
+     * файла байтов меньше, чем запрошено
+     * @throws IOException если не удалось прочитать файл
+     */
+    static ByteBuffer read(Path path, int length) throws IOException {
+        return read(path, 0, length);
+    }
+
+    /**
+     * Читает участок файла.
+     *
+     * @param path путь к файлу
+     * @param offset смещение от начала файла
+     * @param length количество байтов
+     * @return буфер с прочитанными байтами от позиции до границы
+     * @throws IOException если не удалось прочитать файл
+     */
+    static ByteBuffer read(Path path, long offset, int length) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, offset, length);
+            Metrics.HEADER_BYTES.add(header.remaining());
+            return header;
+        } finally {
+            Metrics.HEADER_READS.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Читает участок открытого файла. Короткие чтения повторяются, пока не
+     * будет прочитан весь участок или не закончится файл.
+     *
+     * @param channel канал файла
+     * @param offset смещение от начала файла
+     * @param length количество байтов
+     * @return буфер с прочитанными байтами от позиции до границы, порядок байтов
+     * {@link ByteOrder#BIG_ENDIAN}; вызывающий код не должен менять порядок у
+     * самого буфера, только у его копии ({@link ByteBuffer#duplicate()})
+     * @throws IOException если не удалось прочитать файл
+     * @throws IllegalArgumentException если смещение или длина отрицательны
+     */
+    static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("invalid header range");
+        }
+
+        if (length > MAX_HEADER) {
+            long available = Math.max(0, Math.min(length, channel.size() - offset));
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, available);
+        }
+
+        // буфер общий для потока: порядок байтов, измененный вызывающим кодом, сбрасывается
+        ByteBuffer buffer = BUFFER.get().order(ByteOrder.BIG_ENDIAN);
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+}
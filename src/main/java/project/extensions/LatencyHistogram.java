@@ -0,0 +1,267 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с логарифмически-линейными интервалами.
+ *
+ * <p>Каждая степень двойки делится на {@value #SUB_BUCKETS} равных интервалов,
+ * как в HdrHistogram, поэтому относительная погрешность процентилей не больше
+ * 1/{@value #SUB_BUCKETS} во всем диапазоне от наносекунд до часов, а память
+ * постоянна (меньше 4 КиБ). Запись значения - одна атомарная операция над
+ * счетчиком интервала без блокировок; методы можно вызывать из любых потоков.
+ *
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Количество двоичных разрядов номера интервала внутри степени двойки.
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * Количество интервалов в каждой степени двойки.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Количество интервалов, покрывающее все неотрицательные значения long.
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Записывает одно значение.
+     *
+     * @param nanos длительность в наносекундах; отрицательные значения считаются нулем
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Возвращает количество записанных значений.
+     *
+     * @return количество значений
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * Возвращает значение, не меньше которого указанная доля записанных
+     * значений. Результат - верхняя граница интервала, в который попал
+     * процентиль, но не больше наибольшего значения.
+     *
+     * @param percentile процентиль от 0 до 100
+     * @return значение в наносекундах или 0, если значений нет
+     * @throws IllegalArgumentException если процентиль вне диапазона
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("the percentile must be between 0 and 100");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Возвращает среднее значение.
+     *
+     * @return среднее в наносекундах или 0, если значений нет
+     */
+    public double mean() {
+        long recorded = total.sum();
+        return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * Возвращает наибольшее записанное значение.
+     *
+     * @return значение в наносекундах
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Удаляет все записанные значения. Значения, записываемые одновременно со
+     * сбросом, могут частично сохраниться.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Возвращает сводку гистограммы.
+     *
+     * @return сводка в микросекундах
+     */
+    public Summary summary() {
+        return new Summary(count(), mean() / 1000, percentile(50) / 1000.0,
+                percentile(90) / 1000.0, percentile(99) / 1000.0, max() / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return summary().toString();
+    }
+
+    /**
+     * Возвращает номер интервала для значения.
+     *
+     * @param value неотрицательное значение
+     * @return номер интервала
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Возвращает наименьшее значение интервала.
+     *
+     * @param index номер интервала
+     * @return нижняя граница
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * Возвращает наибольшее значение интервала.
+     *
+     * @param index номер интервала
+     * @return верхняя граница
+     */
+    static long upperBound(int index) {
+        return index + 1 == BUCKETS ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+    }
+
+    /**
+     * Сводка гистограммы. Методы доступа названы по соглашению JavaBeans, чтобы
+     * сводка отображалась в JMX как составное значение.
+     */
+    public static final class Summary {
+
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Summary(long count, double mean, double p50, double p90, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        /**
+         * Возвращает количество значений.
+         *
+         * @return количество значений
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Возвращает среднее значение.
+         *
+         * @return среднее в микросекундах
+         */
+        public double getMeanMicros() {
+            return mean;
+        }
+
+        /**
+         * Возвращает медиану.
+         *
+         * @return медиана в микросекундах
+         */
+        public double getP50Micros() {
+            return p50;
+        }
+
+        /**
+         * Возвращает 90-й процентиль.
+         *
+         * @return процентиль в микросекундах
+         */
+        public double getP90Micros() {
+            return p90;
+        }
+
+        /**
+         * Возвращает 99-й процентиль.
+         *
+         * @return процентиль в микросекундах
+         */
+        public double getP99Micros() {
+            return p99;
+        }
+
+        /**
+         * Возвращает наибольшее значение.
+         *
+         * @return значение в микросекундах
+         */
+        public double getMaxMicros() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count %d, mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us,"
+                    + " max %.1f us", count, mean, p50, p90, p99, max);
+        }
+    }
+}
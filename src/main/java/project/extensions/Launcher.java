@@ -6,17 +6,35 @@ package project.extensions;
 /**
  * Класс, запускающий приложение.
  * <p>Этот класс является точкой входа в приложение и запускает основной класс
- * {@link MainApp}.
+ * {@link MainApp}. Если в аргументах передана команда консольного режима,
+ * вместо графического интерфейса запускается {@link Cli}, и классы JavaFX
+ * не загружаются.
+ * <p>Консольный режим по умолчанию использует профиль журнала
+ * {@value #BATCH_LOGGING} с асинхронной записью, чтобы журнал не замедлял
+ * обработку больших деревьев. Другой профиль можно выбрать системным
+ * свойством {@code log4j.configurationFile}.
  *
  */
 public class Launcher {
 
+    /**
+     * Конфигурация журнала для консольного режима.
+     */
+    static final String BATCH_LOGGING = "log4j2-batch.xml";
+
     /**
      * Основной метод класса, запускающий приложение.
      *
      * @param args аргументы командной строки
      */
     public static void main(String[] args) {
-        MainApp.main(args);
+        if (Cli.accepts(args)) {
+            if (System.getProperty("log4j.configurationFile") == null) {
+                System.setProperty("log4j.configurationFile", BATCH_LOGGING);
+            }
+            Cli.main(args);
+        } else {
+            MainApp.main(args);
+        }
     }
 }
@@ -4,17 +4,31 @@
 
 package project.extensions;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * Основной класс приложения.
@@ -34,15 +48,35 @@ public class MainApp extends Application {
     private final Position position = new Position(Paths.get("").toAbsolutePath());
 
     /**
-     * Текстовая область для вывода информации.
+     * Строки консоли: последние {@code expander.console.lines} строк вывода.
      */
-    public static TextArea outputArea;
+    static final ConsoleBuffer console = new ConsoleBuffer();
+
+    /**
+     * Список для вывода информации; отображает только видимые строки {@link #console}.
+     */
+    public static ListView<String> outputArea;
+
+    /**
+     * Вывод в текстовую область порциями; {@code null}, пока окно не открыто.
+     */
+    private static BatchedOutput output;
 
     /**
      * Поле для ввода команд.
      */
     private TextField inputField;
 
+    /**
+     * Строка состояния с прогрессом выполняемой команды.
+     */
+    private Label status;
+
+    /**
+     * Исполнитель долгих команд.
+     */
+    private CommandExecutor executor;
+
     /**
      * Метод, вызываемый при запуске приложения.
      *
@@ -53,29 +87,67 @@ public class MainApp extends Application {
 
         stage.setTitle("Extension Restorer");
 
-        outputArea = new TextArea();
-        outputArea.setEditable(false);
-        outputArea.setStyle("-fx-control-inner-background: black; -fx-text-fill: white;");
+        outputArea = new ListView<>(console);
+        outputArea.setStyle("-fx-control-inner-background: black; -fx-font-family: monospace;");
+        outputArea.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        outputArea.setOnKeyPressed(event -> {
+            if (event.isShortcutDown() && event.getCode() == KeyCode.C) {
+                ClipboardContent content = new ClipboardContent();
+                content.putString(String.join("\n", outputArea.getSelectionModel().getSelectedItems()));
+                Clipboard.getSystemClipboard().setContent(content);
+            }
+        });
+        VBox.setVgrow(outputArea, Priority.ALWAYS);
 
         inputField = new TextField();
         inputField.setPromptText("Enter command...");
         inputField.setStyle("-fx-control-inner-background: black; -fx-text-fill: white;");
 
         inputField.setOnAction(event -> handleInput());
+        inputField.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ESCAPE) {
+                executor.cancel();
+            }
+        });
+
+        status = new Label();
+        status.setStyle("-fx-text-fill: gray;");
 
-        VBox layout = new VBox(10, outputArea, inputField);
+        VBox layout = new VBox(10, outputArea, inputField, status);
         layout.setStyle("-fx-background-color: black;");
         Scene scene = new Scene(layout, 600, 400);
         stage.setScene(scene);
         stage.show();
 
         Expander.init();
+        Metrics.registerMBean();
+        output = new BatchedOutput(Platform::runLater, Platform::isFxApplicationThread, MainApp::show);
+        executor = new CommandExecutor(MainApp::appendToConsole);
+        ConsoleOutput.setSink(MainApp::appendToConsole);
+
+        Timeline progress = new Timeline(new KeyFrame(Duration.millis(250), event -> {
+            CommandExecutor.Job job = executor.current();
+            status.setText(job == null ? "" : job.getName() + ": " + job.getProgress() + " (esc - cancel)");
+        }));
+        progress.setCycleCount(Timeline.INDEFINITE);
+        progress.play();
 
         appendToConsole("type \"help\" to view the commands");
         appendToConsole(Position.getPath() + "$ ");
     }
 
 
+    /**
+     * Метод, вызываемый при закрытии окна: отменяет выполняемую команду.
+     */
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+
     /**
      * Метод, обрабатывающий ввод пользователя.
      */
@@ -85,11 +157,9 @@ public class MainApp extends Application {
             String input = inputField.getText().strip();
             inputField.clear();
 
-            if (!input.isEmpty()) {
-                processCommand(input);
+            if (input.isEmpty() || processCommand(input)) {
+                appendToConsole(Position.getPath() + "$ ");
             }
-
-            appendToConsole(Position.getPath() + "$ ");
         } catch (Exception e) {
             appendToConsole("Error processing input: " + e.getMessage());
         }
@@ -106,13 +176,22 @@ public class MainApp extends Application {
      *     <li>take - выбор файла для восстановления</li>
      *     <li>see - просмотр выбранного файла</li>
      *     <li>rename - восстановление расширения выбранного файла</li>
+     *     <li>restore - пакетное восстановление расширений всех файлов в дереве текущей директории</li>
+     *     <li>watch - восстановление расширений файлов текущей директории по мере их появления до отмены</li>
+     *     <li>signatures - загрузка базы сигнатур из файла или повторная загрузка измененной базы</li>
+     *     <li>cancel - отмена выполняемой команды</li>
+     *     <li>clear - очистка консоли</li>
      *     <li>exit - выход из приложения</li>
      *     <li>help - вывод справки по командам</li>
      * </ul>
+     * Команды ls, rename, restore, watch и signatures читают диск и выполняются в
+     * фоновом потоке {@link CommandExecutor}; остальные выполняются сразу.
      *
      * @param input команда, введенная пользователем
+     * @return {@code false}, если команда продолжает выполняться в фоне и сама
+     * выведет приглашение после завершения
      */
-    private void processCommand(String input) {
+    private boolean processCommand(String input) {
 
         String[] parts = input.split(" ", 2);
         String command = parts[0];
@@ -121,10 +200,8 @@ public class MainApp extends Application {
         try {
             switch (command) {
                 case "ls":
-                    for (Path path : position.getFilesDirectory()) {
-                        appendToConsole(" -> "+path.toString());
-                    }
-                    break;
+                    Session listing = new Session(Position.getPath());
+                    return submit("ls", job -> listDirectory(new Position(listing), job));
                 case "cd":
                     position.changePath(argument);
                     break;
@@ -135,10 +212,69 @@ public class MainApp extends Application {
                     appendToConsole(Position.getFileName());
                     break;
                 case "rename":
-                    Expander.renameFile();
+                    // команда работает с выбором на момент запуска, а не с изменениями во время ее работы
+                    Session selection = Session.defaultSession().snapshot();
+                    File selected = selection.getFile();
+                    return submit("rename", job -> {
+                        Expander.renameFile(selection);
+                        Session.defaultSession().replaceFile(selected, selection.getFile());
+                    });
+                case "restore":
+                    int threads = argument.isEmpty()
+                            ? Runtime.getRuntime().availableProcessors()
+                            : Integer.parseInt(argument);
+                    Path root = Position.getPath();
+                    return submit("restore", job -> {
+                        BatchRestorer restorer = new BatchRestorer(threads);
+                        AtomicLong processed = new AtomicLong();
+                        restorer.setListener(event -> job.progress(processed.incrementAndGet(), -1));
+                        job.onCancel(restorer::cancel);
+                        appendToConsole(restorer.restore(root).toString());
+                    });
+                case "watch":
+                    DirectoryWatcher watcher = new DirectoryWatcher(Position.getPath());
+                    if (!argument.isEmpty()) {
+                        watcher.setQuietMillis(Long.parseLong(argument));
+                    }
+                    return submit("watch", job -> {
+                        AtomicLong processed = new AtomicLong();
+                        watcher.setListener(event -> {
+                            job.progress(processed.incrementAndGet(), -1);
+                            appendToConsole(" -> " + event.file().getFileName() + ": "
+                                    + (event.target() != null ? event.target().getFileName()
+                                    : event.message() != null ? event.message() : "unknown type"));
+                        });
+                        job.onCancel(watcher::cancel);
+                        appendToConsole("watching " + Position.getPath() + " (esc - stop)");
+                        appendToConsole(watcher.watch().toString());
+                    });
+                case "signatures":
+                    Path file = argument.isEmpty() ? null : Position.getPath().resolve(argument);
+                    return submit("signatures", job -> {
+                        if (file == null) {
+                            appendToConsole(Expander.reloadSignatures()
+                                    ? "signature database reloaded"
+                                    : "signature database is up to date");
+                        } else {
+                            Expander.loadSignatures(file);
+                            appendToConsole("signature database loaded");
+                        }
+                    });
+                case "clear":
+                    console.clear();
+                    break;
+                case "stats":
+                    appendToConsole(Metrics.dump());
+                    if (argument.equals("reset")) {
+                        Metrics.reset();
+                    }
+                    break;
+                case "cancel":
+                    appendToConsole(executor.cancel() ? "cancelling..." : "nothing to cancel");
                     break;
                 case "exit":
                     appendToConsole("exiting...");
+                    executor.close();
                     logger.info("еnd of the program");
                     System.exit(0);
                     break;
@@ -152,16 +288,87 @@ public class MainApp extends Application {
         } catch (Exception e) {
             appendToConsole("error executing command: " + e.getMessage());
         }
+        return true;
     }
 
 
     /**
-     * Метод, добавляющий текст в текстовую область.
+     * Отправляет команду на выполнение в фоновом потоке. После завершения
+     * команды выводится приглашение.
+     *
+     * @param name имя команды
+     * @param command команда
+     * @return {@code false}: приглашение выведет сама команда
+     */
+    private boolean submit(String name, CommandExecutor.Command command) {
+        executor.submit(name, command, () -> appendToConsole(Position.getPath() + "$ "));
+        return false;
+    }
+
+
+    /**
+     * Выводит содержимое директории, не дожидаясь чтения всей директории:
+     * имена читаются по мере вывода, поэтому расход памяти не зависит от
+     * размера директории.
+     *
+     * @param position положение с директорией для вывода
+     * @param job задача команды для отмены и прогресса
+     */
+    private static void listDirectory(Position position, CommandExecutor.Job job) {
+        try (Stream<Path> files = position.streamFilesDirectory()) {
+            Iterator<Path> iterator = files.iterator();
+            long count = 0;
+            while (iterator.hasNext()) {
+                job.checkCancelled();
+                appendToConsole(" -> " + iterator.next());
+                job.progress(++count, -1);
+            }
+        }
+    }
+
+
+    /**
+     * Метод, добавляющий текст в текстовую область. Метод можно вызывать из
+     * любого потока: строки выводятся порциями через {@link BatchedOutput}.
      *
      * @param text текст, который нужно добавить
      */
     public static void appendToConsole(String text) {
-        outputArea.appendText(text + "\n");
+        if (output == null) {
+            console.append(text);
+        } else {
+            output.accept(text);
+        }
+    }
+
+
+    /**
+     * Добавляет строки в консоль и прокручивает ее к последней строке, если
+     * пользователь не просматривает более ранний вывод. Вызывается в потоке интерфейса.
+     *
+     * @param lines строки
+     */
+    private static void show(List<String> lines) {
+        boolean following = isFollowing();
+        console.append(lines);
+        if (following && !console.isEmpty()) {
+            outputArea.scrollTo(console.size() - 1);
+        }
+    }
+
+
+    /**
+     * Проверяет, видна ли последняя строка консоли.
+     *
+     * @return {@code true}, если консоль прокручена до конца
+     */
+    private static boolean isFollowing() {
+        VirtualFlow<?> flow = (VirtualFlow<?>) outputArea.lookup(".virtual-flow");
+        if (flow == null || console.isEmpty()) {
+            return true;
+        }
+        IndexedCell<?> last = flow.getLastVisibleCell();
+        return last == null || last.getIndex() >= console.size() - 1;
     }
 
 
@@ -174,6 +381,12 @@ public class MainApp extends Application {
         appendToConsole("take <> - select a file for future recovery");
         appendToConsole("see - viewing the selected file");
         appendToConsole("rename - restore the extension of the selected file");
+        appendToConsole("restore [threads] - restore the extensions of all files in the current directory tree");
+        appendToConsole("watch [quiet ms] - restore the extensions of new files in the current directory until cancelled");
+        appendToConsole("signatures [file] - load a signature database or reload the changed one");
+        appendToConsole("cancel - cancel the running command (or press esc)");
+        appendToConsole("clear - clear the console");
+        appendToConsole("stats [reset] - show detection and rename statistics (and then reset them)");
         appendToConsole("exit - exiting the program");
     }
 
@@ -0,0 +1,281 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Большой файл, читаемый через отображаемые в память окна.
+ *
+ * <p>Файл любого размера отображается окнами по {@link #WINDOW} байтов
+ * (системное свойство {@code expander.carve.window}, по умолчанию 64 МиБ).
+ * Произвольное чтение ({@link #get(long)}) использует одно текущее окно и
+ * отображает новое, начиная со страницы запрошенного байта, только когда
+ * чтение выходит за его границы, поэтому последовательное чтение вперед
+ * отображает каждый участок файла один раз. Объект не является потокобезопасным.
+ *
+ */
+final class MappedBlob implements Closeable {
+
+    /**
+     * Размер окна.
+     */
+    static final int WINDOW = Math.max(1 << 16, Integer.getInteger("expander.carve.window", 64 << 20));
+
+    /**
+     * Размер страницы, по которому выравнивается начало окна.
+     */
+    private static final int PAGE = 4096;
+
+    private final FileChannel channel;
+    private final long size;
+
+    private MappedByteBuffer window;
+    private long base;
+    private int length;
+
+    /**
+     * Последний поиск {@link #indexOf}: образец, начало, граница и результат.
+     */
+    private byte[] lastPattern;
+    private long lastFrom;
+    private long lastLimit;
+    private long lastFound;
+
+    /**
+     * Количество позиций, просмотренных {@link #indexOf} за все время.
+     */
+    private long scanned;
+
+    /**
+     * Открывает файл для чтения.
+     *
+     * @param file путь к файлу
+     * @throws IOException если файл не удалось открыть
+     */
+    MappedBlob(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * Возвращает размер файла.
+     *
+     * @return размер в байтах
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Возвращает канал файла.
+     *
+     * @return канал
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Отображает окно, начинающееся с указанной позиции, независимо от
+     * текущего окна. Используется для последовательного просмотра файла.
+     *
+     * @param position позиция начала окна
+     * @return окно; байт с индексом {@code i} находится в позиции {@code position + i}
+     * @throws IOException если окно не удалось отобразить
+     */
+    MappedByteBuffer map(long position) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+    }
+
+    /**
+     * Возвращает байт файла.
+     *
+     * @param position позиция
+     * @return байт без знака или -1 за концом файла
+     * @throws UncheckedIOException если окно не удалось отобразить
+     */
+    int get(long position) {
+        if (position < 0 || position >= size) {
+            return -1;
+        }
+        long offset = position - base;
+        if (window == null || offset < 0 || offset >= length) {
+            remap(position);
+            offset = position - base;
+        }
+        return window.get((int) offset) & 0xFF;
+    }
+
+    /**
+     * Читает 16-битное число в порядке от младшего байта к старшему.
+     *
+     * @param position позиция
+     * @return число или -1 за концом файла
+     */
+    int u16le(long position) {
+        int b0 = get(position);
+        int b1 = get(position + 1);
+        return (b0 | b1) < 0 ? -1 : b0 | b1 << 8;
+    }
+
+    /**
+     * Читает 16-битное число в порядке от старшего байта к младшему.
+     *
+     * @param position позиция
+     * @return число или -1 за концом файла
+     */
+    int u16be(long position) {
+        int b0 = get(position);
+        int b1 = get(position + 1);
+        return (b0 | b1) < 0 ? -1 : b0 << 8 | b1;
+    }
+
+    /**
+     * Читает 32-битное число без знака в порядке от младшего байта к старшему.
+     *
+     * @param position позиция
+     * @return число или -1 за концом файла
+     */
+    long u32le(long position) {
+        int low = u16le(position);
+        int high = u16le(position + 2);
+        return (low | high) < 0 ? -1 : (long) high << 16 | low;
+    }
+
+    /**
+     * Читает 32-битное число без знака в порядке от старшего байта к младшему.
+     *
+     * @param position позиция
+     * @return число или -1 за концом файла
+     */
+    long u32be(long position) {
+        int high = u16be(position);
+        int low = u16be(position + 2);
+        return (low | high) < 0 ? -1 : (long) high << 16 | low;
+    }
+
+    /**
+     * Читает 64-битное число в порядке от младшего байта к старшему.
+     *
+     * @param position позиция
+     * @return число или -1 за концом файла или если оно не помещается в long
+     */
+    long u64le(long position) {
+        long low = u32le(position);
+        long high = u32le(position + 4);
+        return (low | high) < 0 || high > Integer.MAX_VALUE ? -1 : high << 32 | low;
+    }
+
+    /**
+     * Копирует байты файла в массив.
+     *
+     * @param position позиция
+     * @param target массив
+     * @return количество скопированных байтов (меньше длины массива у конца файла)
+     */
+    int read(long position, byte[] target) {
+        int count = (int) Math.max(0, Math.min(target.length, size - position));
+        for (int i = 0; i < count; i++) {
+            target[i] = (byte) get(position + i);
+        }
+        return count;
+    }
+
+    /**
+     * Проверяет, совпадают ли байты файла с образцом.
+     *
+     * @param position позиция
+     * @param pattern образец
+     * @return {@code true}, если байты совпадают
+     */
+    boolean matches(long position, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (get(position + i) != (pattern[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ищет первое вхождение образца. Результат последнего поиска запоминается:
+     * если следующий поиск того же образца начинается не раньше, уже
+     * просмотренная часть файла не читается повторно, а поиск с большей границей
+     * продолжается с места, где закончился прежний. Так ложные начала файлов
+     * (внутри одного поврежденного файла или подряд в образце, где граница
+     * поиска сдвигается вместе с началом) не приводят к многократному просмотру
+     * одних и тех же байтов, и все поиски образца вместе читают файл один раз.
+     *
+     * @param pattern образец
+     * @param from позиция начала поиска
+     * @param limit позиция, до которой образец должен закончиться
+     * @return позиция вхождения или -1
+     */
+    long indexOf(byte[] pattern, long from, long limit) {
+        long start = from;
+        long searched = from;
+        if (pattern == lastPattern && from >= lastFrom) {
+            if (lastFound >= 0 && from <= lastFound) {
+                // между началом прежнего поиска и найденным вхождением образца нет
+                return lastFound + pattern.length <= limit ? lastFound : -1;
+            }
+            if (lastFound < 0) {
+                if (limit <= lastLimit) {
+                    return -1;
+                }
+                // до прежней границы образца нет: поиск продолжается после нее
+                searched = lastFrom;
+                start = Math.max(from, lastLimit - pattern.length + 1);
+            }
+        }
+        int first = pattern[0] & 0xFF;
+        long last = Math.min(limit, size) - pattern.length;
+        long found = -1;
+        for (long position = start; position <= last; position++) {
+            if (get(position) == first && matches(position, pattern)) {
+                found = position;
+                break;
+            }
+        }
+        scanned += Math.max(0, (found >= 0 ? found : last) - start + 1);
+        lastPattern = pattern;
+        lastFrom = searched;
+        lastLimit = limit;
+        lastFound = found;
+        return found;
+    }
+
+    /**
+     * Возвращает количество позиций, просмотренных при поиске образцов.
+     *
+     * @return количество позиций
+     */
+    long scanned() {
+        return scanned;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void remap(long position) {
+        base = position - position % PAGE;
+        try {
+            window = map(base);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        length = window.limit();
+    }
+}
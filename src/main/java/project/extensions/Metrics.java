@@ -0,0 +1,243 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Показатели производительности определения типов и переименования.
+ *
+ * <p>Счетчики и гистограммы общие для всего приложения и обновляются без
+ * блокировок, поэтому их можно вести на каждом файле. Показатели доступны
+ * через JMX ({@link #registerMBean()}), командой {@code stats} графического
+ * интерфейса и параметром {@code --stats} консольного режима.
+ *
+ */
+public final class Metrics {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(Metrics.class);
+
+    /**
+     * Имя объекта JMX.
+     */
+    public static final String OBJECT_NAME = "project.extensions:type=Metrics";
+
+    /**
+     * Имя, под которым учитываются файлы с нераспознанным типом.
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * Длительность чтения заголовков файлов.
+     */
+    static final LatencyHistogram HEADER_READS = new LatencyHistogram();
+
+    /**
+     * Длительность сопоставления заголовков с сигнатурами и классификации текста.
+     */
+    static final LatencyHistogram MATCHES = new LatencyHistogram();
+
+    /**
+     * Длительность разбора архивов ZIP.
+     */
+    static final LatencyHistogram ZIP_INSPECTIONS = new LatencyHistogram();
+
+    /**
+     * Длительность переименований.
+     */
+    static final LatencyHistogram RENAMES = new LatencyHistogram();
+
+    /**
+     * Счетчики событий.
+     */
+    static final LongAdder HEADER_BYTES = new LongAdder();
+    static final LongAdder CACHE_HITS = new LongAdder();
+    static final LongAdder CACHE_MISSES = new LongAdder();
+    static final LongAdder RENAME_FAILURES = new LongAdder();
+    static final LongAdder FAILURES = new LongAdder();
+    static final LongAdder HASHED_BYTES = new LongAdder();
+    static final LongAdder DUPLICATES = new LongAdder();
+
+    /**
+     * Количество файлов каждого типа.
+     */
+    private static final Map<String, LongAdder> TYPES = new ConcurrentHashMap<>();
+
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * Учитывает определенный тип файла.
+     *
+     * @param type расширение или {@code null}, если тип не распознан
+     */
+    static void type(String type) {
+        TYPES.computeIfAbsent(type == null ? UNKNOWN : type, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Возвращает количество файлов каждого типа.
+     *
+     * @return типы в алфавитном порядке и количество файлов
+     */
+    public static Map<String, Long> types() {
+        Map<String, Long> result = new TreeMap<>();
+        TYPES.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    /**
+     * Обнуляет все показатели.
+     */
+    public static void reset() {
+        HEADER_READS.reset();
+        MATCHES.reset();
+        ZIP_INSPECTIONS.reset();
+        RENAMES.reset();
+        HEADER_BYTES.reset();
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+        RENAME_FAILURES.reset();
+        FAILURES.reset();
+        HASHED_BYTES.reset();
+        DUPLICATES.reset();
+        TYPES.clear();
+    }
+
+    /**
+     * Возвращает все показатели в текстовом виде, по одному на строку.
+     *
+     * @return текстовая сводка
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder(512);
+        dump.append(String.format(Locale.ROOT, "header reads: %d (%.1f MiB); %s%n", HEADER_READS.count(),
+                HEADER_BYTES.sum() / (1024.0 * 1024.0), HEADER_READS));
+        dump.append("matches: ").append(MATCHES).append(System.lineSeparator());
+        dump.append("zip inspections: ").append(ZIP_INSPECTIONS).append(System.lineSeparator());
+        dump.append("renames: ").append(RENAMES).append(", failed ").append(RENAME_FAILURES.sum())
+                .append(System.lineSeparator());
+        dump.append("cache: hits ").append(CACHE_HITS.sum()).append(", misses ").append(CACHE_MISSES.sum())
+                .append(System.lineSeparator());
+        dump.append(String.format(Locale.ROOT, "duplicates: %d, hashed %.1f MiB%n", DUPLICATES.sum(),
+                HASHED_BYTES.sum() / (1024.0 * 1024.0)));
+        dump.append("failures: ").append(FAILURES.sum()).append(System.lineSeparator());
+        dump.append("types: ").append(types());
+        return dump.toString();
+    }
+
+    /**
+     * Регистрирует показатели в JMX под именем {@value #OBJECT_NAME}.
+     * Повторные вызовы ничего не делают; ошибка регистрации записывается в
+     * журнал и не прерывает работу.
+     */
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            logger.warn("failed to register the metrics mbean: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Реализация интерфейса управления JMX.
+     */
+    private static final class Bean implements MetricsMXBean {
+
+        @Override
+        public long getHeaderReads() {
+            return HEADER_READS.count();
+        }
+
+        @Override
+        public long getHeaderBytes() {
+            return HEADER_BYTES.sum();
+        }
+
+        @Override
+        public long getCacheHits() {
+            return CACHE_HITS.sum();
+        }
+
+        @Override
+        public long getCacheMisses() {
+            return CACHE_MISSES.sum();
+        }
+
+        @Override
+        public Map<String, Long> getMatchesByType() {
+            return types();
+        }
+
+        @Override
+        public long getRenameFailures() {
+            return RENAME_FAILURES.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return FAILURES.sum();
+        }
+
+        @Override
+        public long getDuplicates() {
+            return DUPLICATES.sum();
+        }
+
+        @Override
+        public long getHashedBytes() {
+            return HASHED_BYTES.sum();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getHeaderReadLatency() {
+            return HEADER_READS.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getMatchLatency() {
+            return MATCHES.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getZipInspectionLatency() {
+            return ZIP_INSPECTIONS.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getRenameLatency() {
+            return RENAMES.summary();
+        }
+
+        @Override
+        public String getDump() {
+            return dump();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
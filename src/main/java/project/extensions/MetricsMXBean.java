@@ -0,0 +1,120 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.Map;
+
+/**
+ * Интерфейс управления JMX со счетчиками {@link Metrics}. Объект
+ * регистрируется под именем {@value Metrics#OBJECT_NAME} и доступен, например,
+ * в JConsole и VisualVM.
+ *
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Возвращает количество чтений заголовков файлов.
+     *
+     * @return количество чтений
+     */
+    long getHeaderReads();
+
+    /**
+     * Возвращает количество прочитанных байтов заголовков.
+     *
+     * @return количество байтов
+     */
+    long getHeaderBytes();
+
+    /**
+     * Возвращает количество результатов, найденных в кэше.
+     *
+     * @return количество попаданий
+     */
+    long getCacheHits();
+
+    /**
+     * Возвращает количество файлов, не найденных в кэше.
+     *
+     * @return количество промахов
+     */
+    long getCacheMisses();
+
+    /**
+     * Возвращает количество определенных типов по расширениям; файлы с
+     * нераспознанным типом учитываются под именем {@value Metrics#UNKNOWN}.
+     *
+     * @return количество файлов каждого типа
+     */
+    Map<String, Long> getMatchesByType();
+
+    /**
+     * Возвращает количество ошибок переименования.
+     *
+     * @return количество ошибок
+     */
+    long getRenameFailures();
+
+    /**
+     * Возвращает количество файлов, которые не удалось обработать.
+     *
+     * @return количество ошибок
+     */
+    long getFailures();
+
+    /**
+     * Возвращает количество файлов, совпавших по содержимому с уже восстановленными.
+     *
+     * @return количество повторов
+     */
+    long getDuplicates();
+
+    /**
+     * Возвращает количество байтов, прочитанных для хеширования содержимого.
+     *
+     * @return количество байтов
+     */
+    long getHashedBytes();
+
+    /**
+     * Возвращает длительность чтения заголовков.
+     *
+     * @return сводка гистограммы
+     */
+    LatencyHistogram.Summary getHeaderReadLatency();
+
+    /**
+     * Возвращает длительность сопоставления заголовков с сигнатурами.
+     *
+     * @return сводка гистограммы
+     */
+    LatencyHistogram.Summary getMatchLatency();
+
+    /**
+     * Возвращает длительность разбора архивов ZIP.
+     *
+     * @return сводка гистограммы
+     */
+    LatencyHistogram.Summary getZipInspectionLatency();
+
+    /**
+     * Возвращает длительность переименований.
+     *
+     * @return сводка гистограммы
+     */
+    LatencyHistogram.Summary getRenameLatency();
+
+    /**
+     * Возвращает все показатели в текстовом виде.
+     *
+     * @return текстовая сводка
+     */
+    String getDump();
+
+    /**
+     * Обнуляет все показатели.
+     */
+    void reset();
+}
@@ -0,0 +1,162 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Автомат Ахо-Корасик для поиска нескольких последовательностей байтов в потоке.
+ *
+ * <p>Автомат строится один раз и хранится как полная таблица переходов:
+ * переходы по ссылкам неудачи вычислены заранее, поэтому обработка каждого
+ * байта - одно чтение массива независимо от количества образцов. Состояния,
+ * в которых заканчивается хотя бы один образец, хранят длины всех таких
+ * образцов (включая найденные по ссылкам неудачи). После построения объект не
+ * изменяется и может использоваться из нескольких потоков.
+ *
+ */
+final class PatternScanner {
+
+    /**
+     * Количество возможных значений байта.
+     */
+    private static final int ALPHABET = 256;
+
+    /**
+     * Таблица переходов: следующее состояние для состояния {@code s} и байта
+     * {@code b} находится в ячейке {@code s * 256 + b}.
+     */
+    private final int[] next;
+
+    /**
+     * Длины образцов, заканчивающихся в состоянии, или {@code null}.
+     */
+    private final int[][] matches;
+
+    private PatternScanner(int[] next, int[][] matches) {
+        this.next = next;
+        this.matches = matches;
+    }
+
+    /**
+     * Строит автомат по списку образцов.
+     *
+     * @param patterns непустые последовательности байтов
+     * @return автомат
+     * @throws IllegalArgumentException если образец пуст
+     */
+    static PatternScanner compile(List<byte[]> patterns) {
+        int capacity = 1;
+        for (byte[] pattern : patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("empty pattern");
+            }
+            capacity += pattern.length;
+        }
+
+        // дерево образцов; -1 - перехода нет
+        int[] next = new int[capacity * ALPHABET];
+        Arrays.fill(next, -1);
+        int[][] matches = new int[capacity][];
+        int states = 1;
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                int cell = state * ALPHABET + (b & 0xFF);
+                if (next[cell] < 0) {
+                    next[cell] = states++;
+                }
+                state = next[cell];
+            }
+            matches[state] = add(matches[state], pattern.length);
+        }
+
+        // обход в ширину: ссылки неудачи и полная таблица переходов
+        int[] fail = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < ALPHABET; b++) {
+            int child = next[b];
+            if (child < 0) {
+                next[b] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] inherited = matches[fail[state]];
+            if (inherited != null) {
+                for (int length : inherited) {
+                    matches[state] = add(matches[state], length);
+                }
+            }
+            for (int b = 0; b < ALPHABET; b++) {
+                int cell = state * ALPHABET + b;
+                int child = next[cell];
+                if (child < 0) {
+                    next[cell] = next[fail[state] * ALPHABET + b];
+                } else {
+                    fail[child] = next[fail[state] * ALPHABET + b];
+                    queue.add(child);
+                }
+            }
+        }
+        return new PatternScanner(Arrays.copyOf(next, states * ALPHABET), Arrays.copyOf(matches, states));
+    }
+
+    /**
+     * Возвращает начальное состояние.
+     *
+     * @return начальное состояние
+     */
+    static int start() {
+        return 0;
+    }
+
+    /**
+     * Выполняет переход по очередному байту.
+     *
+     * @param state текущее состояние
+     * @param b байт без знака
+     * @return следующее состояние
+     */
+    int next(int state, int b) {
+        return next[state * ALPHABET + b];
+    }
+
+    /**
+     * Возвращает длины образцов, заканчивающихся на последнем обработанном байте.
+     *
+     * @param state текущее состояние
+     * @return длины образцов по убыванию или {@code null}, если образцы не найдены
+     */
+    int[] matches(int state) {
+        return matches[state];
+    }
+
+    private static int[] add(int[] lengths, int length) {
+        if (lengths == null) {
+            return new int[]{length};
+        }
+        for (int existing : lengths) {
+            if (existing == length) {
+                return lengths;
+            }
+        }
+        // по убыванию длины, то есть в порядке начала образцов
+        int[] result = Arrays.copyOf(lengths, lengths.length + 1);
+        int i = lengths.length;
+        while (i > 0 && result[i - 1] < length) {
+            result[i] = result[i - 1];
+            i--;
+        }
+        result[i] = length;
+        return result;
+    }
+}
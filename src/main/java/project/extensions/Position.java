@@ -8,13 +8,20 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Класс, представляющий текущее положение в файловой системе.
  *
+ * <p>Положение хранится в сеансе {@link Session}. Статические методы класса
+ * работают с сеансом по умолчанию {@link Session#defaultSession()}, а методы
+ * экземпляра - с сеансом, переданным в конструктор. Задачи, которые должны
+ * выполняться одновременно и независимо, создают собственные сеансы.
+ *
  * @version 1.0
  */
 public class Position {
@@ -25,34 +32,48 @@ public class Position {
     private static final Logger logger = LogManager.getLogger(Position.class);
 
     /**
-     * Текущий путь в файловой системе.
-     */
-    private static Path path;
-
-    /**
-     * Текущий файл.
+     * Сеанс, с которым работают методы экземпляра.
      */
-    private static File file;
+    private final Session session;
 
     /**
-     * Конструктор класса.
+     * Конструктор класса. Переводит сеанс по умолчанию в указанную директорию,
+     * если она существует, и сбрасывает выбор файла.
      *
      * @param path начальный путь в файловой системе
      */
     public Position(Path path) {
+        this.session = Session.defaultSession();
         if (Files.exists(path)) {
-            Position.path = path;
-            Position.file = null;
+            session.reset(path);
         }
     }
 
+    /**
+     * Конструктор класса для работы с собственным сеансом. Сеанс по умолчанию не изменяется.
+     *
+     * @param session сеанс
+     */
+    public Position(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Возвращает сеанс, с которым работают методы экземпляра.
+     *
+     * @return сеанс
+     */
+    public Session getSession() {
+        return session;
+    }
+
     /**
      * Возвращает текущий путь в файловой системе.
      *
      * @return текущий путь
      */
     public static Path getPath() {
-        return path;
+        return Session.defaultSession().getPath();
     }
 
     /**
@@ -61,8 +82,7 @@ public class Position {
      * @param path новый путь
      */
     public void setPath(Path path) {
-        Position.path = path;
-
+        session.setPath(path);
     }
 
     /**
@@ -73,20 +93,7 @@ public class Position {
      * @throws RuntimeException если файл не найден
      */
     public static void setFile(String string) {
-        if (string.isEmpty()) {
-            logger.error("invalid file path");
-            throw new IllegalArgumentException("invalid file path");
-
-        } else {
-            logger.info("successful file selection");
-            Path path = getPath().resolve(Paths.get(string));
-            if (path.toFile().exists()) {
-                file = path.toFile();
-            } else {
-                logger.error("file not found");
-                throw new RuntimeException("file not found");
-            }
-        }
+        Session.defaultSession().select(string);
     }
 
     /**
@@ -95,7 +102,7 @@ public class Position {
      * @return текущий файл
      */
     public static File getFile() {
-        return file;
+        return Session.defaultSession().getFile();
     }
 
     /**
@@ -104,9 +111,10 @@ public class Position {
      * @return имя текущего файла
      */
     public static String getFileName() {
+        File file = getFile();
         if (file==null) {
             logger.error("the file is not selected");
-            MainApp.appendToConsole("the file is not selected");
+            ConsoleOutput.println("the file is not selected");
         } else {
             logger.info("viewing the selected file");
             return file.getName();
@@ -117,22 +125,38 @@ public class Position {
     /**
      * Возвращает список файлов в текущей директории.
      *
+     * <p>Весь список хранится в памяти; для больших директорий следует
+     * использовать {@link #streamFilesDirectory()}.
+     *
      * @return список файлов
      * @throws RuntimeException если возникает ошибка при чтении директории
      */
     public ArrayList<Path> getFilesDirectory() {
-        ArrayList<Path> arr = new ArrayList<>();
-        logger.info("trying to view directory files");
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-            for (Path data : stream) {
-                arr.add(data.getFileName());
-            }
-        } catch (IOException e) {
+        try (Stream<Path> stream = streamFilesDirectory()) {
+            ArrayList<Path> arr = stream.collect(Collectors.toCollection(ArrayList::new));
+            logger.info("a successful attempt to view the files of the directory");
+            return arr;
+        } catch (DirectoryIteratorException | UncheckedIOException e) {
             logger.error("an unsuccessful to view the files of the directory");
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
         }
-        logger.info("a successful attempt to view the files of the directory");
-        return arr;
+    }
+
+    /**
+     * Возвращает имена файлов текущей директории в виде ленивого потока.
+     *
+     * <p>Записи читаются из директории по мере обхода потока, поэтому расход
+     * памяти не зависит от количества файлов, а первые имена доступны сразу.
+     * Поток держит директорию открытой и должен быть закрыт после использования,
+     * например в {@code try-with-resources}. Директория фиксируется при вызове
+     * метода, поэтому поток можно обходить в другом потоке выполнения.
+     *
+     * @return поток имен файлов
+     * @throws RuntimeException если директорию не удалось открыть
+     * @throws DirectoryIteratorException если при обходе возникает ошибка чтения
+     */
+    public Stream<Path> streamFilesDirectory() {
+        return session.streamFiles();
     }
 
     /**
@@ -147,25 +171,10 @@ public class Position {
      * @param string имя директории или ".." для перехода назад
      */
     public void changePath(String string) {
-        if (string.equals("..")) {
-            if (path.getParent()!=null) {
-                logger.info("moving back through the directory");
-                setPath(path.getParent());
-            } else {
-                logger.error("directory navigation error (end of file explorer)");
-                MainApp.appendToConsole("is home dir");
-
-            }
-        } else {
-            Path targetPath = path.resolve(string).normalize();
-
-            if (Files.exists(targetPath) && Files.isDirectory(targetPath)) {
-                setPath(targetPath);
-                logger.info("successful transition to another directory");
-            } else {
-                logger.error("unsuccessful attempt to find the directory");
-                MainApp.appendToConsole("directory not found: " + string);
-            }
+        try {
+            session.changePath(string);
+        } catch (IllegalArgumentException e) {
+            ConsoleOutput.println(e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.file.Path;
+
+/**
+ * Ошибка переименования файла с указанием причины.
+ *
+ * <p>Наследует {@link IllegalStateException}, как и прежние ошибки
+ * переименования, поэтому существующие обработчики продолжают работать, а
+ * новые могут различать причины через {@link #reason()}.
+ *
+ */
+public class RenameException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Причина ошибки.
+     */
+    public enum Reason {
+        /**
+         * Файл с новым именем уже существует.
+         */
+        TARGET_EXISTS,
+        /**
+         * Переименовываемый файл не найден.
+         */
+        SOURCE_MISSING,
+        /**
+         * Нет прав на изменение директории.
+         */
+        ACCESS_DENIED,
+        /**
+         * Другая ошибка ввода-вывода.
+         */
+        IO_ERROR
+    }
+
+    private final Reason reason;
+    private final transient Path source;
+    private final transient Path target;
+
+    /**
+     * Конструктор класса.
+     *
+     * @param reason причина
+     * @param source переименовываемый файл
+     * @param target новое имя файла
+     * @param message описание ошибки
+     * @param cause исходное исключение или {@code null}
+     */
+    public RenameException(Reason reason, Path source, Path target, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Возвращает причину ошибки.
+     *
+     * @return причина
+     */
+    public Reason reason() {
+        return reason;
+    }
+
+    /**
+     * Возвращает переименовываемый файл.
+     *
+     * @return путь к файлу
+     */
+    public Path source() {
+        return source;
+    }
+
+    /**
+     * Возвращает новое имя файла.
+     *
+     * @return путь с новым именем
+     */
+    public Path target() {
+        return target;
+    }
+}
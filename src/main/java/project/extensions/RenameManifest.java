@@ -0,0 +1,587 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Манифест запланированных переименований: план, его применение и отмена.
+ *
+ * <p>Пробный запуск восстановления записывает в манифест по одной строке JSON
+ * на файл, не накапливая записи в памяти. Первая строка - заголовок с корневой
+ * директорией, остальные - переименования:
+ * <pre>
+ * {"format":"expander-manifest","version":1,"root":"/data"}
+ * {"file":"a/report.2023","target":"report.2023.pdf","size":48213,"modified":1700000000000}
+ * </pre>
+ * Путь файла записывается относительно корня, а цель - только именем, потому
+ * что файл остается в своей директории. Размер и время изменения позволяют
+ * при применении пропустить файлы, изменившиеся после планирования.
+ *
+ * <p>Применение ({@link #apply}) и отмена ({@link #undo}) читают манифест
+ * потоком и выполняют переименования в нескольких потоках. Все записи одной
+ * директории попадают в один поток, поэтому совпадение имен внутри директории
+ * обнаруживается надежно, а существующие файлы никогда не перезаписываются.
+ * Уже выполненные переименования пропускаются, так что прерванное применение
+ * можно повторить, а отмена возвращает ровно те файлы, которые были переименованы.
+ *
+ */
+public final class RenameManifest {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(RenameManifest.class);
+
+    /**
+     * Название формата в заголовке манифеста.
+     */
+    static final String FORMAT = "expander-manifest";
+
+    /**
+     * Версия формата манифеста.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Размер очереди каждого потока применения.
+     */
+    private static final int QUEUE = 1024;
+
+    /**
+     * Признак конца очереди.
+     */
+    private static final Entry END = new Entry(null, null, -1, -1);
+
+    /**
+     * Запись манифеста.
+     *
+     * @param file путь к файлу относительно корня
+     * @param target новое имя файла
+     * @param size размер файла при планировании
+     * @param modified время изменения файла при планировании в миллисекундах
+     */
+    record Entry(String file, String target, long size, long modified) {
+    }
+
+    /**
+     * Итоги применения или отмены манифеста.
+     *
+     * @param entries количество записей манифеста
+     * @param renamed количество переименованных файлов
+     * @param skipped количество уже выполненных переименований
+     * @param failed количество ошибок
+     * @param elapsedNanos длительность работы в наносекундах
+     */
+    public record Report(long entries, long renamed, long skipped, long failed, long elapsedNanos) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "entries: %d, renamed: %d, skipped: %d, failed: %d, time: %.2f s",
+                    entries, renamed, skipped, failed, elapsedNanos / 1_000_000_000.0);
+        }
+    }
+
+    private RenameManifest() {
+    }
+
+    /**
+     * Создает манифест для пробного запуска восстановления в указанной директории.
+     *
+     * @param manifest файл манифеста; существующий файл перезаписывается
+     * @param root корневая директория восстановления
+     * @return получатель результатов, записывающий запланированные переименования
+     * @throws IOException если не удалось создать файл
+     */
+    public static Writer writer(Path manifest, Path root) throws IOException {
+        return new Writer(manifest, root.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Выполняет переименования из манифеста.
+     *
+     * @param manifest файл манифеста
+     * @param threads количество потоков
+     * @param listener получатель результатов; вызывается из нескольких потоков
+     * @return итоги применения
+     * @throws IOException если не удалось прочитать манифест
+     * @throws IllegalArgumentException если файл не является манифестом
+     */
+    public static Report apply(Path manifest, int threads, Consumer<RestoreEvent> listener) throws IOException {
+        return execute(manifest, threads, listener, false);
+    }
+
+    /**
+     * Отменяет переименования из манифеста, возвращая файлам прежние имена.
+     *
+     * @param manifest файл манифеста
+     * @param threads количество потоков
+     * @param listener получатель результатов; вызывается из нескольких потоков
+     * @return итоги отмены
+     * @throws IOException если не удалось прочитать манифест
+     * @throws IllegalArgumentException если файл не является манифестом
+     */
+    public static Report undo(Path manifest, int threads, Consumer<RestoreEvent> listener) throws IOException {
+        return execute(manifest, threads, listener, true);
+    }
+
+    /**
+     * Читает манифест и распределяет записи по потокам по директории файла.
+     */
+    private static Report execute(Path manifest, int threads, Consumer<RestoreEvent> listener,
+                                  boolean reverse) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("the number of threads must be positive");
+        }
+        Objects.requireNonNull(listener);
+        long start = System.nanoTime();
+
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            Path root = readHeader(reader.readLine());
+            logger.info("{} of the manifest {} started in {} with {} threads",
+                    reverse ? "undo" : "apply", manifest, root, threads);
+
+            Worker[] workers = new Worker[threads];
+            List<Thread> running = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(root, listener, reverse);
+                Thread thread = new Thread(workers[i], "manifest-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                running.add(thread);
+            }
+
+            long entries = 0;
+            try {
+                String line;
+                // прерывание останавливает чтение манифеста, начатые переименования завершаются
+                while (!Thread.currentThread().isInterrupted() && (line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    Entry entry = parseEntry(line);
+                    Path parent = Path.of(entry.file()).getParent();
+                    int worker = Math.floorMod(parent == null ? 0 : parent.hashCode(), threads);
+                    workers[worker].put(entry);
+                    entries++;
+                }
+            } finally {
+                for (Worker worker : workers) {
+                    worker.put(END);
+                }
+                for (Thread thread : running) {
+                    join(thread);
+                }
+            }
+
+            long renamed = 0;
+            long skipped = 0;
+            long failed = 0;
+            for (Worker worker : workers) {
+                renamed += worker.renamed.sum();
+                skipped += worker.skipped.sum();
+                failed += worker.failed.sum();
+            }
+            Report report = new Report(entries, renamed, skipped, failed, System.nanoTime() - start);
+            logger.info("{} of the manifest {} finished: {}", reverse ? "undo" : "apply", manifest, report);
+            return report;
+        }
+    }
+
+    /**
+     * Поток, выполняющий переименования в своей части директорий.
+     */
+    private static final class Worker implements Runnable {
+
+        private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE);
+        private final Path root;
+        private final Consumer<RestoreEvent> listener;
+        private final boolean reverse;
+        private final LongAdder renamed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        Worker(Path root, Consumer<RestoreEvent> listener, boolean reverse) {
+            this.root = root;
+            this.listener = listener;
+            this.reverse = reverse;
+        }
+
+        /**
+         * Кладет запись в очередь, дожидаясь свободного места даже при
+         * прерывании: без признака конца очереди поток не завершится.
+         */
+        void put(Entry entry) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(entry);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (entry == END) {
+                    return;
+                }
+                rename(entry);
+            }
+        }
+
+        /**
+         * Выполняет одно переименование. Файл переименовывается, только если
+         * он не изменился после планирования и цель еще не существует. Запись,
+         * которая не меняет имя файла, считается выполненной.
+         */
+        private void rename(Entry entry) {
+            Path original = root.resolve(entry.file()).normalize();
+            Path renamedFile = original.resolveSibling(entry.target());
+            Path source = reverse ? renamedFile : original;
+            Path target = reverse ? original : renamedFile;
+            String type = extension(entry.target());
+            try {
+                if (!original.startsWith(root) || original.equals(root)) {
+                    throw new IllegalStateException("the file is outside the root directory");
+                }
+                if (source.equals(target)) {
+                    skipped.increment();
+                    listener.accept(new RestoreEvent(source, type, target, RestoreEvent.Status.SKIPPED, null));
+                    return;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                        skipped.increment();
+                        listener.accept(new RestoreEvent(source, type, target, RestoreEvent.Status.SKIPPED, null));
+                        return;
+                    }
+                    throw new IllegalStateException("file not found");
+                }
+                if (attributes.size() != entry.size()
+                        || attributes.lastModifiedTime().toMillis() != entry.modified()) {
+                    throw new IllegalStateException("file changed since planning");
+                }
+                long start = System.nanoTime();
+                try {
+                    Files.move(source, target);
+                } catch (IOException e) {
+                    Metrics.RENAME_FAILURES.increment();
+                    throw Renamer.error(source, target, e);
+                } finally {
+                    Metrics.RENAMES.record(System.nanoTime() - start);
+                }
+                renamed.increment();
+                listener.accept(new RestoreEvent(source, type, target, RestoreEvent.Status.RENAMED, null));
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                Metrics.FAILURES.increment();
+                logger.warn("manifest: failed to rename {}: {}", source, e.getMessage());
+                listener.accept(new RestoreEvent(source, type, target, RestoreEvent.Status.FAILED, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Записывает запланированные переименования в манифест. Используется как
+     * получатель результатов пробного запуска {@link Restorer}; записываются
+     * только результаты со статусом {@link RestoreEvent.Status#PLANNED}, которые
+     * меняют имя файла.
+     * Методы потокобезопасны. Ошибка записи запоминается и выбрасывается из
+     * {@link #close()}.
+     */
+    public static final class Writer implements Consumer<RestoreEvent>, Closeable {
+
+        private final BufferedWriter writer;
+        private final Path root;
+        private IOException error;
+        private long entries;
+
+        private Writer(Path manifest, Path root) throws IOException {
+            this.root = root;
+            this.writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8);
+            writer.write("{\"format\":" + Cli.quote(FORMAT) + ",\"version\":" + VERSION
+                    + ",\"root\":" + Cli.quote(root.toString()) + "}");
+            writer.newLine();
+        }
+
+        @Override
+        public synchronized void accept(RestoreEvent event) {
+            if (event.status() != RestoreEvent.Status.PLANNED || error != null) {
+                return;
+            }
+            try {
+                Path file = event.file().toAbsolutePath().normalize();
+                if (event.target().getFileName().equals(file.getFileName())) {
+                    // расширение уже правильное, переименовывать нечего
+                    return;
+                }
+                BasicFileAttributes attributes =
+                        Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                writer.write("{\"file\":" + Cli.quote(root.relativize(file).toString())
+                        + ",\"target\":" + Cli.quote(event.target().getFileName().toString())
+                        + ",\"size\":" + attributes.size()
+                        + ",\"modified\":" + attributes.lastModifiedTime().toMillis() + "}");
+                writer.newLine();
+                entries++;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Возвращает количество записанных переименований.
+         *
+         * @return количество записей
+         */
+        public synchronized long entries() {
+            return entries;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Проверяет заголовок манифеста.
+     *
+     * @param line первая строка манифеста
+     * @return корневая директория
+     * @throws IllegalArgumentException если строка не является заголовком
+     */
+    static Path readHeader(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("the manifest is empty");
+        }
+        List<String> fields = parse(line);
+        if (!FORMAT.equals(field(fields, "format"))) {
+            throw new IllegalArgumentException("not a rename manifest");
+        }
+        if (!String.valueOf(VERSION).equals(field(fields, "version"))) {
+            throw new IllegalArgumentException("unsupported manifest version: " + field(fields, "version"));
+        }
+        String root = field(fields, "root");
+        if (root == null) {
+            throw new IllegalArgumentException("the manifest has no root directory");
+        }
+        return Path.of(root);
+    }
+
+    /**
+     * Разбирает строку переименования.
+     *
+     * @param line строка манифеста
+     * @return запись манифеста
+     * @throws IllegalArgumentException если строка повреждена
+     */
+    static Entry parseEntry(String line) {
+        List<String> fields = parse(line);
+        String file = field(fields, "file");
+        String target = field(fields, "target");
+        if (file == null || target == null || target.isEmpty() || target.equals(".") || target.equals("..")
+                || target.indexOf('/') >= 0 || target.indexOf(File.separatorChar) >= 0) {
+            throw new IllegalArgumentException("invalid manifest entry: " + line);
+        }
+        try {
+            return new Entry(file, target, Long.parseLong(field(fields, "size")),
+                    Long.parseLong(field(fields, "modified")));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid manifest entry: " + line);
+        }
+    }
+
+    /**
+     * Разбирает объект JSON из строк и чисел без вложенных объектов.
+     *
+     * @param line строка с объектом
+     * @return имена и значения полей через одно
+     * @throws IllegalArgumentException если строка не является таким объектом
+     */
+    static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>(8);
+        int[] position = {skip(line, 0)};
+        expect(line, position, '{');
+        if (peek(line, position) == '}') {
+            position[0]++;
+        } else {
+            while (true) {
+                fields.add(string(line, position));
+                expect(line, position, ':');
+                fields.add(peek(line, position) == '"' ? string(line, position) : number(line, position));
+                if (peek(line, position) == ',') {
+                    position[0]++;
+                    continue;
+                }
+                expect(line, position, '}');
+                break;
+            }
+        }
+        if (skip(line, position[0]) != line.length()) {
+            throw new IllegalArgumentException("unexpected characters after the object: " + line);
+        }
+        return fields;
+    }
+
+    private static String field(List<String> fields, String name) {
+        for (int i = 0; i < fields.size(); i += 2) {
+            if (fields.get(i).equals(name)) {
+                return fields.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String string(String line, int[] position) {
+        expect(line, position, '"');
+        StringBuilder value = new StringBuilder();
+        int i = position[0];
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                position[0] = i;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i == line.length()) {
+                break;
+            }
+            char escaped = line.charAt(i++);
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 > line.length()) {
+                        throw new IllegalArgumentException("invalid escape sequence: " + line);
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid escape sequence: " + line);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    value.append(escaped);
+                    break;
+            }
+        }
+        throw new IllegalArgumentException("unterminated string: " + line);
+    }
+
+    private static String number(String line, int[] position) {
+        int from = position[0];
+        int i = from;
+        while (i < line.length() && (Character.isDigit(line.charAt(i)) || line.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == from) {
+            throw new IllegalArgumentException("a string or a number was expected: " + line);
+        }
+        position[0] = i;
+        return line.substring(from, i);
+    }
+
+    private static char peek(String line, int[] position) {
+        position[0] = skip(line, position[0]);
+        if (position[0] == line.length()) {
+            throw new IllegalArgumentException("unexpected end of line: " + line);
+        }
+        return line.charAt(position[0]);
+    }
+
+    private static void expect(String line, int[] position, char c) {
+        if (peek(line, position) != c) {
+            throw new IllegalArgumentException("'" + c + "' was expected: " + line);
+        }
+        position[0]++;
+    }
+
+    private static int skip(String line, int from) {
+        while (from < line.length() && Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? null : name.substring(dot + 1);
+    }
+
+    /**
+     * Дожидается завершения потока даже при прерывании, чтобы итоги были полными.
+     */
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Переименование файлов при пакетном восстановлении.
+ *
+ * <p>Занятость нового имени сначала проверяется не отдельным запросом к
+ * файловой системе на каждый файл, а по списку имен директории. Список
+ * передается обходом дерева ({@link #listed(Path, Set)}), который все равно
+ * читает директорию, или читается один раз при первом переименовании в ней, и
+ * дальше обновляется самим объектом. Имя резервируется в списке атомарно,
+ * поэтому несколько потоков, переименовывающих файлы одной директории, не
+ * выберут одно имя.
+ *
+ * <p>Список - только подсказка: файл, созданный в директории после чтения
+ * списка (другой программой, другим восстановлением или с именем, которое
+ * отличается только регистром, в файловой системе без учета регистра), в нем
+ * не учтен. Поэтому сам файл переименовывается {@link Files#move} без
+ * {@link StandardCopyOption#REPLACE_EXISTING}, который никогда не
+ * заменяет существующий файл: если имя оказалось занято, переименование
+ * заканчивается ошибкой {@link RenameException.Reason#TARGET_EXISTS}, как и при
+ * занятости по списку, а имя остается занятым в списке. Объем хранимых списков
+ * ограничен {@value #MAX_NAMES} именами; в директориях сверх этого объема
+ * имена проверяются только файловой системой.
+ *
+ * <p>Ошибки передаются исключением {@link RenameException} с причиной.
+ * Методы можно вызывать из нескольких потоков.
+ *
+ */
+final class Renamer {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(Renamer.class);
+
+    /**
+     * Наибольшее количество имен во всех хранимых списках.
+     */
+    static final int MAX_NAMES = 1 << 20;
+
+    /**
+     * Признак директории без списка имен: имена проверяются по одному.
+     */
+    private static final Set<String> UNLISTED = Collections.emptySet();
+
+    private final Map<Path, Set<String>> listings = new ConcurrentHashMap<>();
+    private final AtomicLong names = new AtomicLong();
+
+    /**
+     * Переименовывает файл, присваивая ему расширение, с проверкой имени по
+     * списку директории.
+     *
+     * @param source файл
+     * @param extension новое расширение
+     * @return путь с новым именем (совпадает с исходным, если расширение уже правильное)
+     * @throws RenameException если новое имя занято или переименование не удалось
+     */
+    Path rename(Path source, String extension) {
+        String name = source.getFileName().toString();
+        String targetName = Expander.targetName(name, extension);
+        Path target = source.resolveSibling(targetName);
+        if (targetName.equals(name)) {
+            return target;
+        }
+        Set<String> listing = listing(source.getParent());
+        if (listing == UNLISTED) {
+            move(source, target);
+            return target;
+        }
+        if (!listing.add(targetName)) {
+            Metrics.RENAME_FAILURES.increment();
+            throw exists(source, target, null);
+        }
+        try {
+            move(source, target);
+        } catch (RenameException e) {
+            // имя, занятое после чтения списка, остается занятым
+            if (e.reason() != RenameException.Reason.TARGET_EXISTS) {
+                listing.remove(targetName);
+            }
+            throw e;
+        }
+        listing.remove(name);
+        return target;
+    }
+
+    /**
+     * Передает список имен директории, прочитанный при ее обходе, чтобы
+     * директория не читалась второй раз. Список должен быть передан до первого
+     * переименования в директории; объект изменяет его при переименованиях.
+     *
+     * @param directory директория
+     * @param listing изменяемое потокобезопасное множество имен всех записей директории
+     */
+    void listed(Path directory, Set<String> listing) {
+        if (names.addAndGet(listing.size()) > MAX_NAMES) {
+            names.addAndGet(-listing.size());
+            listing = UNLISTED;
+        }
+        Set<String> previous = listings.put(directory, listing);
+        if (previous != null) {
+            names.addAndGet(-previous.size());
+        }
+    }
+
+    /**
+     * Освобождает список имен директории, в которой переименований больше не будет.
+     *
+     * @param directory директория
+     */
+    void release(Path directory) {
+        Set<String> listing = listings.remove(directory);
+        if (listing != null) {
+            names.addAndGet(-listing.size());
+        }
+    }
+
+    /**
+     * Возвращает количество имен во всех хранимых списках.
+     *
+     * @return количество имен
+     */
+    long names() {
+        return names.get();
+    }
+
+    /**
+     * Заменяет файл жесткой ссылкой на другой файл с тем же содержимым,
+     * присваивая ей расширение. Ссылка создается до удаления файла, поэтому
+     * при ошибке содержимое не теряется; если расширение уже правильное, файл
+     * заменяется ссылкой атомарно через временное имя.
+     *
+     * @param source заменяемый файл
+     * @param extension новое расширение
+     * @param existing файл, на который указывает ссылка
+     * @return путь ссылки
+     * @throws RenameException если новое имя занято или ссылку не удалось создать
+     */
+    Path link(Path source, String extension, Path existing) {
+        String name = source.getFileName().toString();
+        String targetName = Expander.targetName(name, extension);
+        Path target = source.resolveSibling(targetName);
+        boolean replace = targetName.equals(name);
+        Set<String> listing = replace ? UNLISTED : listing(source.getParent());
+        if (listing != UNLISTED && !listing.add(targetName)) {
+            Metrics.RENAME_FAILURES.increment();
+            throw exists(source, target, null);
+        }
+        long start = System.nanoTime();
+        try {
+            if (replace) {
+                Path temporary = source.resolveSibling("." + name + ".link");
+                Files.createLink(temporary, existing);
+                try {
+                    Files.move(temporary, source, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    Files.deleteIfExists(temporary);
+                    throw e;
+                }
+            } else {
+                Files.createLink(target, existing);
+                try {
+                    Files.delete(source);
+                } catch (IOException e) {
+                    Files.deleteIfExists(target);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            listing.remove(targetName);
+            Metrics.RENAME_FAILURES.increment();
+            throw error(source, target, e);
+        } finally {
+            Metrics.RENAMES.record(System.nanoTime() - start);
+        }
+        listing.remove(name);
+        return target;
+    }
+
+    /**
+     * Переименовывает один файл без списка директории: занятость имени
+     * проверяется файловой системой непосредственно перед переименованием.
+     *
+     * @param source файл
+     * @param extension новое расширение
+     * @return путь с новым именем (совпадает с исходным, если расширение уже правильное)
+     * @throws RenameException если новое имя занято или переименование не удалось
+     */
+    static Path renameOne(Path source, String extension) {
+        Path target = source.resolveSibling(Expander.targetName(source.getFileName().toString(), extension));
+        if (!target.equals(source)) {
+            move(source, target);
+        }
+        return target;
+    }
+
+    /**
+     * Возвращает список имен директории, читая его при первом обращении.
+     */
+    private Set<String> listing(Path directory) {
+        Set<String> listing = listings.get(directory);
+        if (listing != null) {
+            return listing;
+        }
+        listing = list(directory);
+        Set<String> previous = listings.putIfAbsent(directory, listing);
+        if (previous != null) {
+            names.addAndGet(-listing.size());
+            return previous;
+        }
+        return listing;
+    }
+
+    private Set<String> list(Path directory) {
+        Set<String> listing = ConcurrentHashMap.newKeySet();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                if (names.incrementAndGet() > MAX_NAMES) {
+                    names.addAndGet(-listing.size() - 1);
+                    return UNLISTED;
+                }
+                listing.add(entry.getFileName().toString());
+            }
+        } catch (IOException | RuntimeException e) {
+            // ошибка проявится при переименовании
+            names.addAndGet(-listing.size());
+            logger.debug("failed to list directory {}: {}", directory, e.getMessage());
+            return UNLISTED;
+        }
+        return listing;
+    }
+
+    /**
+     * Переименовывает файл, не заменяя существующий, и учитывает показатели.
+     */
+    private static void move(Path source, Path target) {
+        long start = System.nanoTime();
+        try {
+            Files.move(source, target);
+        } catch (IOException e) {
+            Metrics.RENAME_FAILURES.increment();
+            throw error(source, target, e);
+        } finally {
+            Metrics.RENAMES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Преобразует ошибку ввода-вывода в ошибку переименования с причиной.
+     *
+     * @param source файл
+     * @param target новое имя
+     * @param e исходная ошибка
+     * @return ошибка переименования
+     */
+    static RenameException error(Path source, Path target, IOException e) {
+        if (e instanceof FileAlreadyExistsException) {
+            return exists(source, target, e);
+        }
+        if (e instanceof NoSuchFileException) {
+            return new RenameException(RenameException.Reason.SOURCE_MISSING, source, target,
+                    "file not found: " + source.getFileName(), e);
+        }
+        if (e instanceof AccessDeniedException) {
+            return new RenameException(RenameException.Reason.ACCESS_DENIED, source, target,
+                    "access denied: " + source.getFileName(), e);
+        }
+        return new RenameException(RenameException.Reason.IO_ERROR, source, target,
+                "failed to rename file: " + e.getMessage(), e);
+    }
+
+    private static RenameException exists(Path source, Path target, IOException cause) {
+        return new RenameException(RenameException.Reason.TARGET_EXISTS, source, target,
+                "target file already exists: " + target.getFileName(), cause);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.file.Path;
+
+/**
+ * Результат обработки одного файла при пакетном восстановлении.
+ *
+ * @param file исходный файл
+ * @param type определенный тип файла или {@code null}
+ * @param target файл с восстановленным расширением или {@code null}
+ * @param status результат обработки
+ * @param message описание ошибки или {@code null}
+ */
+public record RestoreEvent(Path file, String type, Path target, Status status, String message) {
+
+    /**
+     * Результат обработки файла.
+     */
+    public enum Status {
+        /**
+         * Файл переименован.
+         */
+        RENAMED,
+        /**
+         * Файл был бы переименован (пробный запуск).
+         */
+        PLANNED,
+        /**
+         * Тип файла не распознан.
+         */
+        UNKNOWN,
+        /**
+         * При обработке файла возникла ошибка.
+         */
+        FAILED,
+        /**
+         * Переименование из манифеста пропущено, потому что уже выполнено.
+         */
+        SKIPPED,
+        /**
+         * Файл совпадает по содержимому с уже восстановленным и не переименован;
+         * {@code target} - восстановленный файл.
+         */
+        DUPLICATE,
+        /**
+         * Файл совпадает по содержимому с уже восстановленным и заменен жесткой
+         * ссылкой на него с восстановленным расширением.
+         */
+        LINKED
+    }
+}
@@ -0,0 +1,418 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал задачи пакетного восстановления, позволяющий продолжить прерванное
+ * восстановление большого дерева.
+ *
+ * <p>Во время восстановления в журнал дописываются обработанные файлы (с именем
+ * после обработки) и директории, поддерево которых обработано полностью.
+ * Журнал двоичный: каждая запись - тип, номер директории, имя и контрольная
+ * сумма CRC32C, а путь директории записывается один раз, при первом
+ * обращении к ней. Записи накапливаются в буфере и сбрасываются на диск с
+ * {@link FileChannel#force(boolean)} не реже раза в секунду (свойство
+ * {@code expander.journal.sync}, в миллисекундах), поэтому при аварийном
+ * завершении теряется не больше последней секунды работы. Запись, оборванная
+ * при сбое, при открытии отбрасывается.
+ *
+ * <p>При повторном запуске с тем же журналом полностью обработанные
+ * директории пропускаются без чтения, а в остальных пропускаются уже
+ * обработанные файлы, без повторного чтения их заголовков. Файлы, обработка
+ * которых закончилась ошибкой, тоже считаются обработанными. Когда
+ * восстановление заканчивается без отмены, в журнал записывается признак
+ * завершения, и следующий запуск с этим журналом начинает новую задачу.
+ *
+ * <p>Продолжение не бесплатно: при открытии журнал читается целиком, поэтому
+ * время открытия пропорционально размеру журнала, а в памяти остаются пути
+ * полностью обработанных директорий и имена обработанных файлов в
+ * директориях, обработанных не полностью (файлы директории забываются, как
+ * только в журнале встречается ее завершение). Это последовательное чтение
+ * одного файла, которое все равно намного дешевле повторного обхода дерева и
+ * чтения заголовков.
+ *
+ */
+public final class RestoreJournal implements Closeable {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(RestoreJournal.class);
+
+    private static final int MAGIC = 0x4558504A;
+    private static final int FORMAT = 1;
+
+    /**
+     * Типы записей.
+     */
+    private static final byte DIRECTORY = 1;
+    private static final byte FILE = 2;
+    private static final byte COMPLETED = 3;
+    private static final byte FINISHED = 4;
+
+    /**
+     * Размер записи без имени: тип, номер директории, длина имени и контрольная сумма.
+     */
+    private static final int RECORD_SIZE = 13;
+
+    /**
+     * Размер буфера записей и наибольшая длина имени, при которой запись в нем помещается.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_NAME = BUFFER_SIZE - RECORD_SIZE;
+
+    /**
+     * Наибольший промежуток между сбросами журнала на диск.
+     */
+    private static final long SYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("expander.journal.sync", 1000));
+
+    private final Path file;
+    private final Path root;
+    private FileChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32C checksum = new CRC32C();
+    private long synced = System.nanoTime();
+    private boolean broken;
+
+    /**
+     * Номера директорий, уже записанных в журнал.
+     */
+    private final Map<Path, Integer> ids = new HashMap<>();
+    private int nextId = 1;
+
+    /**
+     * Состояние, прочитанное при открытии: полностью обработанные директории и
+     * обработанные файлы остальных директорий. После открытия не изменяется.
+     */
+    private final Set<Path> completed = new HashSet<>();
+    private final Map<Path, Set<String>> processed = new HashMap<>();
+    private long resumedFiles;
+
+    private RestoreJournal(Path file, Path root) {
+        this.file = file;
+        this.root = root;
+    }
+
+    /**
+     * Открывает журнал задачи, создавая файл при необходимости. Если журнал
+     * содержит незавершенную задачу, ее состояние загружается для продолжения.
+     *
+     * @param file файл журнала
+     * @param root корневая директория восстановления
+     * @return открытый журнал
+     * @throws IOException если файл не удалось прочитать или создать
+     * @throws IllegalArgumentException если журнал содержит незавершенную задачу для другой директории
+     */
+    public static RestoreJournal open(Path file, Path root) throws IOException {
+        RestoreJournal journal = new RestoreJournal(file, root.toAbsolutePath().normalize());
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Возвращает корневую директорию задачи.
+     *
+     * @return абсолютный путь
+     */
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * Проверяет, продолжает ли журнал прерванную задачу.
+     *
+     * @return {@code true}, если при открытии найдены обработанные файлы или директории
+     */
+    public boolean isResumed() {
+        return resumedFiles > 0 || !completed.isEmpty();
+    }
+
+    /**
+     * Возвращает количество файлов, обработанных до открытия журнала, в
+     * директориях, обработанных не полностью.
+     *
+     * @return количество файлов
+     */
+    public long resumedFiles() {
+        return resumedFiles;
+    }
+
+    /**
+     * Возвращает количество директорий, полностью обработанных до открытия журнала.
+     *
+     * @return количество директорий
+     */
+    public int resumedDirectories() {
+        return completed.size();
+    }
+
+    /**
+     * Проверяет, было ли поддерево директории полностью обработано до открытия журнала.
+     *
+     * @param directory директория
+     * @return {@code true}, если директорию можно пропустить
+     */
+    boolean isCompleted(Path directory) {
+        return !completed.isEmpty() && completed.contains(directory);
+    }
+
+    /**
+     * Проверяет, был ли файл обработан до открытия журнала.
+     *
+     * @param path файл
+     * @return {@code true}, если файл можно пропустить
+     */
+    boolean isProcessed(Path path) {
+        if (processed.isEmpty()) {
+            return false;
+        }
+        Set<String> names = processed.get(path.getParent());
+        return names != null && names.contains(path.getFileName().toString());
+    }
+
+    /**
+     * Записывает обработанный файл.
+     *
+     * @param path файл с именем после обработки
+     */
+    synchronized void processed(Path path) {
+        int id = id(path.getParent());
+        append(FILE, id, path.getFileName().toString());
+    }
+
+    /**
+     * Записывает директорию, поддерево которой обработано полностью.
+     *
+     * @param directory директория
+     */
+    synchronized void completed(Path directory) {
+        append(COMPLETED, id(directory), "");
+    }
+
+    /**
+     * Записывает признак завершения задачи и сбрасывает журнал на диск.
+     */
+    synchronized void finish() {
+        append(FINISHED, 0, "");
+        sync();
+        logger.info("the restore job in {} is finished", root);
+    }
+
+    /**
+     * Сбрасывает журнал на диск и закрывает его.
+     *
+     * @throws IOException если файл не удалось закрыть
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Читает журнал.
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        byte[] rootName = root.toString().getBytes(StandardCharsets.UTF_8);
+        long position = 0;
+        boolean finished = false;
+        Map<Integer, Path> directories = new HashMap<>();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (channel.size() == 0 || input.readInt() != MAGIC || input.readInt() != FORMAT) {
+                if (channel.size() > 0) {
+                    logger.info("the restore journal {} was created by another version, starting a new job", file);
+                }
+                reset();
+                return;
+            }
+            byte[] stored = new byte[input.readInt()];
+            input.readFully(stored);
+            if (!Arrays.equals(stored, rootName)) {
+                channel.close();
+                throw new IllegalArgumentException("the journal " + file + " belongs to a job in "
+                        + new String(stored, StandardCharsets.UTF_8));
+            }
+            position = 12 + stored.length;
+            byte[] name = new byte[256];
+            ByteBuffer numbers = ByteBuffer.allocate(8);
+            while (!finished) {
+                byte type = input.readByte();
+                int id = input.readInt();
+                int length = input.readInt();
+                if (type < DIRECTORY || type > FINISHED || length < 0 || length > MAX_NAME) {
+                    break;
+                }
+                if (name.length < length) {
+                    name = new byte[length];
+                }
+                input.readFully(name, 0, length);
+                checksum.reset();
+                checksum.update(type);
+                checksum.update(numbers.clear().putInt(id).putInt(length).flip());
+                checksum.update(name, 0, length);
+                if (input.readInt() != (int) checksum.getValue()) {
+                    break;
+                }
+                position += RECORD_SIZE + length;
+
+                String text = new String(name, 0, length, StandardCharsets.UTF_8);
+                Path directory = directories.get(id);
+                if (type == DIRECTORY) {
+                    directory = root.resolve(text).normalize();
+                    directories.put(id, directory);
+                    ids.put(directory, id);
+                    nextId = Math.max(nextId, id + 1);
+                } else if (type == FINISHED) {
+                    finished = true;
+                } else if (directory == null) {
+                    // директория, путь которой не удалось записать
+                    continue;
+                } else if (type == FILE) {
+                    if (processed.computeIfAbsent(directory, key -> new HashSet<>()).add(text)) {
+                        resumedFiles++;
+                    }
+                } else {
+                    completed.add(directory);
+                    // директория при продолжении не читается, имена ее файлов не нужны
+                    Set<String> names = processed.remove(directory);
+                    resumedFiles -= names == null ? 0 : names.size();
+                }
+            }
+        } catch (EOFException e) {
+            // последняя запись записана не полностью (например, при аварийном завершении)
+            if (position == 0) {
+                reset();
+                return;
+            }
+        }
+
+        if (finished) {
+            reset();
+            return;
+        }
+        if (position < channel.size()) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+
+        if (isResumed()) {
+            logger.info("resuming the restore job in {}: {} directories and {} files are already done",
+                    root, completed.size(), resumedFiles);
+        }
+    }
+
+    /**
+     * Очищает журнал и записывает заголовок новой задачи.
+     */
+    private void reset() throws IOException {
+        ids.clear();
+        nextId = 1;
+        completed.clear();
+        processed.clear();
+        resumedFiles = 0;
+        byte[] rootName = root.toString().getBytes(StandardCharsets.UTF_8);
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(12 + rootName.length);
+        header.putInt(MAGIC).putInt(FORMAT).putInt(rootName.length).put(rootName).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.position(header.limit());
+        channel.force(false);
+    }
+
+    /**
+     * Возвращает номер директории, при первом обращении записывая ее путь.
+     */
+    private int id(Path directory) {
+        Integer id = ids.get(directory);
+        if (id == null) {
+            id = nextId++;
+            ids.put(directory, id);
+            append(DIRECTORY, id, root.relativize(directory).toString());
+        }
+        return id;
+    }
+
+    private void append(byte type, int id, String text) {
+        if (broken) {
+            return;
+        }
+        byte[] name = text.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME) {
+            return;
+        }
+        if (output.remaining() < RECORD_SIZE + name.length) {
+            flush();
+        }
+        int start = output.position();
+        output.put(type).putInt(id).putInt(name.length).put(name);
+        checksum.reset();
+        checksum.update(output.duplicate().position(start).limit(output.position()));
+        output.putInt((int) checksum.getValue());
+        if (System.nanoTime() - synced > SYNC_NANOS) {
+            sync();
+        }
+    }
+
+    private void flush() {
+        if (broken) {
+            return;
+        }
+        try {
+            output.flip();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            output.clear();
+        }
+    }
+
+    private void sync() {
+        flush();
+        if (broken) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        }
+        synced = System.nanoTime();
+    }
+
+    private void fail(IOException e) {
+        broken = true;
+        logger.warn("failed to write the restore journal {}, progress is no longer recorded: {}", file,
+                e.getMessage());
+    }
+}
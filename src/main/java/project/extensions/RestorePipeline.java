@@ -0,0 +1,861 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Пакетное восстановление расширений, разделенное на стадии.
+ *
+ * <p>В отличие от {@link BatchRestorer}, где один поток последовательно читает
+ * заголовок, сопоставляет его с сигнатурами и переименовывает файл, здесь у
+ * каждого вида работы свои потоки:
+ * <ol>
+ *     <li>обход - один поток обходит дерево каталогов;</li>
+ *     <li>чтение - пул потоков читает начала файлов; потоков много, чтобы у
+ *     медленного или сетевого диска всегда была очередь запросов;</li>
+ *     <li>сопоставление - по потоку на процессор; здесь же читается центральный
+ *     каталог архивов ZIP, которому нужен уже известный тип файла;</li>
+ *     <li>переименование - вызывающий поток переименовывает файлы порциями по
+ *     директориям через {@link Renamer}, проверяя занятость имен по одному
+ *     списку на директорию.</li>
+ * </ol>
+ *
+ * <p>Стадии связаны очередями ограниченного размера: если стадия не успевает,
+ * предыдущая ждет, поэтому память не зависит от размера дерева (кроме поиска
+ * повторов, см. ниже). Результаты, найденные в кэше ({@link Expander#setCache(Path)}),
+ * передаются сразу на переименование. Существующие файлы не перезаписываются:
+ * при совпадении имен файл считается ошибкой.
+ *
+ * <p>С {@link #setDuplicates(Duplicates)} потоки чтения читают файлы целиком
+ * и по ходу чтения считают хеш содержимого {@link XxHash64}: начало файла
+ * берется из того же первого блока, поэтому второго чтения для определения
+ * типа нет, а хеширование идет параллельно в потоках чтения. Зато каждый файл
+ * дерева читается полностью, а не только его начало. Стадия переименования
+ * объединяет файлы с одинаковыми размером и хешем: первый файл группы
+ * восстанавливается как обычно, а остальные пропускаются или заменяются
+ * жесткими ссылками на него. Объединяются только файлы с распознанным типом.
+ * Перед заменой ссылкой содержимое файлов сравнивается побайтно, поэтому
+ * совпадение хешей разных файлов или файл, измененный после хеширования, не
+ * приводят к потере данных: такой файл восстанавливается как обычно.
+ * Сравнение, которое читает оба файла целиком, выполняют отдельные потоки (по
+ * одному на поток чтения); стадия переименования только создает ссылку. Для
+ * поиска повторов хранятся размер, хеш и путь последних
+ * {@value #MAX_RESTORED} восстановленных файлов (порядка сотни байтов на файл,
+ * {@code -Dexpander.duplicates.max=<N>}); повторы файла, вытесненного из этого
+ * списка, восстанавливаются как обычные файлы.
+ *
+ * <p>Получатель результатов вызывается только из потока, вызвавшего
+ * {@link #restore(Path)}.
+ *
+ */
+public class RestorePipeline implements Restorer {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(RestorePipeline.class);
+
+    /**
+     * Количество потоков чтения по умолчанию.
+     */
+    public static final int DEFAULT_READERS = 16;
+
+    /**
+     * Размеры очередей между стадиями.
+     */
+    private static final int PATH_QUEUE = 4096;
+    private static final int HEADER_QUEUE = 1024;
+    private static final int RESULT_QUEUE = 4096;
+
+    /**
+     * Количество файлов одной директории, переименовываемых за раз.
+     */
+    private static final int RENAME_BATCH = 64;
+
+    /**
+     * Размер буфера потока чтения при хешировании содержимого.
+     */
+    private static final int HASH_BUFFER = 1 << 20;
+
+    /**
+     * Наибольшее количество восстановленных файлов, хранимых для поиска повторов.
+     */
+    static final int MAX_RESTORED = Integer.getInteger("expander.duplicates.max", 1 << 20);
+
+    /**
+     * Наибольшее количество повторов, ожидающих побайтного сравнения.
+     */
+    private static final int MAX_VERIFICATIONS = 64;
+
+    /**
+     * Время ожидания результатов, после которого переименовываются неполные порции.
+     */
+    private static final long FLUSH_MILLIS = 50;
+
+    /**
+     * Признак конца очереди путей.
+     */
+    private static final Path END = Paths.get("");
+
+    /**
+     * Признак конца очереди заголовков.
+     */
+    private static final Sniffed END_OF_HEADERS = new Sniffed(END, null, null, null);
+
+    /**
+     * Признак конца очереди результатов.
+     */
+    private static final Detected END_OF_RESULTS = new Detected(END, null, null, null);
+
+    /**
+     * Обработка файлов с одинаковым содержимым.
+     */
+    public enum Duplicates {
+        /**
+         * Содержимое не хешируется, каждый файл восстанавливается отдельно.
+         */
+        KEEP,
+        /**
+         * Повторы не переименовываются.
+         */
+        SKIP,
+        /**
+         * Повторы заменяются жесткими ссылками на восстановленный файл с
+         * восстановленным расширением.
+         */
+        LINK
+    }
+
+    /**
+     * Размер и хеш содержимого файла.
+     */
+    private record Content(long size, long hash) {
+    }
+
+    /**
+     * Прочитанное начало файла; {@code content} заполняется при поиске повторов.
+     */
+    private record Sniffed(Path path, DetectionCache.Key key, byte[] header, Content content) {
+    }
+
+    /**
+     * Определенный тип файла или ошибка чтения и определения.
+     */
+    private record Detected(Path path, String type, Exception error, Content content) {
+    }
+
+    /**
+     * Повтор, ожидающий побайтного сравнения с восстановленным файлом;
+     * {@code mismatch} - результат {@link Files#mismatch}.
+     */
+    private record Verification(Detected detected, Path target, Path original, Future<Long> mismatch) {
+    }
+
+    private final int readers;
+    private final int matchers;
+
+    /**
+     * Признак пробного запуска, при котором файлы не переименовываются.
+     */
+    private boolean dryRun;
+
+    /**
+     * Обработка файлов с одинаковым содержимым.
+     */
+    private Duplicates duplicates = Duplicates.KEEP;
+
+    /**
+     * Получатель результатов обработки отдельных файлов.
+     */
+    private Consumer<RestoreEvent> listener = event -> { };
+
+    /**
+     * Восстановленные файлы по содержимому в порядке последнего обращения, не
+     * больше {@link #MAX_RESTORED}; используется только стадией переименования.
+     */
+    private final Map<Content, Path> restored = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Content, Path> eldest) {
+            return size() > MAX_RESTORED;
+        }
+    };
+
+    /**
+     * Переименование с проверкой имен по спискам директорий; используется
+     * стадией переименования и создается на каждое восстановление. Список
+     * директории освобождается, как только обработаны все ее файлы.
+     */
+    private Renamer renamer = new Renamer();
+
+    /**
+     * Количество необработанных файлов по директориям: обход прибавляет
+     * количество переданных файлов директории, переименование вычитает по
+     * одному. Пока обход не закончил директорию, значение может быть
+     * отрицательным; ноль означает, что все файлы директории обработаны и ее
+     * список имен можно освободить.
+     */
+    private final Map<Path, Integer> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Повторы в порядке поступления, сравниваемые потоками {@link #verifier};
+     * используется только стадией переименования.
+     */
+    private final Deque<Verification> verifications = new ArrayDeque<>();
+
+    /**
+     * Потоки побайтного сравнения повторов перед заменой ссылкой, чтобы чтение
+     * двух файлов целиком не задерживало переименование; создаются на каждое
+     * восстановление при {@link Duplicates#LINK}.
+     */
+    private ExecutorService verifier;
+
+    /**
+     * Признак отмены восстановления.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Счетчики обработанных файлов.
+     */
+    private final LongAdder files = new LongAdder();
+    private final LongAdder renamed = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+
+    /**
+     * Создает конвейер с потоком сопоставления на каждый процессор.
+     *
+     * @param readers количество потоков чтения
+     * @throws IllegalArgumentException если количество потоков меньше единицы
+     */
+    public RestorePipeline(int readers) {
+        this(readers, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Конструктор класса.
+     *
+     * @param readers количество потоков чтения
+     * @param matchers количество потоков сопоставления
+     * @throws IllegalArgumentException если количество потоков меньше единицы
+     */
+    public RestorePipeline(int readers, int matchers) {
+        if (readers < 1 || matchers < 1) {
+            throw new IllegalArgumentException("the number of threads must be positive");
+        }
+        this.readers = readers;
+        this.matchers = matchers;
+    }
+
+    /**
+     * Включает или выключает пробный запуск. При пробном запуске типы файлов
+     * определяются, но файлы не переименовываются.
+     *
+     * @param dryRun {@code true} для пробного запуска
+     */
+    @Override
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Задает обработку файлов с одинаковым содержимым. Любое значение, кроме
+     * {@link Duplicates#KEEP}, требует чтения файлов целиком.
+     *
+     * @param duplicates обработка повторов
+     */
+    public void setDuplicates(Duplicates duplicates) {
+        this.duplicates = Objects.requireNonNull(duplicates);
+    }
+
+    /**
+     * Устанавливает получателя результатов обработки отдельных файлов.
+     *
+     * @param listener получатель результатов
+     */
+    @Override
+    public void setListener(Consumer<RestoreEvent> listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Отменяет восстановление. Стадии перестают брать новую работу и
+     * завершаются, пропуская файлы, оставшиеся в очередях. Отмена действует на
+     * все последующие вызовы {@link #restore(Path)} этого объекта.
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Проверяет, было ли восстановление отменено.
+     *
+     * @return {@code true}, если вызван {@link #cancel()}
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Восстанавливает расширения всех файлов в дереве указанной директории.
+     * Если вызывающий поток прерван, восстановление отменяется, а признак
+     * прерывания восстанавливается после остановки всех стадий.
+     *
+     * @param root корневая директория
+     * @return отчет о выполненной работе
+     * @throws IllegalArgumentException если путь не является директорией
+     */
+    @Override
+    public BatchReport restore(Path root) {
+        if (root == null || !Files.isDirectory(root)) {
+            logger.error("pipeline restore: the directory was not found");
+            throw new IllegalArgumentException("directory not found: " + root);
+        }
+        BatchRestorer.reloadSignatures();
+
+        logger.info("pipeline restore started in {} with {} readers and {} matchers{}{}",
+                root, readers, matchers, dryRun ? " (dry run)" : "",
+                duplicates == Duplicates.KEEP ? "" : ", duplicates: " + duplicates.name().toLowerCase(Locale.ROOT));
+        files.reset();
+        renamed.reset();
+        unknown.reset();
+        failed.reset();
+        duplicated.reset();
+        restored.clear();
+        renamer = new Renamer();
+        pending.clear();
+        verifications.clear();
+        verifier = duplicates == Duplicates.LINK && !dryRun
+                ? Executors.newFixedThreadPool(readers, runnable -> {
+                    Thread thread = new Thread(runnable, "pipeline-verifier");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        long start = System.nanoTime();
+
+        SignatureTrie signatures = Expander.signatures().trie();
+        DetectionCache cache = Expander.cache();
+        BlockingQueue<Path> paths = new ArrayBlockingQueue<>(PATH_QUEUE);
+        BlockingQueue<Sniffed> headers = new ArrayBlockingQueue<>(HEADER_QUEUE);
+        BlockingQueue<Detected> results = new ArrayBlockingQueue<>(RESULT_QUEUE);
+        AtomicInteger activeReaders = new AtomicInteger(readers);
+        AtomicInteger activeMatchers = new AtomicInteger(matchers);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start("pipeline-walker", () -> walk(root, paths)));
+        for (int i = 0; i < readers; i++) {
+            threads.add(start("pipeline-reader-" + i,
+                    () -> read(signatures, cache, paths, headers, results, activeReaders)));
+        }
+        for (int i = 0; i < matchers; i++) {
+            threads.add(start("pipeline-matcher-" + i,
+                    () -> match(signatures, cache, headers, results, activeMatchers)));
+        }
+
+        boolean interrupted = rename(results);
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (verifier != null) {
+            verifier.shutdownNow();
+            verifier = null;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        restored.clear();
+        pending.clear();
+        BatchReport report = new BatchReport(files.sum(), renamed.sum(), unknown.sum(),
+                failed.sum(), duplicated.sum(), System.nanoTime() - start);
+        logger.info("pipeline restore {}: {}", cancelled ? "cancelled" : "finished", report);
+        return report;
+    }
+
+    /**
+     * Стадия обхода: передает пути обычных файлов дерева в очередь чтения.
+     * Символические ссылки не обходятся.
+     */
+    private void walk(Path root, BlockingQueue<Path> paths) {
+        Deque<Path> directories = new ArrayDeque<>();
+        directories.push(root);
+        try {
+            while (!directories.isEmpty() && !cancelled) {
+                Path directory = directories.pop();
+                int count = 0;
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                    for (Path entry : stream) {
+                        if (cancelled) {
+                            break;
+                        }
+                        BasicFileAttributes attributes = BatchRestorer.attributes(entry);
+                        if (attributes == null) {
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            directories.push(entry);
+                        } else if (attributes.isRegularFile()) {
+                            put(paths, entry);
+                            count++;
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed.increment();
+                    Metrics.FAILURES.increment();
+                    logger.warn("pipeline restore: failed to read directory {}: {}", directory, e.getMessage());
+                }
+                if (count > 0) {
+                    settle(directory, count);
+                }
+            }
+        } finally {
+            for (int i = 0; i < readers; i++) {
+                put(paths, END);
+            }
+        }
+    }
+
+    /**
+     * Стадия чтения: читает начало файла или берет готовый результат из кэша.
+     * Последний завершившийся поток чтения завершает стадию сопоставления.
+     */
+    private void read(SignatureTrie signatures, DetectionCache cache, BlockingQueue<Path> paths,
+                      BlockingQueue<Sniffed> headers, BlockingQueue<Detected> results,
+                      AtomicInteger active) {
+        int length = Expander.headerLength(signatures);
+        byte[] buffer = duplicates == Duplicates.KEEP ? null : new byte[Math.max(HASH_BUFFER, length)];
+        try {
+            for (Path path = take(paths); path != END; path = take(paths)) {
+                if (cancelled) {
+                    continue;
+                }
+                try {
+                    DetectionCache.Key key = null;
+                    String cached = DetectionCache.MISS;
+                    if (cache != null) {
+                        key = DetectionCache.key(path);
+                        cached = cache.lookup(key);
+                        if (cached != DetectionCache.MISS) {
+                            Metrics.CACHE_HITS.increment();
+                            if (buffer == null) {
+                                put(results, new Detected(path, cached, null, null));
+                                continue;
+                            }
+                        } else {
+                            Metrics.CACHE_MISSES.increment();
+                        }
+                    }
+                    if (buffer == null) {
+                        ByteBuffer header = HeaderReader.read(path, length);
+                        byte[] bytes = new byte[header.remaining()];
+                        header.get(bytes);
+                        put(headers, new Sniffed(path, key, bytes, null));
+                        continue;
+                    }
+                    Sniffed sniffed = hash(path, key, length, buffer);
+                    if (sniffed == null) {
+                        continue;
+                    }
+                    if (cached != DetectionCache.MISS) {
+                        put(results, new Detected(path, cached, null, sniffed.content()));
+                    } else {
+                        put(headers, sniffed);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    put(results, new Detected(path, null, e, null));
+                }
+            }
+        } finally {
+            if (active.decrementAndGet() == 0) {
+                for (int i = 0; i < matchers; i++) {
+                    put(headers, END_OF_HEADERS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает файл целиком, считая хеш содержимого, и сохраняет его начало.
+     *
+     * @return прочитанный файл или {@code null}, если восстановление отменено
+     */
+    private Sniffed hash(Path path, DetectionCache.Key key, int length, byte[] buffer) throws IOException {
+        XxHash64 hash = new XxHash64();
+        byte[] header = null;
+        long size = 0;
+        long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(path)) {
+            while (true) {
+                int count = in.readNBytes(buffer, 0, buffer.length);
+                if (header == null) {
+                    header = Arrays.copyOf(buffer, Math.min(count, length));
+                    Metrics.HEADER_READS.record(System.nanoTime() - start);
+                    Metrics.HEADER_BYTES.add(header.length);
+                }
+                hash.update(buffer, 0, count);
+                size += count;
+                if (count < buffer.length) {
+                    break;
+                }
+                if (cancelled) {
+                    return null;
+                }
+            }
+        }
+        Metrics.HASHED_BYTES.add(size);
+        return new Sniffed(path, key, header, new Content(size, hash.digest()));
+    }
+
+    /**
+     * Стадия сопоставления: определяет тип по прочитанному началу файла и
+     * записывает его в кэш. Последний завершившийся поток завершает стадию
+     * переименования.
+     */
+    private void match(SignatureTrie signatures, DetectionCache cache, BlockingQueue<Sniffed> headers,
+                       BlockingQueue<Detected> results, AtomicInteger active) {
+        try {
+            for (Sniffed sniffed = take(headers); sniffed != END_OF_HEADERS; sniffed = take(headers)) {
+                if (cancelled) {
+                    continue;
+                }
+                Detected detected;
+                try {
+                    String type = Expander.detect(signatures, ByteBuffer.wrap(sniffed.header()),
+                            sniffed.path().toFile());
+                    detected = new Detected(sniffed.path(), type, null, sniffed.content());
+                    if (cache != null) {
+                        try {
+                            cache.put(sniffed.key(), type);
+                        } catch (IOException e) {
+                            logger.warn("failed to write to the detection cache: {}", e.getMessage());
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    detected = new Detected(sniffed.path(), null, e, null);
+                }
+                put(results, detected);
+            }
+        } finally {
+            if (active.decrementAndGet() == 0) {
+                put(results, END_OF_RESULTS);
+            }
+        }
+    }
+
+    /**
+     * Стадия переименования: накапливает результаты по директориям и
+     * переименовывает файлы директории, когда их набирается
+     * {@value #RENAME_BATCH} или когда новых результатов нет дольше
+     * {@value #FLUSH_MILLIS} мс.
+     *
+     * @return {@code true}, если вызывающий поток был прерван
+     */
+    private boolean rename(BlockingQueue<Detected> results) {
+        boolean interrupted = false;
+        Map<Path, List<Detected>> batches = new HashMap<>();
+        while (true) {
+            Detected detected;
+            try {
+                detected = results.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                cancel();
+                continue;
+            }
+            interrupted |= verified(MAX_VERIFICATIONS);
+            if (detected == END_OF_RESULTS) {
+                break;
+            }
+            if (detected == null) {
+                batches.values().forEach(this::renameBatch);
+                batches.clear();
+                continue;
+            }
+            if (cancelled) {
+                continue;
+            }
+            List<Detected> batch = batches.computeIfAbsent(detected.path().getParent(),
+                    directory -> new ArrayList<>(RENAME_BATCH));
+            batch.add(detected);
+            if (batch.size() == RENAME_BATCH) {
+                batches.remove(detected.path().getParent());
+                renameBatch(batch);
+            }
+        }
+        batches.values().forEach(this::renameBatch);
+        interrupted |= verified(0);
+        return interrupted;
+    }
+
+    /**
+     * Переименовывает порцию файлов одной директории.
+     */
+    private void renameBatch(List<Detected> batch) {
+        for (Detected detected : batch) {
+            if (cancelled) {
+                return;
+            }
+            if (renameFile(detected)) {
+                settle(detected.path().getParent(), -1);
+            }
+        }
+    }
+
+    /**
+     * Учитывает файлы директории, переданные обходом или обработанные
+     * переименованием, и освобождает список имен директории
+     * ({@link Renamer#release}), когда обработаны все ее файлы.
+     *
+     * @param directory директория
+     * @param count количество переданных файлов или {@code -1} за обработанный файл
+     */
+    private void settle(Path directory, int count) {
+        if (pending.merge(directory, count, (left, right) -> left + right == 0 ? null : left + right) == null) {
+            renamer.release(directory);
+        }
+    }
+
+    /**
+     * Возвращает количество имен в списках директорий, которые еще хранятся
+     * для переименования.
+     *
+     * @return количество имен
+     */
+    long listedNames() {
+        return renamer.names();
+    }
+
+    /**
+     * Обрабатывает результат определения типа одного файла.
+     *
+     * @return {@code false}, если файл - повтор, ожидающий побайтного сравнения
+     */
+    private boolean renameFile(Detected detected) {
+        Path path = detected.path();
+        String extension = detected.type();
+        files.increment();
+        try {
+            if (detected.error() != null) {
+                throw detected.error();
+            }
+            if (extension == null) {
+                unknown.increment();
+                listener.accept(new RestoreEvent(path, null, null, RestoreEvent.Status.UNKNOWN, null));
+                return true;
+            }
+            Path target = Expander.targetFile(path.toFile(), extension).toPath();
+            Path original = detected.content() == null ? null : restored.get(detected.content());
+            if (original != null) {
+                if (duplicates == Duplicates.SKIP || dryRun) {
+                    duplicated.increment();
+                    Metrics.DUPLICATES.increment();
+                    listener.accept(new RestoreEvent(path, extension, original, RestoreEvent.Status.DUPLICATE, null));
+                    return true;
+                }
+                // ссылка заменяет содержимое файла, поэтому совпадение хешей
+                // проверяется побайтно, но не в этом потоке
+                verifications.add(new Verification(detected, target, original,
+                        verifier.submit(() -> Files.mismatch(path, original))));
+                return false;
+            }
+            restore(detected, target);
+        } catch (Exception e) {
+            fail(path, extension, e);
+        }
+        return true;
+    }
+
+    /**
+     * Переименовывает файл, у которого нет восстановленного повтора, или
+     * только сообщает о переименовании при пробном запуске.
+     *
+     * @throws RenameException если переименование не удалось
+     */
+    private void restore(Detected detected, Path target) {
+        Path path = detected.path();
+        String extension = detected.type();
+        if (!dryRun) {
+            renamer.rename(path, extension);
+        }
+        renamed.increment();
+        if (detected.content() != null) {
+            restored.put(detected.content(), target);
+        }
+        listener.accept(new RestoreEvent(path, extension, target,
+                dryRun ? RestoreEvent.Status.PLANNED : RestoreEvent.Status.RENAMED, null));
+    }
+
+    /**
+     * Завершает обработку повторов, сравнение которых закончено, по порядку
+     * поступления и дожидается самых старых, пока ожидающих больше
+     * {@code limit}. После отмены ожидающие повторы отбрасываются.
+     *
+     * @return {@code true}, если вызывающий поток был прерван
+     */
+    private boolean verified(int limit) {
+        boolean interrupted = false;
+        while (!verifications.isEmpty()) {
+            if (cancelled) {
+                verifications.forEach(verification -> verification.mismatch().cancel(true));
+                verifications.clear();
+                break;
+            }
+            Verification verification = verifications.peek();
+            if (!verification.mismatch().isDone() && verifications.size() <= limit) {
+                break;
+            }
+            try {
+                verification.mismatch().get();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                cancel();
+                continue;
+            } catch (ExecutionException e) {
+                // ошибка сравнения сообщается при обработке повтора
+            }
+            verifications.poll();
+            link(verification);
+            settle(verification.detected().path().getParent(), -1);
+        }
+        return interrupted;
+    }
+
+    /**
+     * Заменяет повтор жесткой ссылкой на восстановленный файл
+     * ({@link Renamer#link}) или, если содержимое все же различается,
+     * восстанавливает его как обычно. Сравнение должно быть закончено.
+     */
+    private void link(Verification verification) {
+        Detected detected = verification.detected();
+        Path path = detected.path();
+        String extension = detected.type();
+        try {
+            long mismatch;
+            try {
+                mismatch = verification.mismatch().get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            if (mismatch != -1) {
+                logger.info("pipeline restore: {} has the same hash as {} but different content",
+                        path, verification.original());
+                restore(detected, verification.target());
+                return;
+            }
+            renamer.link(path, extension, verification.original());
+            duplicated.increment();
+            Metrics.DUPLICATES.increment();
+            listener.accept(new RestoreEvent(path, extension, verification.target(),
+                    RestoreEvent.Status.LINKED, null));
+        } catch (Exception e) {
+            fail(path, extension, e);
+        }
+    }
+
+    /**
+     * Учитывает ошибку обработки файла.
+     */
+    private void fail(Path path, String extension, Exception e) {
+        failed.increment();
+        Metrics.FAILURES.increment();
+        // у части исключений (например, BufferUnderflowException) нет сообщения
+        String message = Objects.toString(e.getMessage(), e.toString());
+        logger.warn("pipeline restore: failed to process {}: {}", path, message);
+        listener.accept(new RestoreEvent(path, extension, null, RestoreEvent.Status.FAILED, message));
+    }
+
+    /**
+     * Запускает поток стадии.
+     */
+    private static Thread start(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Кладет элемент в очередь, дожидаясь свободного места даже при прерывании:
+     * потеря признака конца очереди остановила бы следующую стадию навсегда.
+     */
+    private <T> void put(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                cancel();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Берет элемент из очереди, дожидаясь его даже при прерывании.
+     */
+    private <T> T take(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    cancel();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
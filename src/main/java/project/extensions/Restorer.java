@@ -0,0 +1,49 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Пакетное восстановление расширений всех файлов в дереве каталогов.
+ *
+ * <p>Реализации: {@link BatchRestorer} обрабатывает файлы целиком в задачах
+ * {@link java.util.concurrent.ForkJoinPool} и подходит для локальных дисков,
+ * {@link RestorePipeline} разделяет чтение, сопоставление и переименование на
+ * стадии и подходит для медленных и сетевых дисков.
+ *
+ */
+public interface Restorer {
+
+    /**
+     * Включает или выключает пробный запуск, при котором файлы не переименовываются.
+     *
+     * @param dryRun {@code true} для пробного запуска
+     */
+    void setDryRun(boolean dryRun);
+
+    /**
+     * Устанавливает получателя результатов обработки отдельных файлов.
+     * Получатель может вызываться из нескольких потоков.
+     *
+     * @param listener получатель результатов
+     */
+    void setListener(Consumer<RestoreEvent> listener);
+
+    /**
+     * Отменяет восстановление; необработанные файлы пропускаются.
+     */
+    void cancel();
+
+    /**
+     * Восстанавливает расширения всех файлов в дереве указанной директории.
+     *
+     * @param root корневая директория
+     * @return отчет о выполненной работе
+     * @throws IllegalArgumentException если путь не является директорией
+     */
+    BatchReport restore(Path root);
+}
@@ -0,0 +1,262 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Сеанс работы с файловой системой: текущая директория и выбранный файл.
+ *
+ * <p>Каждый сеанс хранит собственное состояние, поэтому несколько сеансов
+ * (графический интерфейс, консольный режим, пакетные задачи) работают в одном
+ * процессе независимо друг от друга. Текущая директория и выбранный файл
+ * хранятся вместе в одном неизменяемом снимке и заменяются атомарно, так что
+ * методы сеанса можно вызывать из нескольких потоков без блокировок.
+ *
+ * <p>Статические методы {@link Position} работают с сеансом по умолчанию
+ * {@link #defaultSession()}.
+ *
+ */
+public final class Session {
+
+    /**
+     * Логгер для записи событий класса.
+     */
+    private static final Logger logger = LogManager.getLogger(Session.class);
+
+    /**
+     * Сеанс по умолчанию, начинающийся в рабочей директории процесса.
+     */
+    private static final Session DEFAULT = new Session(Paths.get("").toAbsolutePath());
+
+    /**
+     * Снимок состояния сеанса.
+     *
+     * @param path текущая директория
+     * @param file выбранный файл или {@code null}
+     */
+    private record State(Path path, File file) {
+    }
+
+    /**
+     * Текущее состояние сеанса.
+     */
+    private final AtomicReference<State> state;
+
+    /**
+     * Создает сеанс без выбранного файла.
+     *
+     * @param path начальная директория
+     */
+    public Session(Path path) {
+        state = new AtomicReference<>(new State(path, null));
+    }
+
+    /**
+     * Возвращает сеанс по умолчанию, с которым работают статические методы {@link Position}.
+     *
+     * @return сеанс по умолчанию
+     */
+    public static Session defaultSession() {
+        return DEFAULT;
+    }
+
+    /**
+     * Возвращает текущую директорию.
+     *
+     * @return текущая директория
+     */
+    public Path getPath() {
+        return state.get().path();
+    }
+
+    /**
+     * Возвращает выбранный файл.
+     *
+     * @return выбранный файл или {@code null}
+     */
+    public File getFile() {
+        return state.get().file();
+    }
+
+    /**
+     * Устанавливает текущую директорию, сохраняя выбранный файл.
+     *
+     * @param path новая директория
+     */
+    public void setPath(Path path) {
+        state.updateAndGet(current -> new State(path, current.file()));
+    }
+
+    /**
+     * Переходит в директорию и сбрасывает выбор файла.
+     *
+     * @param path новая директория
+     */
+    public void reset(Path path) {
+        state.set(new State(path, null));
+    }
+
+    /**
+     * Выбирает файл по имени относительно текущей директории или по абсолютному пути.
+     *
+     * @param name имя файла
+     * @return выбранный файл
+     * @throws IllegalArgumentException если имя файла пустое
+     * @throws RuntimeException если файл не найден
+     */
+    public File select(String name) {
+        if (name.isEmpty()) {
+            logger.error("invalid file path");
+            throw new IllegalArgumentException("invalid file path");
+        }
+        while (true) {
+            Path directory = getPath();
+            File file = directory.resolve(Paths.get(name)).toFile();
+            if (!file.exists()) {
+                logger.error("file not found");
+                throw new RuntimeException("file not found");
+            }
+            if (updateIn(directory, current -> new State(directory, file))) {
+                logger.info("successful file selection");
+                return file;
+            }
+        }
+    }
+
+    /**
+     * Заменяет выбранный файл, например после его переименования.
+     *
+     * @param file новый выбранный файл или {@code null}
+     */
+    public void setFile(File file) {
+        state.updateAndGet(current -> new State(current.path(), file));
+    }
+
+    /**
+     * Заменяет выбранный файл, только если выбран ожидаемый файл. Используется
+     * фоновыми командами, чтобы не перезаписать выбор, сделанный во время их работы.
+     *
+     * @param expected файл, который должен быть выбран
+     * @param file новый выбранный файл
+     * @return {@code true}, если выбор заменен
+     */
+    public boolean replaceFile(File expected, File file) {
+        State current = state.get();
+        while (current.file() == expected) {
+            if (state.compareAndSet(current, new State(current.path(), file))) {
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    /**
+     * Возвращает независимую копию сеанса с теми же директорией и выбранным
+     * файлом, например для фоновой команды.
+     *
+     * @return копия сеанса
+     */
+    public Session snapshot() {
+        Session copy = new Session(getPath());
+        copy.state.set(state.get());
+        return copy;
+    }
+
+    /**
+     * Переходит в другую директорию.
+     *
+     * @param name имя директории или ".." для перехода в родительскую директорию
+     * @return новая текущая директория
+     * @throws IllegalArgumentException если директория не найдена или текущая
+     * директория является корневой
+     */
+    public Path changePath(String name) {
+        while (true) {
+            Path path = getPath();
+            Path target;
+            if (name.equals("..")) {
+                if (path.getParent() == null) {
+                    logger.error("directory navigation error (end of file explorer)");
+                    throw new IllegalArgumentException("is home dir");
+                }
+                target = path.getParent();
+            } else {
+                target = path.resolve(name).normalize();
+                if (!Files.isDirectory(target)) {
+                    logger.error("unsuccessful attempt to find the directory");
+                    throw new IllegalArgumentException("directory not found: " + name);
+                }
+            }
+            if (updateIn(path, current -> new State(target, current.file()))) {
+                logger.info(name.equals("..") ? "moving back through the directory"
+                        : "successful transition to another directory");
+                return target;
+            }
+        }
+    }
+
+    /**
+     * Применяет изменение состояния, если текущая директория все еще та, для
+     * которой оно вычислено. Обращения к файловой системе, журнал и исключения
+     * остаются снаружи: функция изменения может вызываться повторно.
+     *
+     * @param path директория, для которой вычислено изменение
+     * @param update изменение состояния без побочных эффектов
+     * @return {@code false}, если директория сменилась и изменение нужно вычислить заново
+     */
+    private boolean updateIn(Path path, UnaryOperator<State> update) {
+        State current = state.get();
+        while (current.path().equals(path)) {
+            if (state.compareAndSet(current, update.apply(current))) {
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    /**
+     * Возвращает имена файлов текущей директории в виде ленивого потока.
+     * Поток нужно закрыть после использования.
+     *
+     * @return поток имен файлов
+     * @throws RuntimeException если директорию не удалось открыть
+     * @see Position#streamFilesDirectory()
+     */
+    public Stream<Path> streamFiles() {
+        logger.info("trying to view directory files");
+        DirectoryStream<Path> directory;
+        try {
+            directory = Files.newDirectoryStream(getPath());
+        } catch (IOException e) {
+            logger.error("an unsuccessful to view the files of the directory");
+            throw new RuntimeException(e);
+        }
+        return StreamSupport.stream(directory.spliterator(), false)
+                .map(Path::getFileName)
+                .onClose(() -> {
+                    try {
+                        directory.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.Arrays;
+
+/**
+ * Сигнатура одного типа файлов из базы сигнатур.
+ *
+ * <p>Все условия сигнатуры (основная последовательность и дополнительные
+ * проверки по другим смещениям) сведены в один шаблон, который отсчитывается
+ * от начала файла. Байт заголовка {@code h} с номером {@code i} подходит, если
+ * {@code (h & mask[i]) == (pattern[i] & mask[i])}; байты с нулевой маской
+ * (промежутки между условиями) могут быть любыми.
+ *
+ * @param extension расширение файла
+ * @param priority приоритет; при нескольких совпадениях выбирается сигнатура
+ *                 с большим приоритетом, а при равном приоритете - более точная
+ * @param pattern байты шаблона
+ * @param mask маски байтов шаблона
+ */
+record Signature(String extension, int priority, byte[] pattern, byte[] mask) {
+
+    /**
+     * Создает сигнатуру без масок, начинающуюся с начала файла.
+     *
+     * @param extension расширение файла
+     * @param pattern байты сигнатуры
+     * @return сигнатура
+     */
+    static Signature exact(String extension, byte[] pattern) {
+        byte[] mask = new byte[pattern.length];
+        Arrays.fill(mask, (byte) 0xFF);
+        return new Signature(extension, 0, pattern, mask);
+    }
+
+    /**
+     * Возвращает длину шаблона, то есть количество байтов заголовка, нужное для проверки.
+     *
+     * @return длина в байтах
+     */
+    int length() {
+        return pattern.length;
+    }
+
+    /**
+     * Возвращает точность сигнатуры - количество проверяемых битов.
+     *
+     * @return количество битов маски
+     */
+    int weight() {
+        int weight = 0;
+        for (byte b : mask) {
+            weight += Integer.bitCount(b & 0xFF);
+        }
+        return weight;
+    }
+
+    /**
+     * Проверяет, является ли сигнатура простой последовательностью байтов с
+     * начала файла (без промежутков и масок).
+     *
+     * @return {@code true} для простой сигнатуры
+     */
+    boolean isExact() {
+        for (byte b : mask) {
+            if (b != (byte) 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * База сигнатур файлов, загружаемая из текстового файла.
+ *
+ * <p>Формат файла (версия 1):
+ * <pre>
+ * # комментарий
+ * version 1
+ * &lt;расширение&gt; &lt;приоритет&gt; &lt;условие&gt; [&lt;условие&gt;...]
+ * </pre>
+ * Условие записывается как {@code смещение:байты} или {@code смещение:байты/маска},
+ * где байты и маска - шестнадцатеричные числа без пробелов, а {@code ??}
+ * означает любой байт. Все условия строки должны выполняться одновременно,
+ * например {@code webp 20 0:52494646 8:57454250}. Для одного расширения можно
+ * указать несколько строк.
+ *
+ * <p>Встроенная база находится в ресурсе {@code signatures.db} рядом с классом.
+ *
+ */
+final class SignatureDatabase {
+
+    /**
+     * Поддерживаемая версия формата.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Имя ресурса встроенной базы.
+     */
+    static final String BUNDLED = "signatures.db";
+
+    /**
+     * Наибольшее смещение условия.
+     */
+    private static final int MAX_OFFSET = 4096;
+
+    private final List<Signature> signatures;
+    private final Path source;
+    private final FileTime modified;
+    private final long fingerprint;
+
+    private SignatureDatabase(List<Signature> signatures, Path source, FileTime modified) {
+        this.signatures = Collections.unmodifiableList(signatures);
+        this.source = source;
+        this.modified = modified;
+        this.fingerprint = fingerprint(signatures);
+    }
+
+    /**
+     * Загружает встроенную базу сигнатур.
+     *
+     * @return база сигнатур
+     * @throws IOException если ресурс не найден или не прочитан
+     */
+    static SignatureDatabase bundled() throws IOException {
+        try (InputStream input = SignatureDatabase.class.getResourceAsStream(BUNDLED)) {
+            if (input == null) {
+                throw new IOException("the bundled signature database was not found");
+            }
+            return new SignatureDatabase(parse(new InputStreamReader(input, StandardCharsets.UTF_8), BUNDLED),
+                    null, null);
+        }
+    }
+
+    /**
+     * Загружает базу сигнатур из файла.
+     *
+     * @param file файл базы
+     * @return база сигнатур
+     * @throws IOException если файл не прочитан
+     * @throws IllegalArgumentException если файл записан неверно
+     */
+    static SignatureDatabase load(Path file) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new SignatureDatabase(parse(reader, file.toString()), file, modified);
+        }
+    }
+
+    /**
+     * Возвращает сигнатуры базы.
+     *
+     * @return неизменяемый список сигнатур
+     */
+    List<Signature> signatures() {
+        return signatures;
+    }
+
+    /**
+     * Возвращает отпечаток содержимого базы. Базы с одинаковыми сигнатурами
+     * имеют одинаковый отпечаток независимо от источника.
+     *
+     * @return 64-битный отпечаток
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Возвращает файл, из которого загружена база.
+     *
+     * @return файл или {@code null} для встроенной базы
+     */
+    Path source() {
+        return source;
+    }
+
+    /**
+     * Проверяет, изменился ли файл базы после загрузки.
+     *
+     * @return {@code true}, если базу нужно загрузить заново
+     */
+    boolean isModified() {
+        if (source == null) {
+            return false;
+        }
+        try {
+            return !Files.getLastModifiedTime(source).equals(modified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Вычисляет отпечаток списка сигнатур (FNV-1a).
+     *
+     * @param signatures сигнатуры
+     * @return 64-битный отпечаток
+     */
+    private static long fingerprint(List<Signature> signatures) {
+        long hash = 0xcbf29ce484222325L;
+        for (Signature signature : signatures) {
+            for (byte b : signature.extension().getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            hash = (hash ^ signature.priority()) * 0x100000001b3L;
+            for (int i = 0; i < signature.length(); i++) {
+                hash = (hash ^ (signature.pattern()[i] & 0xFF)) * 0x100000001b3L;
+                hash = (hash ^ (signature.mask()[i] & 0xFF)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xFF) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Разбирает текст базы сигнатур.
+     *
+     * @param reader источник текста
+     * @param name имя источника для сообщений об ошибках
+     * @return список сигнатур
+     * @throws IOException если текст не прочитан
+     * @throws IllegalArgumentException если текст записан неверно
+     */
+    static List<Signature> parse(Reader reader, String name) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<Signature> result = new ArrayList<>();
+        boolean versionFound = false;
+        String line;
+        int number = 0;
+
+        while ((line = lines.readLine()) != null) {
+            number++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split("\\s+");
+            try {
+                if (!versionFound) {
+                    if (parts.length != 2 || !parts[0].equals("version")) {
+                        throw new IllegalArgumentException("the first line must be 'version " + VERSION + "'");
+                    }
+                    if (Integer.parseInt(parts[1]) != VERSION) {
+                        throw new IllegalArgumentException("unsupported version " + parts[1]);
+                    }
+                    versionFound = true;
+                    continue;
+                }
+                if (parts.length < 3) {
+                    throw new IllegalArgumentException("expected: <extension> <priority> <offset:bytes>...");
+                }
+                result.add(parseSignature(parts));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(name + ":" + number + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (!versionFound) {
+            throw new IllegalArgumentException(name + ": the version line is missing");
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает строку с сигнатурой.
+     *
+     * @param parts части строки
+     * @return сигнатура
+     */
+    private static Signature parseSignature(String[] parts) {
+        String extension = parts[0];
+        int priority = Integer.parseInt(parts[1]);
+
+        int length = 0;
+        int[] offsets = new int[parts.length - 2];
+        byte[][] patterns = new byte[parts.length - 2][];
+        byte[][] masks = new byte[parts.length - 2][];
+        for (int i = 2; i < parts.length; i++) {
+            String clause = parts[i];
+            int colon = clause.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("invalid condition: " + clause);
+            }
+            int offset = Integer.parseInt(clause.substring(0, colon));
+            if (offset < 0 || offset > MAX_OFFSET) {
+                throw new IllegalArgumentException("invalid offset: " + clause);
+            }
+
+            String bytes = clause.substring(colon + 1);
+            String mask = null;
+            int slash = bytes.indexOf('/');
+            if (slash >= 0) {
+                mask = bytes.substring(slash + 1);
+                bytes = bytes.substring(0, slash);
+            }
+            if (bytes.isEmpty() || bytes.length() % 2 != 0 || mask != null && mask.length() != bytes.length()) {
+                throw new IllegalArgumentException("invalid bytes: " + clause);
+            }
+
+            int count = bytes.length() / 2;
+            offsets[i - 2] = offset;
+            patterns[i - 2] = new byte[count];
+            masks[i - 2] = new byte[count];
+            for (int j = 0; j < count; j++) {
+                String hex = bytes.substring(j * 2, j * 2 + 2);
+                if (hex.equals("??")) {
+                    continue;
+                }
+                int value = Integer.parseInt(hex, 16);
+                int bitMask = mask == null ? 0xFF : Integer.parseInt(mask.substring(j * 2, j * 2 + 2), 16);
+                patterns[i - 2][j] = (byte) (value & bitMask);
+                masks[i - 2][j] = (byte) bitMask;
+            }
+            length = Math.max(length, offset + count);
+        }
+
+        byte[] pattern = new byte[length];
+        byte[] mask = new byte[length];
+        for (int i = 0; i < offsets.length; i++) {
+            for (int j = 0; j < patterns[i].length; j++) {
+                int position = offsets[i] + j;
+                int common = mask[position] & masks[i][j];
+                if ((pattern[position] & common) != (patterns[i][j] & common)) {
+                    throw new IllegalArgumentException("conflicting conditions at offset " + position);
+                }
+                pattern[position] |= patterns[i][j];
+                mask[position] |= masks[i][j];
+            }
+        }
+        return new Signature(extension, priority, pattern, mask);
+    }
+}
@@ -0,0 +1,372 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Индекс коротких сигнатур по первым байтам заголовка.
+ *
+ * <p>Первые четыре байта заголовка складываются в одно число {@code int},
+ * которое ищется в хеш-таблице с открытой адресацией четырехбайтовых сигнатур,
+ * затем его старшие три и два байта - в таблицах трехбайтовых ({@code mp3}) и
+ * двухбайтовых ({@code bmp}) сигнатур. Таблицы хранятся в примитивных массивах,
+ * поэтому поиск - несколько целочисленных операций без создания объектов.
+ * Ответ для каждого ключа вычисляется при построении деревом
+ * {@link SignatureTrie}, поэтому приоритеты сигнатур соблюдаются так же, как при
+ * поиске в дереве.
+ *
+ * <p>В таблицы попадают только простые сигнатуры длиной от двух до четырех
+ * байтов. Остальные сигнатуры (длиннее, с масками или со смещением) могут
+ * совпасть с тем же заголовком и оказаться лучше ответа таблицы: например,
+ * {@code tar} проверяется по смещению 257, а {@code mp4} - по смещению 4, то
+ * есть при любых первых байтах. Для каждого ключа при построении отбираются
+ * сигнатуры, которые могут превзойти его ответ, и при поиске проверяются только
+ * их байты с ненулевой маской. Если такая сигнатура совпала или заголовок
+ * начинается так же, как длинная сигнатура без таблицы (например, {@code RIFF}),
+ * индекс возвращает {@link #DEFER}, и заголовок проверяется деревом. После
+ * построения индекс не изменяется и может использоваться из нескольких потоков.
+ *
+ */
+final class SignatureIndex {
+
+    /**
+     * Результат поиска: ответ должно дать дерево сигнатур.
+     */
+    static final int DEFER = -1;
+
+    /**
+     * Результат поиска: ни одна сигнатура не подходит.
+     */
+    static final int NONE = 0;
+
+    /**
+     * Чтение первых четырех байтов заголовка как числа, старший байт первый.
+     */
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Расширение по номеру результата; номер {@link #NONE} соответствует {@code null}.
+     */
+    private final String[] types;
+
+    /**
+     * Сигнатуры, которые нужно проверить для каждого номера результата: если
+     * одна из них совпала, ответ дает дерево.
+     */
+    private final Condition[][] residuals;
+
+    /**
+     * Таблицы сигнатур длиной четыре, три и два байта.
+     */
+    private final Table four;
+    private final Table three;
+    private final Table two;
+
+    /**
+     * Пары первых двух байтов, с которых начинается сигнатура, не попавшая в
+     * таблицы; по одному биту на пару.
+     */
+    private final long[] deferred = new long[1 << 10];
+
+    /**
+     * Условия сигнатуры, сведенные к байтам с ненулевой маской.
+     *
+     * @param length длина шаблона сигнатуры
+     * @param offsets смещения проверяемых байтов
+     * @param values значения байтов под маской
+     * @param masks маски байтов
+     */
+    private record Condition(int length, int[] offsets, byte[] values, byte[] masks) {
+
+        static Condition of(Signature signature) {
+            int count = 0;
+            for (byte mask : signature.mask()) {
+                count += mask != 0 ? 1 : 0;
+            }
+            int[] offsets = new int[count];
+            byte[] values = new byte[count];
+            byte[] masks = new byte[count];
+            for (int i = 0, j = 0; i < signature.length(); i++) {
+                if (signature.mask()[i] != 0) {
+                    offsets[j] = i;
+                    masks[j] = signature.mask()[i];
+                    values[j++] = (byte) (signature.pattern()[i] & signature.mask()[i]);
+                }
+            }
+            return new Condition(signature.length(), offsets, values, masks);
+        }
+
+        boolean matches(byte[] header, int limit) {
+            if (limit < length) {
+                return false;
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                if ((header[offsets[i]] & masks[i]) != values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matches(ByteBuffer header, int base, int limit) {
+            if (limit - base < length) {
+                return false;
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                if ((header.get(base + offsets[i]) & masks[i]) != values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Открытая хеш-таблица "ключ - номер результата" с линейным пробированием.
+     */
+    private static final class Table {
+
+        private final int[] keys;
+
+        /**
+         * Номер результата или 0 для свободной ячейки.
+         */
+        private final int[] codes;
+        private final int shift;
+
+        Table(List<int[]> entries) {
+            int capacity = Integer.highestOneBit(Math.max(2, entries.size()) * 2 - 1) << 1;
+            keys = new int[capacity];
+            codes = new int[capacity];
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+            for (int[] entry : entries) {
+                int slot = slot(entry[0]);
+                while (codes[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = entry[0];
+                codes[slot] = entry[1];
+            }
+        }
+
+        int find(int key) {
+            for (int slot = slot(key); ; slot = (slot + 1) & (codes.length - 1)) {
+                int code = codes[slot];
+                if (code == 0 || keys[slot] == key) {
+                    return code;
+                }
+            }
+        }
+
+        private int slot(int key) {
+            return (key * 0x9E3779B9) >>> shift;
+        }
+    }
+
+    private SignatureIndex(String[] types, Condition[][] residuals, List<List<int[]>> entries) {
+        this.types = types;
+        this.residuals = residuals;
+        this.four = new Table(entries.get(0));
+        this.three = new Table(entries.get(1));
+        this.two = new Table(entries.get(2));
+    }
+
+    /**
+     * Строит индекс по сигнатурам.
+     *
+     * @param signatures сигнатуры
+     * @param trie дерево, построенное по тем же сигнатурам
+     * @return индекс
+     */
+    static SignatureIndex build(List<Signature> signatures, SignatureTrie trie) {
+        List<Signature> indexed = new ArrayList<>();
+        List<Signature> others = new ArrayList<>();
+        for (Signature signature : signatures) {
+            if (signature.isExact() && signature.length() >= 2 && signature.length() <= 4) {
+                indexed.add(signature);
+            } else {
+                others.add(signature);
+            }
+        }
+
+        // без совпадения в таблицах проверяются сигнатуры, начало которых не задано двумя байтами
+        List<String> types = new ArrayList<>();
+        List<Condition[]> residuals = new ArrayList<>();
+        List<Signature> unpaired = new ArrayList<>();
+        for (Signature other : others) {
+            if (other.length() < 2 || other.mask()[0] != (byte) 0xFF || other.mask()[1] != (byte) 0xFF) {
+                unpaired.add(other);
+            }
+        }
+        types.add(null);
+        residuals.add(conditions(unpaired));
+
+        List<List<int[]>> entries = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        Set<Long> seen = new HashSet<>();
+        for (Signature signature : indexed) {
+            int length = signature.length();
+            byte[] prefix = signature.pattern();
+            int key = pack(prefix, length) >>> (8 * (4 - length));
+            if (!seen.add((long) length << 32 | key & 0xFFFFFFFFL)) {
+                continue;
+            }
+            // лучшая сигнатура, целиком проверяемая по ключу, и длинные сигнатуры, которые могут ее превзойти
+            int priority = Integer.MIN_VALUE;
+            int weight = 0;
+            for (Signature candidate : signatures) {
+                if (candidate.length() <= length && compatible(candidate, prefix, candidate.length())
+                        && (candidate.priority() > priority
+                        || candidate.priority() == priority && candidate.weight() > weight)) {
+                    priority = candidate.priority();
+                    weight = candidate.weight();
+                }
+            }
+            List<Signature> rivals = new ArrayList<>();
+            for (Signature other : others) {
+                if (other.length() > length && compatible(other, prefix, length)
+                        && (other.priority() > priority || other.priority() == priority && other.weight() >= weight)) {
+                    rivals.add(other);
+                }
+            }
+            entries.get(4 - length).add(new int[]{key, types.size()});
+            types.add(trie.matchTree(prefix, length));
+            residuals.add(conditions(rivals));
+        }
+
+        SignatureIndex index = new SignatureIndex(types.toArray(new String[0]),
+                residuals.toArray(new Condition[0][]), entries);
+        for (Signature other : others) {
+            if (!unpaired.contains(other)) {
+                int pair = (other.pattern()[0] & 0xFF) << 8 | other.pattern()[1] & 0xFF;
+                index.deferred[pair >>> 6] |= 1L << pair;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Проверяет, совместима ли сигнатура с первыми байтами заголовка.
+     */
+    private static boolean compatible(Signature signature, byte[] prefix, int length) {
+        for (int i = 0; i < length; i++) {
+            int mask = signature.mask()[i] & 0xFF;
+            if ((prefix[i] & mask) != (signature.pattern()[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Condition[] conditions(List<Signature> signatures) {
+        return signatures.stream().map(Condition::of).toArray(Condition[]::new);
+    }
+
+    /**
+     * Ищет сигнатуру по заголовку.
+     *
+     * @param header байты заголовка
+     * @param length количество прочитанных байтов
+     * @return номер результата для {@link #type(int)} или {@link #DEFER}
+     */
+    int find(byte[] header, int length) {
+        length = Math.min(length, header.length);
+        if (length < 2) {
+            return DEFER;
+        }
+        int code = find(length >= 4 ? (int) INT.get(header, 0) : pack(header, length), length);
+        if (code != DEFER) {
+            for (Condition condition : residuals[code]) {
+                if (condition.matches(header, length)) {
+                    return DEFER;
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Ищет сигнатуру по заголовку, не изменяя позицию буфера.
+     *
+     * @param header буфер с байтами заголовка от позиции до границы
+     * @return номер результата для {@link #type(int)} или {@link #DEFER}
+     */
+    int find(ByteBuffer header) {
+        int base = header.position();
+        int limit = header.limit();
+        int length = limit - base;
+        if (length < 2) {
+            return DEFER;
+        }
+        int packed;
+        if (length >= 4) {
+            packed = header.getInt(base);
+            packed = header.order() == ByteOrder.BIG_ENDIAN ? packed : Integer.reverseBytes(packed);
+        } else {
+            packed = 0;
+            for (int i = 0; i < length; i++) {
+                packed |= (header.get(base + i) & 0xFF) << (24 - 8 * i);
+            }
+        }
+        int code = find(packed, length);
+        if (code != DEFER) {
+            for (Condition condition : residuals[code]) {
+                if (condition.matches(header, base, limit)) {
+                    return DEFER;
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Ищет первые байты заголовка в таблицах.
+     *
+     * @param packed до четырех первых байтов, первый байт в старших разрядах
+     * @param length количество байтов заголовка, не меньше двух
+     */
+    private int find(int packed, int length) {
+        int code;
+        if (length >= 4 && (code = four.find(packed)) != 0) {
+            return code;
+        }
+        if (length >= 3 && (code = three.find(packed >>> 8)) != 0) {
+            return code;
+        }
+        int pair = packed >>> 16;
+        if ((code = two.find(pair)) != 0) {
+            return code;
+        }
+        return (deferred[pair >>> 6] & 1L << pair) != 0 ? DEFER : NONE;
+    }
+
+    /**
+     * Возвращает расширение по номеру результата, найденному {@link #find(byte[], int)}.
+     *
+     * @param code номер результата
+     * @return расширение или {@code null}, если ни одна сигнатура не подходит
+     */
+    String type(int code) {
+        return types[code];
+    }
+
+    /**
+     * Складывает первые байты в число, первый байт в старших разрядах.
+     */
+    private static int pack(byte[] bytes, int length) {
+        int packed = 0;
+        for (int i = 0; i < length; i++) {
+            packed |= (bytes[i] & 0xFF) << (24 - 8 * i);
+        }
+        return packed;
+    }
+}
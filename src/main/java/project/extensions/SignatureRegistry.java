@@ -0,0 +1,98 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый набор сигнатур, готовый к поиску.
+ *
+ * <p>Содержит загруженную базу, построенное по ней дерево {@link SignatureTrie}
+ * и карту простых сигнатур для прежнего строкового поиска. После создания
+ * объект не изменяется, поэтому его можно без блокировок использовать из любого
+ * количества потоков. При загрузке новой базы создается новый набор, который
+ * заменяет прежний одной записью ссылки; задачи, уже получившие прежний набор,
+ * продолжают работать с ним.
+ *
+ */
+final class SignatureRegistry {
+
+    /**
+     * Пустой набор, используемый до загрузки базы.
+     */
+    static final SignatureRegistry EMPTY = new SignatureRegistry(null, SignatureTrie.compile(List.of()), Map.of());
+
+    private final SignatureDatabase database;
+    private final SignatureTrie trie;
+    private final Map<String, List<String>> legacy;
+
+    private SignatureRegistry(SignatureDatabase database, SignatureTrie trie, Map<String, List<String>> legacy) {
+        this.database = database;
+        this.trie = trie;
+        this.legacy = legacy;
+    }
+
+    /**
+     * Строит набор сигнатур по базе.
+     *
+     * @param database загруженная база
+     * @return набор сигнатур
+     */
+    static SignatureRegistry of(SignatureDatabase database) {
+        Map<String, List<String>> legacy = new LinkedHashMap<>();
+        for (Signature signature : database.signatures()) {
+            if (signature.isExact()) {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : signature.pattern()) {
+                    hex.append(String.format("%02X ", b));
+                }
+                legacy.computeIfAbsent(signature.extension(), key -> new ArrayList<>()).add(hex.toString().strip());
+            }
+        }
+        legacy.replaceAll((extension, list) -> List.copyOf(list));
+        return new SignatureRegistry(database, SignatureTrie.compile(database.signatures()),
+                Collections.unmodifiableMap(legacy));
+    }
+
+    /**
+     * Возвращает базу, по которой построен набор.
+     *
+     * @return база сигнатур или {@code null} для пустого набора
+     */
+    SignatureDatabase database() {
+        return database;
+    }
+
+    /**
+     * Возвращает дерево сигнатур.
+     *
+     * @return дерево сигнатур
+     */
+    SignatureTrie trie() {
+        return trie;
+    }
+
+    /**
+     * Возвращает карту простых сигнатур "расширение - сигнатуры вида 89 50 4E 47".
+     *
+     * @return неизменяемая карта
+     */
+    Map<String, List<String>> legacy() {
+        return legacy;
+    }
+
+    /**
+     * Возвращает отпечаток базы сигнатур.
+     *
+     * @return 64-битный отпечаток или 0 для пустого набора
+     */
+    long fingerprint() {
+        return database == null ? 0 : database.fingerprint();
+    }
+}
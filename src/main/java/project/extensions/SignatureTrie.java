@@ -0,0 +1,298 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Префиксное дерево (trie) сигнатур файлов.
+ *
+ * <p>Дерево строится один раз из списка сигнатур и хранится в примитивных
+ * массивах: переход из узла {@code n} по байту {@code b} находится в ячейке
+ * {@code n * 256 + b}. Байты с нулевой маской (промежутки перед смещением
+ * сигнатуры и между ее условиями) хранятся как отдельный переход "любой байт",
+ * а байты с частичной маской раскрываются во все подходящие значения. Поиск идет
+ * по исходным байтам заголовка и не создает объектов; при нескольких совпадениях
+ * выбирается сигнатура с наибольшим приоритетом, а при равном приоритете -
+ * самая точная (самая длинная), поэтому сигнатуры разной длины (двухбайтовая
+ * {@code bmp}, трехбайтовая {@code mp3}) обрабатываются корректно. Время поиска
+ * зависит от длины заголовка, а не от количества сигнатур; заголовки, для
+ * которых достаточно первых четырех байтов, находятся еще быстрее - по индексу
+ * {@link SignatureIndex} без обхода дерева. После построения
+ * дерево не изменяется и может использоваться из нескольких потоков одновременно.
+ *
+ */
+final class SignatureTrie {
+
+    /**
+     * Количество возможных значений байта.
+     */
+    private static final int ALPHABET = 256;
+
+    /**
+     * Таблица переходов; 0 означает отсутствие перехода (корень недостижим).
+     */
+    private int[] next;
+
+    /**
+     * Переход по любому байту для каждого узла; 0 означает отсутствие перехода.
+     */
+    private int[] any;
+
+    /**
+     * Расширение, соответствующее узлу, или {@code null}.
+     */
+    private String[] terminal;
+
+    /**
+     * Приоритет и точность сигнатуры, оканчивающейся в узле.
+     */
+    private int[] priority;
+    private int[] weight;
+
+    /**
+     * Количество узлов.
+     */
+    private int size;
+
+    /**
+     * Длина самой длинной сигнатуры.
+     */
+    private int maxLength;
+
+    /**
+     * Индекс коротких сигнатур, проверяемый до обхода дерева.
+     */
+    private SignatureIndex index;
+
+    /**
+     * Строит дерево из карты простых сигнатур, начинающихся с начала файла.
+     *
+     * @param signatures карта "расширение - список сигнатур в шестнадцатеричном виде"
+     * @return построенное дерево
+     * @throws IllegalArgumentException если сигнатура записана неверно
+     */
+    static SignatureTrie compile(Map<String, ? extends List<String>> signatures) {
+        List<Signature> list = new ArrayList<>();
+        for (Map.Entry<String, ? extends List<String>> entry : signatures.entrySet()) {
+            for (String signature : entry.getValue()) {
+                list.add(Signature.exact(entry.getKey(), parseHex(signature)));
+            }
+        }
+        return compile(list);
+    }
+
+    /**
+     * Строит дерево из списка сигнатур.
+     *
+     * @param signatures сигнатуры
+     * @return построенное дерево
+     * @throws IllegalArgumentException если сигнатура пустая
+     */
+    static SignatureTrie compile(List<Signature> signatures) {
+        SignatureTrie trie = new SignatureTrie();
+        for (Signature signature : signatures) {
+            if (signature.length() == 0) {
+                throw new IllegalArgumentException("empty signature: " + signature.extension());
+            }
+            trie.add(signature, 0, 0, signature.weight());
+            trie.maxLength = Math.max(trie.maxLength, signature.length());
+        }
+        trie.index = SignatureIndex.build(signatures, trie);
+        return trie;
+    }
+
+    private SignatureTrie() {
+        next = new int[ALPHABET * 16];
+        any = new int[16];
+        terminal = new String[16];
+        priority = new int[16];
+        weight = new int[16];
+        size = 1;
+    }
+
+    /**
+     * Добавляет остаток сигнатуры начиная с указанного узла.
+     *
+     * @param signature сигнатура
+     * @param node текущий узел
+     * @param depth номер байта шаблона
+     * @param signatureWeight точность сигнатуры
+     */
+    private void add(Signature signature, int node, int depth, int signatureWeight) {
+        if (depth == signature.length()) {
+            if (terminal[node] == null || signature.priority() > priority[node]
+                    || signature.priority() == priority[node] && signatureWeight > weight[node]) {
+                terminal[node] = signature.extension();
+                priority[node] = signature.priority();
+                weight[node] = signatureWeight;
+            }
+            return;
+        }
+
+        int mask = signature.mask()[depth] & 0xFF;
+        int value = signature.pattern()[depth] & mask;
+        if (mask == 0) {
+            if (any[node] == 0) {
+                int child = newNode();
+                any[node] = child;
+            }
+            add(signature, any[node], depth + 1, signatureWeight);
+            return;
+        }
+        for (int b = 0; b < ALPHABET; b++) {
+            if ((b & mask) == value) {
+                int index = node * ALPHABET + b;
+                if (next[index] == 0) {
+                    int child = newNode();
+                    next[index] = child;
+                }
+                add(signature, next[index], depth + 1, signatureWeight);
+            }
+        }
+    }
+
+    /**
+     * Создает новый узел, при необходимости увеличивая массивы.
+     *
+     * @return номер узла
+     */
+    private int newNode() {
+        if (size == terminal.length) {
+            int capacity = size * 2;
+            terminal = Arrays.copyOf(terminal, capacity);
+            any = Arrays.copyOf(any, capacity);
+            priority = Arrays.copyOf(priority, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+            next = Arrays.copyOf(next, capacity * ALPHABET);
+        }
+        return size++;
+    }
+
+    /**
+     * Ищет лучшую сигнатуру, которой соответствует заголовок.
+     *
+     * @param header байты заголовка файла
+     * @param length количество прочитанных байтов
+     * @return расширение или {@code null}, если совпадений нет
+     */
+    String match(byte[] header, int length) {
+        int code = index.find(header, length);
+        if (code != SignatureIndex.DEFER) {
+            return index.type(code);
+        }
+        return matchTree(header, length);
+    }
+
+    /**
+     * Ищет лучшую сигнатуру обходом дерева, без индекса коротких сигнатур.
+     *
+     * @param header байты заголовка файла
+     * @param length количество прочитанных байтов
+     * @return расширение или {@code null}, если совпадений нет
+     */
+    String matchTree(byte[] header, int length) {
+        return terminal[search(header, Math.min(length, header.length), 0, 0)];
+    }
+
+    /**
+     * Ищет лучшую сигнатуру, которой соответствует заголовок, не изменяя
+     * позицию буфера.
+     *
+     * @param header буфер с байтами заголовка от позиции до границы
+     * @return расширение или {@code null}, если совпадений нет
+     */
+    String match(ByteBuffer header) {
+        int code = index.find(header);
+        if (code != SignatureIndex.DEFER) {
+            return index.type(code);
+        }
+        return terminal[search(header, header.position(), header.limit(), 0, 0)];
+    }
+
+    private int search(byte[] header, int limit, int node, int depth) {
+        int best = terminal[node] != null ? node : 0;
+        if (depth < limit) {
+            int child = next[node * ALPHABET + (header[depth] & 0xFF)];
+            if (child != 0) {
+                best = better(best, search(header, limit, child, depth + 1));
+            }
+            child = any[node];
+            if (child != 0) {
+                best = better(best, search(header, limit, child, depth + 1));
+            }
+        }
+        return best;
+    }
+
+    private int search(ByteBuffer header, int base, int limit, int node, int depth) {
+        int best = terminal[node] != null ? node : 0;
+        if (base + depth < limit) {
+            int child = next[node * ALPHABET + (header.get(base + depth) & 0xFF)];
+            if (child != 0) {
+                best = better(best, search(header, base, limit, child, depth + 1));
+            }
+            child = any[node];
+            if (child != 0) {
+                best = better(best, search(header, base, limit, child, depth + 1));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Выбирает из двух конечных узлов узел с большим приоритетом, а при равном
+     * приоритете - с большей точностью.
+     *
+     * @param a первый узел или 0
+     * @param b второй узел или 0
+     * @return лучший узел или 0
+     */
+    private int better(int a, int b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        if (priority[b] != priority[a]) {
+            return priority[b] > priority[a] ? b : a;
+        }
+        return weight[b] > weight[a] ? b : a;
+    }
+
+    /**
+     * Возвращает длину самой длинной сигнатуры, то есть количество байтов
+     * заголовка, достаточное для поиска.
+     *
+     * @return длина в байтах
+     */
+    int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Преобразует сигнатуру вида "89 50 4E 47" в массив байтов.
+     *
+     * @param signature сигнатура в шестнадцатеричном виде
+     * @return байты сигнатуры
+     * @throws IllegalArgumentException если сигнатура записана неверно
+     */
+    static byte[] parseHex(String signature) {
+        String[] parts = signature.strip().split("\\s+");
+        byte[] bytes = new byte[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].length() != 2) {
+                throw new IllegalArgumentException("invalid signature: " + signature);
+            }
+            bytes[i] = (byte) Integer.parseInt(parts[i], 16);
+        }
+        return bytes;
+    }
+}
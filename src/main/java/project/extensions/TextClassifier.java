@@ -0,0 +1,331 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Определение типа текстовых файлов, у которых нет сигнатуры.
+ *
+ * <p>Классификатор вызывается только тогда, когда ни одна сигнатура не подошла,
+ * и просматривает не больше {@link #WINDOW} первых байтов файла (системное
+ * свойство {@code expander.text.window}, по умолчанию 4 КиБ). Сначала за один
+ * проход подсчитываются управляющие и нулевые байты; по этим
+ * счетчикам файл отбрасывается как двоичный или признается текстом в UTF-16.
+ * Затем по первому значимому символу проверяется структура: строка {@code #!}
+ * (сценарий), разметка (xml, html, svg), json с корректной вложенностью скобок
+ * и csv/tsv с одинаковым количеством разделителей в строках. Остальной текст
+ * получает расширение {@code txt}. Метод не создает объектов.
+ *
+ */
+final class TextClassifier {
+
+    /**
+     * Количество просматриваемых байтов.
+     */
+    static final int WINDOW = Math.max(256, Math.min(Integer.getInteger("expander.text.window", 4096),
+            HeaderReader.MAX_HEADER));
+
+    /**
+     * Наибольшая доля управляющих символов в тексте (в процентах).
+     */
+    private static final int MAX_CONTROL_PERCENT = 1;
+
+    /**
+     * Наименьшее количество строк для определения csv.
+     */
+    private static final int MIN_CSV_LINES = 2;
+
+    private TextClassifier() {
+    }
+
+    /**
+     * Определяет тип текстового файла по его началу, не изменяя позицию буфера.
+     *
+     * @param window буфер с началом файла от позиции до границы
+     * @return расширение или {@code null}, если содержимое не похоже на текст
+     */
+    static String classify(ByteBuffer window) {
+        int start = window.position();
+        int end = Math.min(window.limit(), start + WINDOW);
+        if (start == end) {
+            return null;
+        }
+        // файл короче окна прочитан целиком, и его последняя строка полная
+        boolean complete = end - start < WINDOW;
+
+        int bom = end - start >= 2 ? (window.get(start) & 0xFF) << 8 | window.get(start + 1) & 0xFF : 0;
+        if (bom == 0xFFFE || bom == 0xFEFF) {
+            return "txt";
+        }
+        if (bom == 0xEFBB && end - start >= 3 && (window.get(start + 2) & 0xFF) == 0xBF) {
+            start += 3;
+        }
+
+        int control = 0;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = start; i < end; i++) {
+            int b = window.get(i) & 0xFF;
+            if (b == 0) {
+                if (((i - start) & 1) == 0) {
+                    evenZeros++;
+                } else {
+                    oddZeros++;
+                }
+            } else if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B || b == 0x7F) {
+                control++;
+            }
+        }
+
+        int length = end - start;
+        if (evenZeros + oddZeros > 0) {
+            // UTF-16 без метки порядка байтов: нули стоят через один байт
+            int half = length / 2;
+            boolean utf16 = half > 0 && (oddZeros * 10 >= half * 9 && evenZeros * 10 < half
+                    || evenZeros * 10 >= half * 9 && oddZeros * 10 < half);
+            return utf16 ? "txt" : null;
+        }
+        if (control * 100 > length * MAX_CONTROL_PERCENT) {
+            return null;
+        }
+
+        int first = skipWhitespace(window, start, end);
+        if (first == end) {
+            return "txt";
+        }
+        if (end - start >= 2 && window.get(start) == '#' && window.get(start + 1) == '!') {
+            return script(window, start + 2, end);
+        }
+        int c = window.get(first) & 0xFF;
+        if (c == '<') {
+            return markup(window, first, end);
+        }
+        if ((c == '{' || c == '[') && isJson(window, first, end)) {
+            return "json";
+        }
+        String table = table(window, start, end, complete);
+        return table != null ? table : "txt";
+    }
+
+    /**
+     * Определяет язык сценария по интерпретатору в строке {@code #!}.
+     *
+     * @return расширение сценария
+     */
+    private static String script(ByteBuffer window, int from, int end) {
+        int lineEnd = from;
+        while (lineEnd < end && window.get(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        if (contains(window, from, lineEnd, "python")) {
+            return "py";
+        }
+        if (contains(window, from, lineEnd, "perl")) {
+            return "pl";
+        }
+        if (contains(window, from, lineEnd, "ruby")) {
+            return "rb";
+        }
+        if (contains(window, from, lineEnd, "node")) {
+            return "js";
+        }
+        if (contains(window, from, lineEnd, "php")) {
+            return "php";
+        }
+        return "sh";
+    }
+
+    /**
+     * Различает виды разметки.
+     *
+     * @return расширение или {@code null}, если это не разметка
+     */
+    private static String markup(ByteBuffer window, int first, int end) {
+        if (startsWithIgnoreCase(window, first, end, "<!doctype html")
+                || startsWithIgnoreCase(window, first, end, "<html")
+                || contains(window, first, end, "<head>") || contains(window, first, end, "<body")) {
+            return "html";
+        }
+        if (contains(window, first, end, "<svg")) {
+            return "svg";
+        }
+        if (startsWithIgnoreCase(window, first, end, "<?xml")) {
+            return "xml";
+        }
+        // обычный элемент: <имя ...> и закрывающий тег или самозакрывающийся элемент
+        int next = first + 1 < end ? window.get(first + 1) & 0xFF : 0;
+        if ((Character.isLetter(next) || next == '!') && (contains(window, first, end, "</")
+                || contains(window, first, end, "/>"))) {
+            return "xml";
+        }
+        return null;
+    }
+
+    /**
+     * Проверяет, является ли текст документом json: скобки вложены правильно,
+     * строки закрыты, а между скобками нет посторонних символов. Окно может
+     * обрываться внутри документа.
+     *
+     * @return {@code true} для json
+     */
+    private static boolean isJson(ByteBuffer window, int first, int end) {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int values = 0;
+        for (int i = first; i < end; i++) {
+            int c = window.get(i) & 0xFF;
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    values++;
+                } else if (c == '\n') {
+                    return false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    if (--depth < 0) {
+                        return false;
+                    }
+                    if (depth == 0) {
+                        // после документа могут быть только пробелы или следующий документ (json lines)
+                        int rest = skipWhitespace(window, i + 1, end);
+                        return rest == end || window.get(rest) == '{' || window.get(rest) == '[';
+                    }
+                    break;
+                case ',':
+                case ':':
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                case '-':
+                case '+':
+                case '.':
+                    break;
+                default:
+                    if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return values > 0 || depth > 0 && end - first > 1;
+    }
+
+    /**
+     * Проверяет, является ли текст таблицей: во всех полных строках окна одно
+     * и то же ненулевое количество разделителей (запятая, точка с запятой или
+     * табуляция) вне кавычек.
+     *
+     * @return {@code csv}, {@code tsv} или {@code null}
+     */
+    private static String table(ByteBuffer window, int start, int end, boolean complete) {
+        int lines = 0;
+        int commas = -1;
+        int semicolons = -1;
+        int tabs = -1;
+        boolean commaTable = true;
+        boolean semicolonTable = true;
+        boolean tabTable = true;
+
+        int lineLength = 0;
+        int lineCommas = 0;
+        int lineSemicolons = 0;
+        int lineTabs = 0;
+        boolean quoted = false;
+        int last = complete ? end : end - 1;
+        for (int i = start; i <= last; i++) {
+            int c = i < end ? window.get(i) & 0xFF : '\n';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == ',') {
+                lineCommas++;
+            } else if (c == ';') {
+                lineSemicolons++;
+            } else if (c == '\t') {
+                lineTabs++;
+            } else if (c == '\n') {
+                if (lineLength > 0) {
+                    lines++;
+                    commaTable &= commas < 0 || commas == lineCommas;
+                    semicolonTable &= semicolons < 0 || semicolons == lineSemicolons;
+                    tabTable &= tabs < 0 || tabs == lineTabs;
+                    commas = lineCommas;
+                    semicolons = lineSemicolons;
+                    tabs = lineTabs;
+                }
+                lineLength = 0;
+                lineCommas = 0;
+                lineSemicolons = 0;
+                lineTabs = 0;
+                continue;
+            }
+            if (c != '\r') {
+                lineLength++;
+            }
+        }
+
+        if (lines < MIN_CSV_LINES) {
+            return null;
+        }
+        if (tabTable && tabs > 0) {
+            return "tsv";
+        }
+        if (commaTable && commas > 0 || semicolonTable && semicolons > 0) {
+            return "csv";
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(ByteBuffer window, int from, int end) {
+        while (from < end) {
+            int c = window.get(from);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '\f') {
+                break;
+            }
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean startsWithIgnoreCase(ByteBuffer window, int from, int end, String text) {
+        if (end - from < text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase((char) (window.get(from + i) & 0xFF)) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(ByteBuffer window, int from, int end, String text) {
+        for (int i = from; i <= end - text.length(); i++) {
+            if (startsWithIgnoreCase(window, i, end, text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Некриптографическая 64-битная хеш-функция xxHash64.
+ *
+ * <p>Данные обрабатываются блоками по 32 байта в четырех независимых
+ * накопителях, поэтому скорость хеширования заметно выше скорости чтения с
+ * диска и хеш можно считать прямо при чтении файла. Данные можно передавать
+ * частями произвольной длины: результат не зависит от разбиения. Объект не
+ * является потокобезопасным.
+ *
+ */
+final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Чтение чисел из массива байтов в порядке от младшего байта к старшему.
+     */
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long total;
+
+    /**
+     * Байты, не составившие полного блока.
+     */
+    private final byte[] tail = new byte[32];
+    private int tailLength;
+
+    /**
+     * Создает хеш с нулевым начальным значением.
+     */
+    XxHash64() {
+        this(0);
+    }
+
+    /**
+     * Создает хеш с указанным начальным значением.
+     *
+     * @param seed начальное значение
+     */
+    XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Вычисляет хеш массива байтов.
+     *
+     * @param data данные
+     * @return хеш
+     */
+    static long hash(byte[] data) {
+        XxHash64 hash = new XxHash64();
+        hash.update(data, 0, data.length);
+        return hash.digest();
+    }
+
+    /**
+     * Возвращает хеш в исходное состояние.
+     */
+    void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        total = 0;
+        tailLength = 0;
+    }
+
+    /**
+     * Добавляет часть данных.
+     *
+     * @param data массив
+     * @param offset начало части
+     * @param length длина части
+     */
+    void update(byte[] data, int offset, int length) {
+        total += length;
+        int end = offset + length;
+        if (tailLength > 0) {
+            int count = Math.min(length, 32 - tailLength);
+            System.arraycopy(data, offset, tail, tailLength, count);
+            tailLength += count;
+            offset += count;
+            if (tailLength < 32) {
+                return;
+            }
+            block(tail, 0);
+            tailLength = 0;
+        }
+        for (; offset + 32 <= end; offset += 32) {
+            block(data, offset);
+        }
+        System.arraycopy(data, offset, tail, 0, end - offset);
+        tailLength = end - offset;
+    }
+
+    /**
+     * Возвращает хеш всех добавленных данных. Данные можно добавлять и после вызова.
+     *
+     * @return хеш
+     */
+    long digest() {
+        long hash;
+        if (total >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += total;
+
+        int position = 0;
+        for (; position + 8 <= tailLength; position += 8) {
+            hash ^= round(0, (long) LONG.get(tail, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (position + 4 <= tailLength) {
+            hash ^= ((int) INT.get(tail, position) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        for (; position < tailLength; position++) {
+            hash ^= (tail[position] & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void block(byte[] data, int offset) {
+        v1 = round(v1, (long) LONG.get(data, offset));
+        v2 = round(v2, (long) LONG.get(data, offset + 8));
+        v3 = round(v3, (long) LONG.get(data, offset + 16));
+        v4 = round(v4, (long) LONG.get(data, offset + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long merge(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * @author Daniil Ersov IKB-32
+ */
+
+package project.extensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Класс, определяющий подтип ZIP-архива по его центральному каталогу.
+ *
+ * <p>Сначала проверяется первый локальный заголовок: документы ODF и EPUB
+ * начинаются с несжатой записи {@code mimetype}, и их тип определяется одним
+ * чтением начала файла. Иначе вместо последовательной распаковки всех записей
+ * читается только запись конца центрального каталога (EOCD) в конце файла и
+ * сам центральный каталог, поэтому время определения зависит от количества
+ * записей, а не от размера архива. Имена записей проверяются правилами
+ * {@link ContainerInspector}, и просмотр заканчивается на первом решающем
+ * правиле. Если по именам тип не определяется, читается только запись
+ * {@code mimetype} или {@code [Content_Types].xml}.
+ *
+ */
+final class ZipCentralDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * Размер каталога, начиная с которого он отображается в память, а не читается в буфер.
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    /**
+     * Наибольший размер {@code [Content_Types].xml}, который будет прочитан.
+     */
+    private static final int MAX_CONTENT_TYPES = 1 << 20;
+
+    private ZipCentralDirectory() {
+    }
+
+    /**
+     * Определяет подтип ZIP-архива.
+     *
+     * @param path путь к архиву
+     * @return подтип архива (например "docx", "odt", "epub", "jar", "apk",
+     * "xps") или "zip"; {@code null}, если центральный каталог не найден или
+     * поврежден (например, у обрезанного файла)
+     * @throws IOException если не удалось прочитать файл
+     */
+    static String detect(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < EOCD_SIZE) {
+                return null;
+            }
+
+            String first = detectByFirstEntry(channel);
+            if (first != null) {
+                return first;
+            }
+
+            int tailLength = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT);
+            long tailStart = size - tailLength;
+            ByteBuffer tail = HeaderReader.read(channel, tailStart, tailLength).duplicate()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            int eocd = findEocd(tail);
+            if (eocd < 0) {
+                return null;
+            }
+
+            long directorySize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+            long directoryOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+            long eocdPosition = tailStart + eocd;
+
+            if (directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+                long[] zip64 = readZip64(channel, eocdPosition);
+                if (zip64 == null) {
+                    return null;
+                }
+                directorySize = zip64[0];
+                directoryOffset = zip64[1];
+                eocdPosition = zip64[2];
+            }
+
+            if (directorySize > eocdPosition || directorySize > Integer.MAX_VALUE) {
+                return null;
+            }
+            // если перед архивом есть посторонние данные (например, у самораспаковывающегося
+            // архива), все смещения внутри архива сдвинуты на их длину
+            long directoryStart = eocdPosition - directorySize;
+            long shift = directoryStart - directoryOffset;
+
+            ByteBuffer directory = directorySize > MAP_THRESHOLD
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, directoryStart, directorySize)
+                    : read(channel, directoryStart, (int) directorySize);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+
+            return scan(channel, directory, shift);
+        }
+    }
+
+    /**
+     * Просматривает записи центрального каталога.
+     *
+     * @param channel канал архива
+     * @param directory центральный каталог
+     * @param shift смещение архива внутри файла
+     * @return подтип архива или {@code null}, если каталог поврежден
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static String scan(FileChannel channel, ByteBuffer directory, long shift) throws IOException {
+        ContainerInspector inspector = new ContainerInspector();
+        int position = 0;
+        int limit = directory.limit();
+
+        while (position + CENTRAL_HEADER_SIZE <= limit) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                return null;
+            }
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            int name = position + CENTRAL_HEADER_SIZE;
+            if (name + nameLength > limit) {
+                return null;
+            }
+
+            String type = inspector.entry(directory, name, nameLength, position);
+            if (type != null) {
+                return type;
+            }
+            position = name + nameLength + extraLength + commentLength;
+        }
+
+        if (inspector.mimetype() >= 0) {
+            byte[] content = readEntry(channel, directory, inspector.mimetype(), shift,
+                    ContainerInspector.MAX_MIMETYPE);
+            String type = content == null ? null
+                    : ContainerInspector.byMediaType(new String(content, StandardCharsets.US_ASCII));
+            if (type != null) {
+                return type;
+            }
+        }
+        if (inspector.contentTypes() >= 0) {
+            byte[] content = readEntry(channel, directory, inspector.contentTypes(), shift, MAX_CONTENT_TYPES);
+            String type = content == null ? null
+                    : ContainerInspector.byContentTypes(new String(content, StandardCharsets.UTF_8));
+            if (type != null) {
+                return type;
+            }
+        }
+        return inspector.hint() != null ? inspector.hint() : "zip";
+    }
+
+    /**
+     * Определяет тип по первой записи архива: ODF и EPUB требуют, чтобы первой
+     * шла несжатая запись {@code mimetype} с типом документа.
+     *
+     * @param channel канал архива
+     * @return формат или {@code null}, если первая запись другая
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static String detectByFirstEntry(FileChannel channel) throws IOException {
+        int nameLength = ContainerInspector.MIMETYPE.length;
+        // буфер потока общий с другими чтениями, поэтому порядок байтов меняется у копии
+        ByteBuffer header = HeaderReader.read(channel, 0, LOCAL_HEADER_SIZE + nameLength + ContainerInspector.MAX_MIMETYPE)
+                .duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = header.position();
+        if (header.remaining() < LOCAL_HEADER_SIZE + nameLength
+                || header.getInt(start) != LOCAL_HEADER_SIGNATURE
+                || header.getShort(start + 8) != 0
+                || header.getShort(start + 26) != nameLength
+                || header.getShort(start + 28) != 0) {
+            return null;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (header.get(start + LOCAL_HEADER_SIZE + i) != ContainerInspector.MIMETYPE[i]) {
+                return null;
+            }
+        }
+        int size = header.getInt(start + 18);
+        int content = start + LOCAL_HEADER_SIZE + nameLength;
+        if (size <= 0 || size > ContainerInspector.MAX_MIMETYPE || content + size > header.limit()) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        header.get(content, bytes);
+        return ContainerInspector.byMediaType(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Читает и при необходимости распаковывает содержимое записи архива.
+     *
+     * <p>Метод сжатия и размеры берутся из центрального каталога, так как в
+     * локальном заголовке они могут быть нулевыми (при использовании дескриптора данных).
+     *
+     * @param channel канал архива
+     * @param directory центральный каталог
+     * @param entry позиция записи в каталоге
+     * @param shift смещение архива внутри файла
+     * @param maxSize наибольший размер записи
+     * @return содержимое записи или {@code null}, если запись слишком большая,
+     * повреждена или сжата неподдерживаемым методом
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static byte[] readEntry(FileChannel channel, ByteBuffer directory, int entry, long shift, int maxSize)
+            throws IOException {
+        int method = Short.toUnsignedInt(directory.getShort(entry + 10));
+        long compressedSize = Integer.toUnsignedLong(directory.getInt(entry + 20));
+        long size = Integer.toUnsignedLong(directory.getInt(entry + 24));
+        long offset = Integer.toUnsignedLong(directory.getInt(entry + 42)) + shift;
+        if (compressedSize > maxSize || size > maxSize || offset < 0) {
+            return null;
+        }
+
+        ByteBuffer header = read(channel, offset, LOCAL_HEADER_SIZE);
+        if (header.limit() < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            return null;
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+
+        ByteBuffer data = read(channel, offset + LOCAL_HEADER_SIZE + nameLength + extraLength, (int) compressedSize);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+
+        if (method == 0) {
+            return bytes;
+        } else if (method == 8) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(bytes);
+                byte[] output = new byte[(int) size];
+                int length = inflater.inflate(output);
+                return length == output.length ? output : Arrays.copyOf(output, length);
+            } catch (DataFormatException e) {
+                return null;
+            } finally {
+                inflater.end();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ищет запись конца центрального каталога, начиная с конца файла.
+     *
+     * @param tail последние байты файла
+     * @return позиция записи в буфере или -1
+     */
+    private static int findEocd(ByteBuffer tail) {
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE
+                    && i + EOCD_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) <= tail.limit()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Читает размер и смещение центрального каталога из записей ZIP64.
+     *
+     * @param channel канал архива
+     * @param eocdPosition позиция обычной записи конца каталога
+     * @return размер и смещение каталога и позиция записи ZIP64 или {@code null},
+     * если записи ZIP64 не найдены
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static long[] readZip64(FileChannel channel, long eocdPosition) throws IOException {
+        if (eocdPosition < ZIP64_LOCATOR_SIZE) {
+            return null;
+        }
+        ByteBuffer locator = read(channel, eocdPosition - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+        if (locator.limit() < ZIP64_LOCATOR_SIZE || locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+            return null;
+        }
+        long recordPosition = locator.getLong(8);
+        if (recordPosition < 0 || recordPosition > eocdPosition - ZIP64_LOCATOR_SIZE - ZIP64_EOCD_SIZE) {
+            return null;
+        }
+        ByteBuffer record = read(channel, recordPosition, ZIP64_EOCD_SIZE);
+        if (record.limit() < ZIP64_EOCD_SIZE || record.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+            return null;
+        }
+        return new long[]{record.getLong(40), record.getLong(48), recordPosition};
+    }
+
+    /**
+     * Читает участок файла в буфер с порядком байтов little-endian.
+     *
+     * @param channel канал файла
+     * @param position позиция начала участка
+     * @param length длина участка
+     * @return буфер, ограниченный фактически прочитанными байтами
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+}
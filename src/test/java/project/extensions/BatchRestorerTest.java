@@ -0,0 +1,68 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRestorerTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+    }
+
+    @Test
+    void testRestoreWalksTheWholeTree() throws IOException {
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Files.write(nested.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(nested.resolve("garbage"), new byte[]{0x00, 0x01, 0x02, 0x03});
+
+        BatchReport report = new BatchRestorer(4).restore(root);
+
+        assertEquals(3, report.files());
+        assertEquals(2, report.renamed());
+        assertEquals(1, report.unknown());
+        assertEquals(0, report.failed());
+        assertTrue(Files.exists(root.resolve("image.png")));
+        assertTrue(Files.exists(nested.resolve("document.pdf")));
+        assertTrue(Files.exists(nested.resolve("garbage")));
+    }
+
+    @Test
+    void testRestoreReplacesOnlyTheLastExtension() throws IOException {
+        Files.write(root.resolve("report.2023.bin"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(root.resolve(".hidden"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Files.write(root.resolve("image.png"), new byte[]{1});
+
+        BatchReport report = new BatchRestorer(2).restore(root);
+
+        assertEquals(2, report.renamed());
+        assertEquals(1, report.failed());
+        assertTrue(Files.exists(root.resolve("report.2023.pdf")));
+        assertTrue(Files.exists(root.resolve(".hidden.pdf")));
+        assertTrue(Files.exists(root.resolve("image")));
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(root.resolve("image.png")));
+    }
+
+    @Test
+    void testRestoreRejectsMissingDirectory() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchRestorer(2).restore(root.resolve("missing")));
+    }
+
+    @Test
+    void testThreadsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchRestorer(0));
+    }
+}
@@ -0,0 +1,96 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchedOutputTest {
+
+    @Test
+    void testLinesAreCoalesced() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<List<String>> written = new ArrayList<>();
+        BatchedOutput output = new BatchedOutput(scheduled::add, () -> false, written::add);
+
+        for (int i = 0; i < 1000; i++) {
+            output.accept("line " + i);
+        }
+        assertEquals(1, scheduled.size(), "only one update must be scheduled");
+
+        scheduled.remove(0).run();
+        assertEquals(1, written.size());
+        assertEquals(1000, written.get(0).size());
+        assertEquals("line 0", written.get(0).get(0));
+        assertEquals("line 999", written.get(0).get(999));
+
+        output.accept("next");
+        assertEquals(1, scheduled.size());
+        scheduled.remove(0).run();
+        assertEquals(List.of("next"), written.get(1));
+    }
+
+    @Test
+    void testProducerWaitsForSlowConsumer() throws Exception {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        BatchedOutput output = new BatchedOutput(task -> {
+            synchronized (scheduled) {
+                scheduled.add(task);
+            }
+        }, () -> false, written::addAll);
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            int lines = BatchedOutput.MAX_PENDING * 3;
+            Future<?> result = producer.submit(() -> {
+                for (int i = 0; i < lines; i++) {
+                    output.accept("x");
+                }
+            });
+
+            Thread.sleep(200);
+            assertFalse(result.isDone(), "the producer must wait while the queue is full");
+
+            while (!result.isDone()) {
+                Runnable task;
+                synchronized (scheduled) {
+                    task = scheduled.isEmpty() ? null : scheduled.remove(0);
+                }
+                if (task != null) {
+                    task.run();
+                }
+                Thread.sleep(1);
+            }
+            result.get(5, TimeUnit.SECONDS);
+            output.drain();
+            assertEquals(lines, written.size());
+        } finally {
+            producer.shutdownNow();
+        }
+    }
+
+    @Test
+    void testUiThreadWritesImmediately() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        boolean[] ui = {false};
+        BatchedOutput output = new BatchedOutput(scheduled::add, () -> ui[0], written::addAll);
+
+        // очередь заполнена до первого вывода: поток интерфейса не должен ждать
+        for (int i = 0; i < BatchedOutput.MAX_PENDING; i++) {
+            output.accept("x");
+        }
+        ui[0] = true;
+        output.accept("ui");
+
+        assertEquals(BatchedOutput.MAX_PENDING + 1, written.size());
+        assertEquals("ui", written.get(BatchedOutput.MAX_PENDING));
+    }
+}
@@ -0,0 +1,221 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarverTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+    }
+
+    private static byte[] png() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A});
+        out.writeBytes(new byte[]{0, 0, 0, 13, 'I', 'H', 'D', 'R'});
+        out.writeBytes(new byte[13]);
+        out.writeBytes(new byte[4]);
+        out.writeBytes(new byte[]{0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82});
+        return out.toByteArray();
+    }
+
+    private static byte[] jpeg() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16});
+        out.writeBytes("JFIF\0".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(new byte[9]);
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 8, 1, 1, 0, 0, 63, 0});
+        // сжатые данные с заполнением FF00 и маркером перезапуска
+        out.writeBytes(new byte[]{0x12, (byte) 0xFF, 0x00, 0x34, (byte) 0xFF, (byte) 0xD0, 0x56});
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        return out.toByteArray();
+    }
+
+    private static byte[] pdf() {
+        return "%PDF-1.4\n1 0 obj\n<<>>\nendobj\ntrailer\n<<>>\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] zip(String entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(entry));
+            zip.write("hello".getBytes(StandardCharsets.US_ASCII));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] garbage(int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 0x5A);
+        bytes[length / 2] = (byte) 0xFF;
+        return bytes;
+    }
+
+    private Path image(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return Files.write(root.resolve("image.bin"), out.toByteArray());
+    }
+
+    @Test
+    void testExtractsConcatenatedFiles() throws IOException {
+        byte[] png = png();
+        byte[] jpeg = jpeg();
+        byte[] pdf = pdf();
+        byte[] zip = zip("readme.txt");
+        Path image = image(garbage(100), png, garbage(37), jpeg, pdf, garbage(5), zip, garbage(64));
+        List<Carver.Extracted> found = new ArrayList<>();
+        Carver carver = new Carver();
+        carver.setListener(found::add);
+
+        Carver.Report report = carver.carve(image, root.resolve("out"));
+
+        assertEquals(4, report.extracted());
+        assertEquals(0, report.failed());
+        assertEquals(Files.size(image), report.bytes());
+        assertEquals(List.of("png", "jpg", "pdf", "zip"), found.stream().map(Carver.Extracted::type).toList());
+        assertEquals(100, found.get(0).offset());
+        assertEquals(100 + png.length + 37, found.get(1).offset());
+        assertArrayEquals(png, Files.readAllBytes(found.get(0).file()));
+        assertArrayEquals(jpeg, Files.readAllBytes(found.get(1).file()));
+        assertArrayEquals(pdf, Files.readAllBytes(found.get(2).file()));
+        assertArrayEquals(zip, Files.readAllBytes(found.get(3).file()));
+        assertEquals("000000000064.png", found.get(0).file().getFileName().toString());
+    }
+
+    @Test
+    void testNestedFilesAreNotExtractedSeparately() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry("picture.png");
+            entry.setMethod(ZipEntry.STORED);
+            byte[] png = png();
+            CRC32 crc = new CRC32();
+            crc.update(png);
+            entry.setSize(png.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(png);
+            zip.closeEntry();
+        }
+        Path image = image(garbage(10), bytes.toByteArray());
+        List<Carver.Extracted> found = new ArrayList<>();
+        Carver carver = new Carver();
+        carver.setListener(found::add);
+
+        carver.carve(image, root.resolve("out"));
+
+        assertEquals(1, found.size());
+        assertEquals("zip", found.get(0).type());
+        assertEquals(bytes.size(), found.get(0).length());
+    }
+
+    @Test
+    void testTruncatedFileIsSkipped() throws IOException {
+        byte[] png = png();
+        Path image = image(Arrays.copyOf(png, png.length - 12), garbage(20), pdf());
+        List<Carver.Extracted> found = new ArrayList<>();
+        Carver carver = new Carver();
+        carver.setListener(found::add);
+
+        Carver.Report report = carver.carve(image, root.resolve("out"));
+
+        assertEquals(1, report.extracted());
+        assertEquals("pdf", found.get(0).type());
+        assertTrue(report.candidates() >= 2);
+    }
+
+    @Test
+    void testDryRunWritesNothing() throws IOException {
+        Path image = image(garbage(3), pdf(), png());
+        Path output = root.resolve("out");
+        List<Carver.Extracted> found = new ArrayList<>();
+        Carver carver = new Carver();
+        carver.setDryRun(true);
+        carver.setListener(found::add);
+
+        Carver.Report report = carver.carve(image, output);
+
+        assertEquals(2, report.extracted());
+        assertEquals(3, found.get(0).offset());
+        assertNull(found.get(0).file());
+        assertFalse(Files.exists(output));
+    }
+
+    /**
+     * Образ с ложными началами архивов через каждые 16 КиБ, без записей конца архива.
+     */
+    private Path strayArchives(int count) throws IOException {
+        byte[] bytes = new byte[count * 16 * 1024];
+        Arrays.fill(bytes, (byte) 0x5A);
+        for (int i = 0; i < count; i++) {
+            int offset = i * 16 * 1024;
+            System.arraycopy(new byte[]{0x50, 0x4B, 0x03, 0x04, 0x14, 0x00}, 0, bytes, offset, 6);
+        }
+        return Files.write(root.resolve("stray.bin"), bytes);
+    }
+
+    @Test
+    void testStrayAnchorsDoNotRescanTheImage() throws IOException {
+        int count = 256;
+        Path image = strayArchives(count);
+        long maxLength = 1 << 20;
+        byte[] end = {0x50, 0x4B, 0x05, 0x06};
+
+        // поиск конца архива от каждого ложного начала, с границей, сдвигающейся вместе с началом
+        try (MappedBlob blob = new MappedBlob(image)) {
+            for (int i = 0; i < count; i++) {
+                long start = i * 16L * 1024;
+                assertEquals(-1, blob.indexOf(end, start, Math.min(blob.size(), start + maxLength)));
+            }
+            assertTrue(blob.scanned() <= blob.size(), "scanned " + blob.scanned() + " of " + blob.size());
+        }
+
+        Carver carver = new Carver();
+        carver.setDryRun(true);
+        carver.setMaxLength(maxLength);
+        Carver.Report report = carver.carve(image, root.resolve("out"));
+
+        assertEquals(0, report.extracted());
+        assertTrue(report.candidates() >= count);
+    }
+
+    @Test
+    void testSearchWithMovingLimitFindsLaterMatch() throws IOException {
+        byte[] bytes = new byte[1000];
+        byte[] pattern = {0x01, 0x02, 0x03};
+        System.arraycopy(pattern, 0, bytes, 598, 3);
+        Path file = Files.write(root.resolve("blob.bin"), bytes);
+
+        try (MappedBlob blob = new MappedBlob(file)) {
+            assertEquals(-1, blob.indexOf(pattern, 0, 600));
+            // вхождение пересекает прежнюю границу
+            assertEquals(598, blob.indexOf(pattern, 10, 700));
+            assertEquals(-1, blob.indexOf(pattern, 20, 600));
+            assertEquals(598, blob.indexOf(pattern, 598, 1000));
+            assertEquals(-1, blob.indexOf(pattern, 599, 1000));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CliTest {
+
+    @TempDir
+    Path root;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+
+    private String output() {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testDryRunDoesNotRename() throws IOException {
+        Path file = Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+
+        int code = Cli.run(new String[]{"restore", root.toString(), "--threads", "2", "--dry-run"}, out);
+
+        assertEquals(Cli.EXIT_OK, code);
+        assertTrue(Files.exists(file));
+        assertTrue(output().contains("\"status\":\"planned\""));
+        assertTrue(output().contains("\"type\":\"png\""));
+        assertTrue(output().contains("\"status\":\"summary\",\"files\":1,\"renamed\":1"));
+    }
+
+    @Test
+    void testRestoreRenames() throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"restore", root.toString()}, out));
+        assertTrue(Files.exists(root.resolve("document.pdf")));
+    }
+
+    @Test
+    void testPipelineRestoreRenames() throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"restore", root.toString(), "--pipeline", "--threads", "4"}, out));
+        assertTrue(Files.exists(root.resolve("document.pdf")));
+        assertTrue(output().contains("\"status\":\"renamed\""));
+    }
+
+    @Test
+    void testPlanApplyUndo(@TempDir Path work) throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        String manifest = work.resolve("plan.jsonl").toString();
+
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"restore", root.toString(), "--plan", manifest}, out));
+        assertTrue(Files.exists(root.resolve("document")));
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"apply", manifest, "--threads", "2"}, out));
+        assertTrue(Files.exists(root.resolve("document.pdf")));
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"undo", manifest}, out));
+        assertTrue(Files.exists(root.resolve("document")));
+        assertTrue(output().contains("\"status\":\"summary\",\"entries\":1,\"renamed\":1"));
+    }
+
+    @Test
+    void testDuplicatesWithCache(@TempDir Path work) throws IOException {
+        byte[] content = {0x25, 0x50, 0x44, 0x46, 1, 2, 3};
+        Files.write(root.resolve("a"), content);
+        Files.write(root.resolve("b"), content);
+        String cache = work.resolve("types.cache").toString();
+        String[] args = {"restore", root.toString(), "--duplicates", "skip", "--dry-run", "--cache", cache};
+
+        assertEquals(Cli.EXIT_OK, Cli.run(args, out));
+        assertEquals(Cli.EXIT_OK, Cli.run(args, out));
+
+        assertEquals(2, output().split("\"status\":\"duplicate\"", -1).length - 1);
+        assertTrue(output().contains("\"renamed\":1,\"unknown\":0,\"failed\":0,\"duplicates\":1"));
+        assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"restore", root.toString(), "--duplicates", "x"}, out));
+    }
+
+    @Test
+    void testRestoreWithJournal(@TempDir Path work) throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        String journal = work.resolve("job.journal").toString();
+
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"restore", root.toString(), "--journal", journal}, out));
+        assertTrue(Files.exists(root.resolve("document.pdf")));
+        assertTrue(Files.size(Path.of(journal)) > 0);
+        assertFalse(output().contains("\"status\":\"resumed\""));
+        assertEquals(Cli.EXIT_USAGE,
+                Cli.run(new String[]{"restore", root.toString(), "--journal", journal, "--pipeline"}, out));
+    }
+
+    @Test
+    void testCarve(@TempDir Path work) throws IOException {
+        byte[] pdf = "%PDF-1.4\ntrailer\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] image = new byte[16 + pdf.length + 16];
+        System.arraycopy(pdf, 0, image, 16, pdf.length);
+        Path file = Files.write(work.resolve("disk.img"), image);
+
+        int code = Cli.run(new String[]{"carve", file.toString(), root.toString()}, out);
+
+        assertEquals(Cli.EXIT_OK, code);
+        assertTrue(Files.exists(root.resolve("000000000010.pdf")));
+        assertTrue(output().contains("\"status\":\"extracted\",\"offset\":16,\"length\":" + pdf.length));
+        assertTrue(output().contains("\"status\":\"summary\",\"bytes\":" + image.length));
+    }
+
+    @Test
+    void testDetect() throws IOException {
+        Path file = Files.write(root.resolve("archive"), new byte[]{0x37, 0x7A, (byte) 0xBC, (byte) 0xAF});
+
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"detect", file.toString()}, out));
+        assertTrue(output().contains("\"type\":\"7z\""));
+        assertEquals(Cli.EXIT_FAILURES, Cli.run(new String[]{"detect", root.resolve("missing").toString()}, out));
+    }
+
+    @Test
+    void testUsageErrors() {
+        assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"restore"}, out));
+        assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"restore", root.toString(), "--threads", "x"}, out));
+        // справка не загружает базу сигнатур
+        String missing = root.resolve("missing.db").toString();
+        assertEquals(Cli.EXIT_OK, Cli.run(new String[]{"help", "--signatures", missing}, out));
+        assertFalse(Cli.accepts(new String[0]));
+        assertTrue(Cli.accepts(new String[]{"restore"}));
+    }
+
+    @Test
+    void testCacheErrorIsReportedAsSuch(@TempDir Path work) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        try {
+            // директория вместо файла кэша
+            int code = Cli.run(new String[]{"detect", root.toString(), "--cache", work.toString()}, out);
+
+            assertEquals(Cli.EXIT_USAGE, code);
+        } finally {
+            System.setErr(stderr);
+        }
+        assertTrue(errors.toString(StandardCharsets.UTF_8).contains("error: failed to open the cache"));
+    }
+
+    @Test
+    void testQuote() {
+        assertEquals("\"a\\\"b\\\\c\\n\"", Cli.quote("a\"b\\c\n"));
+        assertEquals("null", Cli.quote(null));
+    }
+}
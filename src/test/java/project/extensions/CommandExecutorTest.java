@@ -0,0 +1,77 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandExecutorTest {
+
+    @Test
+    void testCancelRunningCommand() throws InterruptedException {
+        List<String> output = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        try (CommandExecutor executor = new CommandExecutor(output::add)) {
+            CommandExecutor.Job job = executor.submit("scan", current -> {
+                for (long i = 0; ; i++) {
+                    current.checkCancelled();
+                    current.progress(i, -1);
+                    started.countDown();
+                }
+            }, finished::countDown);
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertSame(job, executor.current());
+            assertTrue(executor.cancel());
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertTrue(job.isCancelled());
+            assertEquals(List.of("scan cancelled"), output);
+            assertNull(executor.current());
+            assertFalse(executor.cancel());
+        }
+    }
+
+    @Test
+    void testCancelListenerAndBlockingCommand() throws InterruptedException {
+        List<String> output = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        BatchRestorer restorer = new BatchRestorer(1);
+
+        try (CommandExecutor executor = new CommandExecutor(output::add)) {
+            executor.submit("sleep", job -> {
+                job.onCancel(restorer::cancel);
+                started.countDown();
+                Thread.sleep(60_000);
+            }, finished::countDown);
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.cancel();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertTrue(restorer.isCancelled());
+            assertEquals(List.of("sleep cancelled"), output);
+        }
+    }
+
+    @Test
+    void testCommandsRunInOrderAndReportErrors() throws InterruptedException {
+        List<String> output = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(2);
+
+        try (CommandExecutor executor = new CommandExecutor(output::add)) {
+            executor.submit("fail", job -> {
+                throw new IllegalStateException("broken");
+            }, finished::countDown);
+            executor.submit("ok", job -> output.add("ok"), finished::countDown);
+
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("error executing command: broken", "ok"), output);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package project.extensions;
+
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsoleBufferTest {
+
+    @Test
+    void testOldestLinesAreEvicted() {
+        ConsoleBuffer buffer = new ConsoleBuffer(3);
+        buffer.append("a");
+        buffer.append(List.of("b", "c\nd"));
+
+        assertEquals(List.of("b", "c", "d"), buffer);
+
+        buffer.append(List.of("1", "2", "3", "4", "5"));
+        assertEquals(List.of("3", "4", "5"), buffer);
+    }
+
+    @Test
+    void testChangeEvents() {
+        ConsoleBuffer buffer = new ConsoleBuffer(4);
+        buffer.append(List.of("a", "b", "c"));
+
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        buffer.addListener((ListChangeListener<String>) change -> {
+            while (change.next()) {
+                removed.addAll(change.getRemoved());
+                added.addAll(change.getAddedSubList());
+            }
+        });
+
+        buffer.append(List.of("d", "e", "f"));
+        assertEquals(List.of("a", "b"), removed);
+        assertEquals(List.of("d", "e", "f"), added);
+        assertEquals(List.of("c", "d", "e", "f"), buffer);
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertEquals(List.of("a", "b", "c", "d", "e", "f"), removed);
+    }
+
+    @Test
+    void testMemoryStaysBounded() {
+        ConsoleBuffer buffer = new ConsoleBuffer(1000);
+        for (int i = 0; i < 100_000; i++) {
+            buffer.append("line " + i);
+        }
+        assertEquals(1000, buffer.size());
+        assertEquals("line 99000", buffer.get(0));
+        assertEquals("line 99999", buffer.get(999));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.get(1000));
+    }
+}
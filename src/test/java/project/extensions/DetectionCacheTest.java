@@ -0,0 +1,128 @@
+package project.extensions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DetectionCacheTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A};
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Expander.setCache(null);
+        Expander.init();
+    }
+
+    @Test
+    void testEntriesSurviveReopen() throws IOException {
+        Path cacheFile = directory.resolve("cache.bin");
+        DetectionCache.Key png = new DetectionCache.Key(1, 100, 10, 1000);
+        DetectionCache.Key unknown = new DetectionCache.Key(1, 101, 10, 1000);
+
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 42)) {
+            assertSame(DetectionCache.MISS, cache.lookup(png));
+            cache.put(png, "png");
+            cache.put(unknown, null);
+        }
+
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 42)) {
+            assertEquals(2, cache.size());
+            assertEquals("png", cache.lookup(png));
+            assertNull(cache.lookup(unknown));
+            assertSame(DetectionCache.MISS, cache.lookup(new DetectionCache.Key(1, 100, 11, 1000)));
+            assertSame(DetectionCache.MISS, cache.lookup(new DetectionCache.Key(1, 100, 10, 1001)));
+        }
+
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 43)) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    void testRecordsAreWrittenWithoutNewPuts() throws IOException, InterruptedException {
+        Path cacheFile = directory.resolve("cache.bin");
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 5)) {
+            long empty = Files.size(cacheFile);
+            cache.put(new DetectionCache.Key(1, 100, 10, 1000), "png");
+
+            // запись попадает в файл по таймеру, без следующего put и без close
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (Files.size(cacheFile) == empty && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(Files.size(cacheFile) > empty);
+        }
+    }
+
+    @Test
+    void testTruncatedTailIsIgnored() throws IOException {
+        Path cacheFile = directory.resolve("cache.bin");
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 7)) {
+            for (int i = 0; i < 3000; i++) {
+                cache.put(new DetectionCache.Key(2, i, i, i), i % 2 == 0 ? "jpg" : "pdf");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 7)) {
+            assertEquals(2999, cache.size());
+            assertEquals("jpg", cache.lookup(new DetectionCache.Key(2, 2998, 2998, 2998)));
+            assertSame(DetectionCache.MISS, cache.lookup(new DetectionCache.Key(2, 2999, 2999, 2999)));
+            cache.put(new DetectionCache.Key(2, 2999, 2999, 2999), "pdf");
+        }
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 7)) {
+            assertEquals(3000, cache.size());
+        }
+    }
+
+    @Test
+    void testStaleRecordsAreCompacted() throws IOException {
+        Path cacheFile = directory.resolve("cache.bin");
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 7)) {
+            for (int i = 0; i < 5000; i++) {
+                cache.put(new DetectionCache.Key(3, i % 10, i, i), "gif");
+            }
+        }
+        long before = Files.size(cacheFile);
+
+        try (DetectionCache cache = DetectionCache.open(cacheFile, 7)) {
+            assertEquals(10, cache.size());
+            assertEquals("gif", cache.lookup(new DetectionCache.Key(3, 9, 4999, 4999)));
+        }
+        assertTrue(Files.size(cacheFile) < before / 100);
+    }
+
+    @Test
+    void testDetectionUsesCacheUntilFileChanges() throws IOException {
+        Expander.init();
+        Path file = directory.resolve("image");
+        Files.write(file, PNG);
+        Expander.setCache(directory.resolve("cache.bin"));
+
+        assertEquals("png", Expander.detectExtension(file.toFile()));
+
+        // кэш не перечитывает файл, пока не изменились размер и время изменения
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, new byte[]{'%', 'P', 'D', 'F', '-', '1', '.', '4'});
+        Files.setLastModifiedTime(file, modified);
+        assertEquals("png", Expander.detectExtension(file.toFile()));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 5000));
+        assertEquals("pdf", Expander.detectExtension(file.toFile()));
+    }
+}
@@ -0,0 +1,135 @@
+package project.extensions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryWatcherTest {
+
+    private static final byte[] PDF = {0x25, 0x50, 0x44, 0x46};
+
+    @TempDir
+    Path root;
+
+    private DirectoryWatcher watcher;
+    private CompletableFuture<BatchReport> running;
+    private final List<RestoreEvent> events = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+        watcher = new DirectoryWatcher(root);
+        watcher.setQuietMillis(100);
+        watcher.setListener(events::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.cancel();
+    }
+
+    private void start() {
+        running = CompletableFuture.supplyAsync(() -> {
+            try {
+                return watcher.watch();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private BatchReport stop() throws InterruptedException, ExecutionException, TimeoutException {
+        watcher.cancel();
+        return running.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testExistingAndNewFilesAreRestored() throws Exception {
+        Files.write(root.resolve("before"), PDF);
+        start();
+        await(() -> Files.exists(root.resolve("before.pdf")));
+
+        Files.write(root.resolve("after"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        await(() -> Files.exists(root.resolve("after.png")));
+        Files.write(root.resolve("garbage"), new byte[]{0, 1, 2, 3});
+        await(() -> events.size() == 3);
+        BatchReport report = stop();
+
+        assertEquals(3, report.files());
+        assertEquals(2, report.renamed());
+        assertEquals(1, report.unknown());
+        assertEquals(0, report.failed());
+        assertTrue(Files.exists(root.resolve("garbage")));
+    }
+
+    @Test
+    void testFileIsRestoredAfterWritingStops() throws Exception {
+        watcher.setQuietMillis(300);
+        start();
+        Path file = root.resolve("growing");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(new byte[]{0, 0, 0, 0});
+            out.flush();
+            Thread.sleep(100);
+            out.write(new byte[100]);
+            out.flush();
+        }
+        // начало файла перезаписывается последним: обработанный раньше времени файл остался бы неизвестным
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(PDF), 0);
+        }
+        await(() -> Files.exists(root.resolve("growing.pdf")));
+        BatchReport report = stop();
+
+        assertEquals(1, report.files());
+        assertEquals(1, report.renamed());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testDryRunAndFilesWithCorrectExtension() throws Exception {
+        Files.write(root.resolve("ready.pdf"), PDF);
+        Files.write(root.resolve("document"), PDF);
+        watcher.setDryRun(true);
+        start();
+        await(() -> events.size() == 1);
+        BatchReport report = stop();
+
+        assertEquals(RestoreEvent.Status.PLANNED, events.get(0).status());
+        assertEquals(root.resolve("document.pdf"), events.get(0).target());
+        assertEquals(1, report.files());
+        assertTrue(Files.exists(root.resolve("document")));
+    }
+
+    @Test
+    void testMissingDirectoryIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryWatcher(root.resolve("missing")));
+        assertThrows(IllegalArgumentException.class, () -> watcher.setQuietMillis(-1));
+    }
+}
@@ -1,7 +1,7 @@
 package project.extensions;
 
 import javafx.application.Platform;
-import javafx.scene.control.TextArea;
+import javafx.scene.control.ListView;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,7 +28,7 @@ class ExpanderTest {
     /**
      * Инициализация JavaFX Toolkit перед запуском тестов.
      *
-     * <p>JavaFX Toolkit должен быть запущен перед созданием компонентов JavaFX, таких как {@link TextArea}.
+     * <p>JavaFX Toolkit должен быть запущен перед созданием компонентов JavaFX, таких как {@link ListView}.
      * Этот метод вызывается один раз перед всеми тестами.</p>
      */
     @BeforeAll
@@ -42,7 +42,7 @@ class ExpanderTest {
      * <ul>
      *     <li>Инициализирует карту сигнатур файлов через {@link Expander#init()}.</li>
      *     <li>Устанавливает текущую директорию с помощью {@link Position}.</li>
-     *     <li>Создает компонент {@link TextArea} для вывода сообщений в консоль.</li>
+     *     <li>Создает компонент {@link ListView} для вывода сообщений в консоль.</li>
      * </ul>
      * </p>
      */
@@ -53,7 +53,7 @@ class ExpanderTest {
         Path initialPath = Paths.get(System.getProperty("user.dir"));
         new Position(initialPath);
 
-        MainApp.outputArea = new TextArea();
+        MainApp.outputArea = new ListView<>(MainApp.console);
 
     }
     /**
@@ -0,0 +1,76 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeaderReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadsRequestedPrefix() throws IOException {
+        Path file = Files.write(directory.resolve("file"), new byte[]{1, 2, 3, 4, 5, 6});
+
+        ByteBuffer header = HeaderReader.read(file, 4);
+
+        assertEquals(4, header.remaining());
+        assertEquals(1, header.get(0));
+        assertEquals(4, header.get(3));
+    }
+
+    @Test
+    void testShortFileIsNotPadded() throws IOException {
+        Path file = Files.write(directory.resolve("short"), new byte[]{0x42});
+
+        assertEquals(1, HeaderReader.read(file, 4).remaining());
+        assertEquals(0, HeaderReader.read(Files.write(directory.resolve("empty"), new byte[0]), 4).remaining());
+    }
+
+    @Test
+    void testReadsAtOffset() throws IOException {
+        Path file = Files.write(directory.resolve("file"), new byte[]{0, 0, 0, 0, 0x66, 0x74, 0x79, 0x70});
+
+        ByteBuffer header = HeaderReader.read(file, 4, 8);
+
+        assertEquals(4, header.remaining());
+        assertEquals(0x66, header.get(0));
+    }
+
+    @Test
+    void testBufferIsReusedWithinThread() throws IOException {
+        Path file = Files.write(directory.resolve("file"), new byte[]{1, 2, 3, 4});
+
+        assertSame(HeaderReader.read(file, 2), HeaderReader.read(file, 4));
+    }
+
+    @Test
+    void testByteOrderIsResetForEachRead() throws IOException {
+        Path file = Files.write(directory.resolve("file"), new byte[]{1, 2, 3, 4});
+
+        HeaderReader.read(file, 4).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer header = HeaderReader.read(file, 4);
+
+        assertEquals(ByteOrder.BIG_ENDIAN, header.order());
+        assertEquals(0x01020304, header.getInt(0));
+    }
+
+    @Test
+    void testLargeRangeIsMapped() throws IOException {
+        Path file = Files.write(directory.resolve("large"), new byte[HeaderReader.MAX_HEADER + 10]);
+
+        ByteBuffer header = HeaderReader.read(file, HeaderReader.MAX_HEADER + 100);
+
+        assertTrue(header instanceof MappedByteBuffer);
+        assertEquals(HeaderReader.MAX_HEADER + 10, header.remaining());
+    }
+}
@@ -0,0 +1,51 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsCoverTheWholeRange() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.lowerBound(index) <= value, "value " + value);
+            assertTrue(LatencyHistogram.upperBound(index) >= value, "value " + value);
+        }
+        for (int i = 0; i < LatencyHistogram.index(Long.MAX_VALUE); i++) {
+            assertEquals(LatencyHistogram.upperBound(i) + 1, LatencyHistogram.lowerBound(i + 1));
+        }
+    }
+
+    @Test
+    void testPercentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(5_000_500, histogram.mean(), 1);
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 / 8.0);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 / 8.0);
+        assertEquals(10_000_000, histogram.percentile(100));
+        assertEquals(10_000, histogram.summary().getMaxMicros(), 0.001);
+    }
+
+    @Test
+    void testResetAndEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        histogram.record(-5);
+        histogram.record(42);
+        assertEquals(0, histogram.percentile(0));
+        histogram.reset();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(50));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+    }
+}
@@ -0,0 +1,55 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+    }
+
+    @Test
+    void testRestoreIsCounted() throws Exception {
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Files.write(root.resolve("garbage"), new byte[]{0x00, 0x01, 0x02, 0x03});
+        long reads = Metrics.HEADER_READS.count();
+        long renames = Metrics.RENAMES.count();
+        long png = Metrics.types().getOrDefault("png", 0L);
+
+        new RestorePipeline(2, 2).restore(root);
+
+        assertTrue(Metrics.HEADER_READS.count() >= reads + 2);
+        assertEquals(renames + 1, Metrics.RENAMES.count());
+        assertEquals(png + 1, Metrics.types().get("png"));
+        assertTrue(Metrics.dump().contains("header reads: "));
+    }
+
+    @Test
+    void testMBeanIsRegistered() throws Exception {
+        Metrics.registerMBean();
+        Metrics.registerMBean();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(Metrics.HEADER_READS.count(), server.getAttribute(name, "HeaderReads"));
+        CompositeData latency = (CompositeData) server.getAttribute(name, "HeaderReadLatency");
+        assertTrue(latency.containsKey("p99Micros"));
+        assertTrue(((String) server.getAttribute(name, "Dump")).contains("renames: "));
+    }
+}
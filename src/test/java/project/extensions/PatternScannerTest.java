@@ -0,0 +1,71 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternScannerTest {
+
+    private static List<String> scan(PatternScanner scanner, String text) {
+        List<String> found = new ArrayList<>();
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        int state = PatternScanner.start();
+        for (int i = 0; i < bytes.length; i++) {
+            state = scanner.next(state, bytes[i] & 0xFF);
+            int[] lengths = scanner.matches(state);
+            if (lengths != null) {
+                for (int length : lengths) {
+                    found.add((i - length + 1) + ":" + text.substring(i - length + 1, i + 1));
+                }
+            }
+        }
+        return found;
+    }
+
+    private static PatternScanner compile(String... patterns) {
+        List<byte[]> bytes = new ArrayList<>();
+        for (String pattern : patterns) {
+            bytes.add(pattern.getBytes(StandardCharsets.US_ASCII));
+        }
+        return PatternScanner.compile(bytes);
+    }
+
+    @Test
+    void testFindsOverlappingPatternsInStartOrder() {
+        PatternScanner scanner = compile("he", "she", "his", "hers");
+
+        assertEquals(List.of("1:she", "2:he", "2:hers"), scan(scanner, "ushers"));
+        assertEquals(List.of("0:his", "4:she", "5:he"), scan(scanner, "his she"));
+    }
+
+    @Test
+    void testDuplicatePatternsAreReportedOnce() {
+        PatternScanner scanner = compile("PK", "PK", "K");
+
+        assertEquals(List.of("1:PK", "2:K"), scan(scanner, "xPK"));
+    }
+
+    @Test
+    void testHandlesAllByteValues() {
+        PatternScanner scanner = PatternScanner.compile(List.of(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}));
+        int state = PatternScanner.start();
+        int found = 0;
+        for (int b : new int[]{0xFF, 0xFF, 0xD8, 0xFF, 0xD8, 0xFF}) {
+            state = scanner.next(state, b);
+            if (scanner.matches(state) != null) {
+                found++;
+            }
+        }
+
+        assertEquals(2, found);
+    }
+
+    @Test
+    void testRejectsEmptyPattern() {
+        assertThrows(IllegalArgumentException.class, () -> PatternScanner.compile(List.of(new byte[0])));
+    }
+}
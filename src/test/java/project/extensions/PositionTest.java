@@ -2,9 +2,16 @@ package project.extensions;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,5 +43,23 @@ public class PositionTest {
         assertEquals(initialPath.getParent(), Position.getPath());
     }
 
-}
+    @Test
+    void testStreamFilesDirectory(@TempDir Path directory) throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            Files.createFile(directory.resolve("file" + i));
+        }
+        Position position = new Position(directory);
 
+        try (Stream<Path> files = position.streamFilesDirectory()) {
+            Iterator<Path> iterator = files.iterator();
+            assertTrue(iterator.hasNext());
+            assertFalse(iterator.next().isAbsolute(), "only file names should be returned");
+        }
+        try (Stream<Path> files = position.streamFilesDirectory()) {
+            Set<String> names = files.map(Path::toString).collect(Collectors.toSet());
+            assertEquals(1000, names.size());
+            assertTrue(names.contains("file999"));
+        }
+        assertEquals(1000, position.getFilesDirectory().size());
+    }
+}
@@ -0,0 +1,133 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenameManifestTest {
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path work;
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+    }
+
+    private Path plan() throws IOException {
+        Path manifest = work.resolve("plan.jsonl");
+        BatchRestorer restorer = new BatchRestorer(2);
+        restorer.setDryRun(true);
+        try (RenameManifest.Writer writer = RenameManifest.writer(manifest, root)) {
+            restorer.setListener(writer);
+            restorer.restore(root);
+        }
+        return manifest;
+    }
+
+    @Test
+    void testPlanApplyAndUndo() throws IOException {
+        Path nested = Files.createDirectories(root.resolve("a"));
+        Files.write(root.resolve("report.2023.bin"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(nested.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Files.write(nested.resolve("garbage"), new byte[]{0x00, 0x01, 0x02, 0x03});
+
+        Path manifest = plan();
+        assertEquals(3, Files.readAllLines(manifest).size());
+        assertTrue(Files.exists(nested.resolve("image")));
+
+        List<RestoreEvent> events = new CopyOnWriteArrayList<>();
+        RenameManifest.Report applied = RenameManifest.apply(manifest, 3, events::add);
+        assertEquals(2, applied.entries());
+        assertEquals(2, applied.renamed());
+        assertEquals(0, applied.failed());
+        assertEquals(2, events.size());
+        assertTrue(Files.exists(root.resolve("report.2023.pdf")));
+        assertTrue(Files.exists(nested.resolve("image.png")));
+
+        RenameManifest.Report again = RenameManifest.apply(manifest, 1, event -> { });
+        assertEquals(2, again.skipped());
+        assertEquals(0, again.failed());
+
+        RenameManifest.Report undone = RenameManifest.undo(manifest, 2, event -> { });
+        assertEquals(2, undone.renamed());
+        assertTrue(Files.exists(root.resolve("report.2023.bin")));
+        assertTrue(Files.exists(nested.resolve("image")));
+        assertFalse(Files.exists(nested.resolve("image.png")));
+    }
+
+    @Test
+    void testApplyDoesNotOverwriteOrTouchChangedFiles() throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Path manifest = plan();
+
+        Files.write(root.resolve("document.pdf"), new byte[]{1});
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47, 0});
+
+        List<RestoreEvent> events = new CopyOnWriteArrayList<>();
+        RenameManifest.Report report = RenameManifest.apply(manifest, 2, events::add);
+
+        assertEquals(2, report.failed());
+        assertTrue(events.stream().allMatch(event -> event.status() == RestoreEvent.Status.FAILED));
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(root.resolve("document.pdf")));
+        assertTrue(Files.exists(root.resolve("document")));
+        assertTrue(Files.exists(root.resolve("image")));
+    }
+
+    @Test
+    void testFilesWithTheRightExtensionAreNotPlanned() throws IOException {
+        Files.write(root.resolve("document.pdf"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+
+        Path manifest = plan();
+        assertEquals(2, Files.readAllLines(manifest).size());
+
+        // записи без смены имени из уже существующих манифестов пропускаются
+        Files.writeString(manifest, "{\"file\":\"document.pdf\",\"target\":\"document.pdf\",\"size\":4,\"modified\":0}\n",
+                StandardOpenOption.APPEND);
+        RenameManifest.Report applied = RenameManifest.apply(manifest, 2, event -> { });
+        assertEquals(2, applied.entries());
+        assertEquals(1, applied.renamed());
+        assertEquals(1, applied.skipped());
+        assertEquals(0, applied.failed());
+
+        RenameManifest.Report undone = RenameManifest.undo(manifest, 2, event -> { });
+        assertEquals(1, undone.renamed());
+        assertEquals(1, undone.skipped());
+        assertTrue(Files.exists(root.resolve("document.pdf")));
+        assertTrue(Files.exists(root.resolve("image")));
+    }
+
+    @Test
+    void testRejectsInvalidManifests() throws IOException {
+        Path manifest = Files.writeString(work.resolve("bad.jsonl"), "{\"format\":\"other\"}\n");
+        assertThrows(IllegalArgumentException.class, () -> RenameManifest.apply(manifest, 1, event -> { }));
+        assertThrows(IllegalArgumentException.class,
+                () -> RenameManifest.parseEntry("{\"file\":\"a\",\"target\":\"../b\",\"size\":1,\"modified\":1}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameManifest.parse("{\"file\":\"a"));
+    }
+
+    @Test
+    void testParseUnescapesStrings() {
+        RenameManifest.Entry entry = RenameManifest.parseEntry(
+                "{\"file\":\"dir\\\\a \\\"b\\\"\\u0041\",\"target\":\"x.pdf\",\"size\":12,\"modified\":-5}");
+
+        assertEquals("dir\\a \"b\"A", entry.file());
+        assertEquals("x.pdf", entry.target());
+        assertEquals(12, entry.size());
+        assertEquals(-5, entry.modified());
+    }
+}
@@ -0,0 +1,119 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenamerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testRenameReplacesTheLastExtension() throws IOException {
+        Path file = Files.write(root.resolve("report.2023.bin"), new byte[]{1});
+        Renamer renamer = new Renamer();
+
+        Path target = renamer.rename(file, "pdf");
+
+        assertEquals(root.resolve("report.2023.pdf"), target);
+        assertFalse(Files.exists(file));
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(target));
+        assertEquals(target, renamer.rename(target, "pdf"));
+    }
+
+    @Test
+    void testExistingTargetIsNotOverwritten() throws IOException {
+        Files.write(root.resolve("a.pdf"), new byte[]{1});
+        Path file = Files.write(root.resolve("a"), new byte[]{2});
+
+        RenameException e = assertThrows(RenameException.class, () -> new Renamer().rename(file, "pdf"));
+
+        assertEquals(RenameException.Reason.TARGET_EXISTS, e.reason());
+        assertEquals(file, e.source());
+        assertEquals(root.resolve("a.pdf"), e.target());
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(root.resolve("a.pdf")));
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void testRenamedNamesAreTrackedWithoutNewListing() throws IOException {
+        Path first = Files.write(root.resolve("a.bin"), new byte[]{1});
+        Path second = Files.write(root.resolve("a.dat"), new byte[]{2});
+        Renamer renamer = new Renamer();
+
+        renamer.rename(first, "pdf");
+        RenameException e = assertThrows(RenameException.class, () -> renamer.rename(second, "pdf"));
+
+        assertEquals(RenameException.Reason.TARGET_EXISTS, e.reason());
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(root.resolve("a.pdf")));
+        // старое имя освобождено
+        Path third = Files.write(root.resolve("a.png"), new byte[]{3});
+        assertEquals(root.resolve("a.bin"), renamer.rename(third, "bin"));
+    }
+
+    @Test
+    void testFailedRenameReleasesTheName() throws IOException {
+        Files.write(root.resolve("other"), new byte[]{0});
+        Renamer renamer = new Renamer();
+
+        RenameException e = assertThrows(RenameException.class,
+                () -> renamer.rename(root.resolve("missing"), "pdf"));
+        assertEquals(RenameException.Reason.SOURCE_MISSING, e.reason());
+
+        Path file = Files.write(root.resolve("missing.bin"), new byte[]{1});
+        assertEquals(root.resolve("missing.pdf"), renamer.rename(file, "pdf"));
+    }
+
+    @Test
+    void testFileCreatedAfterListingIsNotOverwritten() throws IOException {
+        Path first = Files.write(root.resolve("a"), new byte[]{1});
+        Path second = Files.write(root.resolve("b"), new byte[]{2});
+        Renamer renamer = new Renamer();
+        renamer.rename(first, "pdf");
+
+        // список директории уже прочитан, новый файл в нем не учтен
+        Files.write(root.resolve("b.pdf"), new byte[]{3});
+        RenameException e = assertThrows(RenameException.class, () -> renamer.rename(second, "pdf"));
+
+        assertEquals(RenameException.Reason.TARGET_EXISTS, e.reason());
+        assertArrayEquals(new byte[]{3}, Files.readAllBytes(root.resolve("b.pdf")));
+        assertArrayEquals(new byte[]{2}, Files.readAllBytes(second));
+    }
+
+    @Test
+    void testRenameOne() throws IOException {
+        Path file = Files.write(root.resolve("a"), new byte[]{1});
+        Files.write(root.resolve("b.pdf"), new byte[]{2});
+        Path other = Files.write(root.resolve("b"), new byte[]{3});
+
+        assertEquals(root.resolve("a.pdf"), Renamer.renameOne(file, "pdf"));
+        RenameException e = assertThrows(RenameException.class, () -> Renamer.renameOne(other, "pdf"));
+        assertEquals(RenameException.Reason.TARGET_EXISTS, e.reason());
+        assertTrue(e instanceof IllegalStateException);
+    }
+
+    @Test
+    void testLink() throws IOException {
+        Path original = Files.write(root.resolve("a.pdf"), new byte[]{1});
+        Path copy = Files.write(root.resolve("b"), new byte[]{1});
+        Path named = Files.write(root.resolve("c.pdf"), new byte[]{1});
+        Renamer renamer = new Renamer();
+
+        assertEquals(root.resolve("b.pdf"), renamer.link(copy, "pdf", original));
+        assertEquals(named, renamer.link(named, "pdf", original));
+
+        assertFalse(Files.exists(copy));
+        assertTrue(Files.isSameFile(original, root.resolve("b.pdf")));
+        assertTrue(Files.isSameFile(original, named));
+        try (Stream<Path> files = Files.list(root)) {
+            assertEquals(3, files.count());
+        }
+    }
+}
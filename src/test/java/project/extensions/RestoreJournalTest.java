@@ -0,0 +1,151 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestoreJournalTest {
+
+    private static final byte[] PDF = {0x25, 0x50, 0x44, 0x46};
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path work;
+
+    @Test
+    void testProgressSurvivesReopen() throws IOException {
+        Path done = Files.createDirectories(root.resolve("done"));
+        Path open = Files.createDirectories(root.resolve("open"));
+        Path journalFile = work.resolve("job.journal");
+
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertFalse(journal.isResumed());
+            journal.processed(done.resolve("a.pdf"));
+            journal.completed(done);
+            journal.processed(open.resolve("b.pdf"));
+            journal.processed(open.resolve("c"));
+        }
+
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertTrue(journal.isResumed());
+            assertEquals(1, journal.resumedDirectories());
+            // файлы обработанной директории не хранятся
+            assertEquals(2, journal.resumedFiles());
+            assertTrue(journal.isCompleted(done));
+            assertFalse(journal.isCompleted(open));
+            assertTrue(journal.isProcessed(open.resolve("b.pdf")));
+            assertTrue(journal.isProcessed(open.resolve("c")));
+            assertFalse(journal.isProcessed(open.resolve("d")));
+            journal.processed(open.resolve("d"));
+        }
+
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertTrue(journal.isProcessed(open.resolve("d")));
+            journal.finish();
+        }
+
+        // после завершения журнал начинает новую задачу
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertFalse(journal.isResumed());
+            assertFalse(journal.isCompleted(done));
+        }
+    }
+
+    @Test
+    void testTornTailIsDropped() throws IOException {
+        Path journalFile = work.resolve("job.journal");
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            for (int i = 0; i < 1000; i++) {
+                journal.processed(root.resolve("file-" + i));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertEquals(999, journal.resumedFiles());
+            assertFalse(journal.isProcessed(root.resolve("file-999")));
+            journal.processed(root.resolve("file-999"));
+        }
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertEquals(1000, journal.resumedFiles());
+        }
+    }
+
+    @Test
+    void testOversizedNameIsNotRecorded() throws IOException {
+        Path journalFile = work.resolve("job.journal");
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            journal.processed(root.resolve("x".repeat(70_000)));
+            journal.processed(root.resolve("file"));
+        }
+
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertEquals(1, journal.resumedFiles());
+            assertTrue(journal.isProcessed(root.resolve("file")));
+        }
+    }
+
+    @Test
+    void testJournalOfAnotherRootIsRejected() throws IOException {
+        Path journalFile = work.resolve("job.journal");
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            journal.processed(root.resolve("file"));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RestoreJournal.open(journalFile, work));
+    }
+
+    @Test
+    void testInterruptedRestoreResumes() throws IOException {
+        Path done = Files.createDirectories(root.resolve("done"));
+        Path open = Files.createDirectories(root.resolve("open"));
+        Files.write(done.resolve("first"), PDF);
+        Files.write(open.resolve("second"), PDF);
+        Files.write(open.resolve("third"), PDF);
+        Path journalFile = work.resolve("job.journal");
+
+        // прерванный запуск: директория done обработана полностью, в open - один файл
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            Files.move(done.resolve("first"), done.resolve("first.pdf"));
+            journal.processed(done.resolve("first.pdf"));
+            journal.completed(done);
+            Files.move(open.resolve("second"), open.resolve("second.pdf"));
+            journal.processed(open.resolve("second.pdf"));
+        }
+        // файл, добавленный в обработанную директорию, при продолжении не читается
+        Files.write(done.resolve("late"), PDF);
+
+        List<RestoreEvent> events = new ArrayList<>();
+        BatchReport report;
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            BatchRestorer restorer = new BatchRestorer(2);
+            restorer.setJournal(journal);
+            restorer.setListener(events::add);
+            report = restorer.restore(root);
+        }
+
+        assertEquals(1, report.files());
+        assertEquals(1, events.size());
+        assertEquals(open.resolve("third"), events.get(0).file());
+        assertTrue(Files.exists(open.resolve("third.pdf")));
+        assertTrue(Files.exists(done.resolve("late")));
+
+        // задача завершена: следующий запуск обрабатывает все дерево
+        try (RestoreJournal journal = RestoreJournal.open(journalFile, root)) {
+            assertFalse(journal.isResumed());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestorePipelineTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() {
+        Expander.init();
+    }
+
+    @Test
+    void testRestoreWalksTheWholeTree() throws IOException {
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        Files.write(root.resolve("image"), new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47});
+        Files.write(nested.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(nested.resolve("garbage"), new byte[]{0x00, 0x01, 0x02, 0x03});
+
+        BatchReport report = new RestorePipeline(4, 2).restore(root);
+
+        assertEquals(3, report.files());
+        assertEquals(2, report.renamed());
+        assertEquals(1, report.unknown());
+        assertEquals(0, report.failed());
+        assertTrue(Files.exists(root.resolve("image.png")));
+        assertTrue(Files.exists(nested.resolve("document.pdf")));
+        assertTrue(Files.exists(nested.resolve("garbage")));
+    }
+
+    @Test
+    void testManyFilesPassThroughBoundedQueues() throws IOException {
+        for (int i = 0; i < 5000; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 7));
+            Files.write(directory.resolve("f" + i), new byte[]{0x25, 0x50, 0x44, 0x46});
+        }
+        List<RestoreEvent> events = new CopyOnWriteArrayList<>();
+        RestorePipeline pipeline = new RestorePipeline(3, 1);
+        pipeline.setDryRun(true);
+        pipeline.setListener(events::add);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(5000, report.files());
+        assertEquals(5000, report.renamed());
+        assertEquals(5000, events.size());
+        assertTrue(events.stream().allMatch(event -> event.status() == RestoreEvent.Status.PLANNED));
+        assertTrue(Files.exists(root.resolve("d0").resolve("f0")));
+    }
+
+    @Test
+    void testListingsAreReleasedWithTheirDirectories() throws IOException {
+        for (int i = 0; i < 500; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 50));
+            Files.write(directory.resolve("f" + i), new byte[]{0x25, 0x50, 0x44, 0x46});
+        }
+        RestorePipeline pipeline = new RestorePipeline(2, 2);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(500, report.renamed());
+        assertTrue(Files.exists(root.resolve("d0").resolve("f0.pdf")));
+        assertEquals(0, pipeline.listedNames());
+    }
+
+    @Test
+    void testExistingTargetIsNotOverwritten() throws IOException {
+        Files.write(root.resolve("document"), new byte[]{0x25, 0x50, 0x44, 0x46});
+        Files.write(root.resolve("document.pdf"), new byte[]{1});
+
+        BatchReport report = new RestorePipeline(2, 2).restore(root);
+
+        assertEquals(1, report.failed());
+        assertTrue(Files.exists(root.resolve("document")));
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(root.resolve("document.pdf")));
+    }
+
+    @Test
+    void testCancelledPipelineStops() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            Files.write(root.resolve("f" + i), new byte[]{0x25, 0x50, 0x44, 0x46});
+        }
+        RestorePipeline pipeline = new RestorePipeline(2, 2);
+        pipeline.cancel();
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(0, report.files());
+        assertTrue(Files.exists(root.resolve("f0")));
+    }
+
+    private static byte[] pdf(int size, int seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        System.arraycopy(new byte[]{0x25, 0x50, 0x44, 0x46}, 0, content, 0, 4);
+        return content;
+    }
+
+    @Test
+    void testDuplicatesAreSkipped() throws IOException {
+        byte[] large = pdf(3 << 20, 1);
+        Files.write(root.resolve("a"), large);
+        Files.write(Files.createDirectories(root.resolve("copy")).resolve("b"), large);
+        Files.write(root.resolve("c"), pdf(3 << 20, 2));
+        List<RestoreEvent> events = new CopyOnWriteArrayList<>();
+        RestorePipeline pipeline = new RestorePipeline(2, 2);
+        pipeline.setDuplicates(RestorePipeline.Duplicates.SKIP);
+        pipeline.setListener(events::add);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(3, report.files());
+        assertEquals(2, report.renamed());
+        assertEquals(1, report.duplicates());
+        assertTrue(Files.exists(root.resolve("c.pdf")));
+        assertTrue(Files.exists(root.resolve("a.pdf")) != Files.exists(root.resolve("copy").resolve("b.pdf")));
+        RestoreEvent duplicate = events.stream()
+                .filter(event -> event.status() == RestoreEvent.Status.DUPLICATE).findFirst().orElseThrow();
+        assertTrue(Files.exists(duplicate.file()));
+        assertTrue(Files.exists(duplicate.target()));
+    }
+
+    @Test
+    void testDuplicatesAreLinked() throws IOException {
+        byte[] content = pdf(1000, 3);
+        Files.write(root.resolve("a"), content);
+        Files.write(root.resolve("b"), content);
+        Files.write(root.resolve("c"), content);
+        RestorePipeline pipeline = new RestorePipeline(2, 1);
+        pipeline.setDuplicates(RestorePipeline.Duplicates.LINK);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(1, report.renamed());
+        assertEquals(2, report.duplicates());
+        assertEquals(0, report.failed());
+        for (String name : new String[]{"a", "b", "c"}) {
+            assertFalse(Files.exists(root.resolve(name)));
+            assertArrayEquals(content, Files.readAllBytes(root.resolve(name + ".pdf")));
+        }
+        assertTrue(Files.isSameFile(root.resolve("a.pdf"), root.resolve("b.pdf")));
+        assertTrue(Files.isSameFile(root.resolve("a.pdf"), root.resolve("c.pdf")));
+    }
+
+    @Test
+    void testManyDuplicatesWaitForComparison() throws IOException {
+        byte[] content = pdf(10_000, 5);
+        for (int i = 0; i < 300; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 3));
+            Files.write(directory.resolve("f" + i), content);
+        }
+        RestorePipeline pipeline = new RestorePipeline(3, 2);
+        pipeline.setDuplicates(RestorePipeline.Duplicates.LINK);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(1, report.renamed());
+        assertEquals(299, report.duplicates());
+        assertEquals(0, report.failed());
+        assertTrue(Files.isSameFile(root.resolve("d0").resolve("f0.pdf"), root.resolve("d2").resolve("f299.pdf")));
+        assertEquals(0, pipeline.listedNames());
+    }
+
+    @Test
+    void testDuplicatesInDryRunChangeNothing() throws IOException {
+        Files.write(root.resolve("a"), pdf(100, 4));
+        Files.write(root.resolve("b"), pdf(100, 4));
+        RestorePipeline pipeline = new RestorePipeline(2, 2);
+        pipeline.setDuplicates(RestorePipeline.Duplicates.LINK);
+        pipeline.setDryRun(true);
+
+        BatchReport report = pipeline.restore(root);
+
+        assertEquals(1, report.renamed());
+        assertEquals(1, report.duplicates());
+        assertTrue(Files.exists(root.resolve("a")));
+        assertTrue(Files.exists(root.resolve("b")));
+    }
+
+    @Test
+    void testThreadsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RestorePipeline(0));
+        assertThrows(IllegalArgumentException.class, () -> new RestorePipeline(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RestorePipeline(1).restore(root.resolve("missing")));
+    }
+}
@@ -0,0 +1,215 @@
+package project.extensions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочная проверка параллельного восстановления: один набор из
+ * {@link StressCorpus} восстанавливается каждым механизмом при разном
+ * количестве потоков, и после каждого запуска результат сравнивается с
+ * последовательным определением типов. Скорость каждого запуска дописывается в
+ * CSV-файл.
+ *
+ * <p>Размер проверки задается системными свойствами: {@code expander.stress.files}
+ * (количество файлов, по умолчанию 2000), {@code expander.stress.threads}
+ * (количества потоков через запятую, по умолчанию 1,2,4,8),
+ * {@code expander.stress.zip} (размер большого архива в мегабайтах, по умолчанию 8)
+ * и {@code expander.stress.csv} (файл результатов, по умолчанию
+ * {@code target/stress-throughput.csv}).</p>
+ */
+class RestoreStressTest {
+
+    private static final int FILES = Integer.getInteger("expander.stress.files", 2000);
+    private static final String THREADS = System.getProperty("expander.stress.threads", "1,2,4,8");
+    private static final int ZIP_MEGABYTES = Integer.getInteger("expander.stress.zip", 8);
+    private static final Path CSV = Path.of(System.getProperty("expander.stress.csv", "target/stress-throughput.csv"));
+
+    @TempDir
+    Path root;
+
+    private StressCorpus corpus;
+
+    /**
+     * Ожидаемое новое имя каждого файла по исходному пути.
+     */
+    private Map<Path, Path> expected;
+
+    /**
+     * Файлы, которые должны остаться на месте из-за ошибки переименования.
+     */
+    private int expectedFailures;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Expander.init();
+        corpus = new StressCorpus(root, 16);
+        corpus.signatures(2);
+        corpus.truncated();
+        corpus.zip("large-document", (long) ZIP_MEGABYTES << 20);
+        corpus.collisions(FILES / 100 + 1, 3);
+        corpus.dotted(FILES / 200 + 1);
+        corpus.fill(FILES);
+        expected = expectedTargets();
+    }
+
+    @Test
+    void testBatchRestorerScales() throws IOException {
+        run("batch", BatchRestorer::new);
+    }
+
+    @Test
+    void testPipelineScales() throws IOException {
+        run("pipeline", RestorePipeline::new);
+    }
+
+    /**
+     * Восстанавливает набор при каждом количестве потоков и проверяет результат.
+     */
+    private void run(String engine, IntFunction<Restorer> factory) throws IOException {
+        double single = 0;
+        for (int threads : threads()) {
+            Queue<RestoreEvent> events = new ConcurrentLinkedQueue<>();
+            Restorer restorer = factory.apply(threads);
+            restorer.setListener(events::add);
+
+            BatchReport report = restorer.restore(root);
+
+            String run = engine + " with " + threads + " threads";
+            Map<Path, RestoreEvent.Status> statuses = new HashMap<>();
+            for (RestoreEvent event : events) {
+                assertNull(statuses.put(event.file(), event.status()), run + ": two events for " + event.file());
+            }
+            verify(run, report, statuses);
+            double filesPerSecond = report.filesPerSecond();
+            if (single == 0) {
+                single = filesPerSecond;
+            }
+            record(engine, threads, report, filesPerSecond / single);
+            corpus.reset();
+        }
+    }
+
+    /**
+     * Сравнивает состояние директории и отчет с ожидаемыми.
+     */
+    private void verify(String run, BatchReport report, Map<Path, RestoreEvent.Status> statuses) throws IOException {
+        Map<Long, Path> originals = corpus.originals();
+        Map<Path, Long> snapshot = corpus.snapshot();
+        assertEquals(originals.size(), snapshot.size(), run + ": files were lost or created");
+
+        Map<Path, Path> actual = new HashMap<>();
+        snapshot.forEach((path, hash) -> {
+            Path original = originals.get(hash);
+            assertNotNull(original, run + ": unexpected content in " + path);
+            assertNull(actual.put(original, path), run + ": content of " + original + " appears twice");
+        });
+
+        int renamed = 0;
+        Map<Path, List<Path>> contenders = new HashMap<>();
+        for (Map.Entry<Path, Path> entry : expected.entrySet()) {
+            Path original = entry.getKey();
+            Path target = entry.getValue();
+            Path result = actual.get(original);
+            if (result.equals(target)) {
+                renamed += target.equals(original) ? 0 : 1;
+            } else {
+                assertEquals(original, result, run + ": " + original + " was renamed to " + result);
+                contenders.computeIfAbsent(target, key -> new ArrayList<>()).add(original);
+            }
+        }
+        // из группы файлов с одним новым именем переименован ровно один, если имя не было занято
+        for (Map.Entry<Path, List<Path>> entry : contenders.entrySet()) {
+            assertTrue(Files.exists(entry.getKey()), run + ": nothing was renamed to " + entry.getKey());
+            for (Path loser : entry.getValue()) {
+                assertEquals(RestoreEvent.Status.FAILED, statuses.get(loser), run + ": status of " + loser);
+            }
+        }
+        int failed = contenders.values().stream().mapToInt(List::size).sum();
+        assertEquals(expectedFailures, failed, run + ": files left in place");
+
+        assertEquals(originals.size(), report.files(), run + ": files in the report");
+        assertEquals(statuses.size(), report.files(), run + ": events");
+        assertEquals(failed, report.failed(), run + ": failures in the report");
+        assertEquals(report.files(), report.renamed() + report.unknown() + report.failed() + report.duplicates(),
+                run + ": report totals");
+        long moved = statuses.entrySet().stream()
+                .filter(entry -> entry.getValue() == RestoreEvent.Status.RENAMED)
+                .filter(entry -> !actual.get(entry.getKey()).equals(entry.getKey()))
+                .count();
+        assertEquals(renamed, moved, run + ": renamed files");
+    }
+
+    /**
+     * Определяет новые имена файлов последовательно, по одному файлу. Файлы,
+     * претендующие на одно имя, ожидают это имя; сколько из них останется на
+     * месте, запоминается в {@link #expectedFailures}.
+     */
+    private Map<Path, Path> expectedTargets() throws IOException {
+        Map<Path, Path> targets = new HashMap<>();
+        Map<Path, Integer> claims = new HashMap<>();
+        for (Path path : corpus.originals().values()) {
+            String extension = Expander.detectExtension(path.toFile());
+            Path target = extension == null ? path : Expander.targetFile(path.toFile(), extension).toPath();
+            targets.put(path, target);
+            if (!target.equals(path)) {
+                claims.merge(target, 1, Integer::sum);
+            }
+        }
+        Set<Path> staying = new HashSet<>();
+        targets.forEach((path, target) -> {
+            if (target.equals(path)) {
+                staying.add(path);
+            }
+        });
+        expectedFailures = 0;
+        for (Map.Entry<Path, Integer> claim : claims.entrySet()) {
+            Path target = claim.getKey();
+            if (targets.containsKey(target)) {
+                // занятое имя: файл на нем не должен переименовываться, иначе результат зависит от порядка
+                assertTrue(staying.contains(target), "the corpus contains a rename chain through " + target);
+                expectedFailures += claim.getValue();
+            } else {
+                expectedFailures += claim.getValue() - 1;
+            }
+        }
+        return targets;
+    }
+
+    private static int[] threads() {
+        return Arrays.stream(THREADS.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Дописывает строку результатов в CSV-файл.
+     */
+    private void record(String engine, int threads, BatchReport report, double speedup) throws IOException {
+        Path parent = CSV.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        boolean header = !Files.exists(CSV);
+        String line = String.format(Locale.ROOT, "%s%s,%d,%d,%.1f,%d,%.0f,%.2f%n",
+                header ? "engine,threads,files,megabytes,millis,files_per_second,speedup" + System.lineSeparator() : "",
+                engine, threads, report.files(), corpus.bytes() / 1e6, report.elapsedNanos() / 1_000_000,
+                report.filesPerSecond(), speedup);
+        Files.writeString(CSV, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
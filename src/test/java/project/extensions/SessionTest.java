@@ -0,0 +1,107 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSessionsAreIndependent() throws IOException {
+        Path first = Files.createDirectory(directory.resolve("first"));
+        Path second = Files.createDirectory(directory.resolve("second"));
+        Files.createFile(first.resolve("a"));
+        Files.createFile(second.resolve("b"));
+        Path defaultPath = Position.getPath();
+
+        Session one = new Session(first);
+        Session two = new Session(second);
+        File a = one.select("a");
+        two.select("b");
+
+        assertEquals(first.resolve("a").toFile(), a);
+        assertEquals(second.resolve("b").toFile(), two.getFile());
+        assertThrows(RuntimeException.class, () -> one.select("b"));
+        assertEquals(a, one.getFile(), "a failed selection must keep the previous one");
+
+        new Position(one).changePath("..");
+        assertEquals(directory, one.getPath());
+        assertEquals(second, two.getPath());
+        assertEquals(defaultPath, Position.getPath(), "the default session must not change");
+    }
+
+    @Test
+    void testChangePathErrors() {
+        Session session = new Session(directory);
+        assertThrows(IllegalArgumentException.class, () -> session.changePath("missing"));
+        assertEquals(directory, session.getPath());
+        assertThrows(IllegalArgumentException.class, () -> new Session(directory.getRoot()).changePath(".."));
+    }
+
+    @Test
+    void testConcurrentSessions() throws Exception {
+        int threads = 8;
+        List<Path> directories = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Path child = Files.createDirectories(directory.resolve("d" + i).resolve("child"));
+            Files.createFile(child.resolve("file" + i));
+            directories.add(child.getParent());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    Session session = new Session(directories.get(index));
+                    for (int j = 0; j < 1000; j++) {
+                        session.changePath("child");
+                        assertEquals("file" + index, session.select("file" + index).getName());
+                        session.changePath("..");
+                        assertEquals(directories.get(index), session.getPath());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSnapshotKeepsTheSelectionOfTheCommand() throws IOException {
+        Files.createFile(directory.resolve("a"));
+        Files.createFile(directory.resolve("b"));
+        Session session = new Session(directory);
+        File a = session.select("a");
+
+        Session snapshot = session.snapshot();
+        // пока фоновая команда работает со снимком, пользователь выбирает другой файл
+        File b = session.select("b");
+        assertEquals(a, snapshot.getFile());
+        snapshot.setFile(directory.resolve("a.pdf").toFile());
+
+        assertFalse(session.replaceFile(a, snapshot.getFile()));
+        assertEquals(b, session.getFile());
+        assertTrue(session.replaceFile(b, snapshot.getFile()));
+        assertEquals(directory.resolve("a.pdf").toFile(), session.getFile());
+    }
+}
@@ -0,0 +1,105 @@
+package project.extensions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureDatabaseTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        Expander.init();
+    }
+
+    private static SignatureTrie compile(String text) throws IOException {
+        return SignatureTrie.compile(SignatureDatabase.parse(new StringReader(text), "test"));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void testSecondaryChecksResolveRiff() throws IOException {
+        SignatureTrie trie = compile("version 1\n"
+                + "webp 20 0:52494646 8:57454250\n"
+                + "wav  20 0:52494646 8:57415645\n");
+
+        assertEquals("webp", trie.match(ascii("RIFF\0\0\0\0WEBPVP8 "), 16));
+        assertEquals("wav", trie.match(ascii("RIFF\1\2\3\4WAVEfmt "), 16));
+        assertNull(trie.match(ascii("RIFF\0\0\0\0AVI LIST"), 16));
+    }
+
+    @Test
+    void testOffsetAndPriority() throws IOException {
+        SignatureTrie trie = compile("version 1\n"
+                + "mp4 10 4:66747970\n"
+                + "mov 20 4:6674797071742020\n");
+
+        assertEquals("mp4", trie.match(ascii("\0\0\0\u0018ftypisom"), 12));
+        assertEquals("mov", trie.match(ascii("\0\0\0\u0014ftypqt  "), 12));
+        assertNull(trie.match(ascii("ftypisom"), 8));
+    }
+
+    @Test
+    void testMasksAndWildcards() throws IOException {
+        SignatureTrie trie = compile("version 1\n"
+                + "# MPEG audio frame sync: 11 set bits\n"
+                + "mp3 5 0:FFE0/FFE0\n"
+                + "any 1 0:41??43\n");
+
+        assertEquals("mp3", trie.match(new byte[]{(byte) 0xFF, (byte) 0xFB, 0x00}, 3));
+        assertEquals("mp3", trie.match(new byte[]{(byte) 0xFF, (byte) 0xE3, 0x00}, 3));
+        assertNull(trie.match(new byte[]{(byte) 0xFF, (byte) 0x13, 0x00}, 3));
+        assertEquals("any", trie.match(ascii("AXC"), 3));
+    }
+
+    @Test
+    void testBundledDatabaseCoversOriginalTypes() throws IOException {
+        List<Signature> signatures = SignatureDatabase.bundled().signatures();
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+
+        assertEquals("png", trie.match(new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47}, 4));
+        assertEquals("bmp", trie.match(new byte[]{0x42, 0x4D, 0x00, 0x00}, 4));
+        assertEquals("mp3", trie.match(new byte[]{0x49, 0x44, 0x33, 0x04}, 4));
+        assertEquals("zip", trie.match(new byte[]{0x50, 0x4B, 0x03, 0x04}, 4));
+        assertNull(trie.match(ascii("RIFF\0\0\0\0"), 8));
+    }
+
+    @Test
+    void testInvalidFiles() {
+        assertThrows(IllegalArgumentException.class, () -> compile("png 10 0:89504E47\n"));
+        assertThrows(IllegalArgumentException.class, () -> compile("version 2\n"));
+        assertThrows(IllegalArgumentException.class, () -> compile("version 1\npng 10 0:89504E4\n"));
+        assertThrows(IllegalArgumentException.class, () -> compile("version 1\npng x 0:89504E47\n"));
+        assertThrows(IllegalArgumentException.class, () -> compile("version 1\nbad 1 0:4142 1:43\n"));
+    }
+
+    @Test
+    void testExternalDatabaseIsReloadedWhenChanged() throws IOException {
+        Path database = Files.writeString(directory.resolve("signatures.db"), "version 1\nfoo 1 0:CAFE\n");
+        Path file = Files.write(directory.resolve("file"), new byte[]{(byte) 0xCA, (byte) 0xFE, 0x00});
+
+        Expander.loadSignatures(database);
+        assertEquals("foo", Expander.detectExtension(file.toFile()));
+        assertFalse(Expander.reloadSignatures());
+
+        Files.writeString(database, "version 1\nbar 1 0:CAFE\n");
+        Files.setLastModifiedTime(database, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertTrue(Expander.reloadSignatures());
+        assertEquals("bar", Expander.detectExtension(file.toFile()));
+    }
+}
@@ -0,0 +1,97 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureIndexTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    void testShortSignaturesAreResolvedWithoutTheTree() {
+        Map<String, List<String>> signatures = new LinkedHashMap<>();
+        signatures.put("bmp", List.of("42 4D"));
+        signatures.put("mp3", List.of("49 44 33"));
+        signatures.put("png", List.of("89 50 4E 47"));
+        signatures.put("long", List.of("42 4D 00 00 01"));
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+        SignatureIndex index = SignatureIndex.build(List.of(
+                Signature.exact("bmp", bytes(0x42, 0x4D)),
+                Signature.exact("mp3", bytes(0x49, 0x44, 0x33)),
+                Signature.exact("png", bytes(0x89, 0x50, 0x4E, 0x47)),
+                Signature.exact("long", bytes(0x42, 0x4D, 0x00, 0x00, 0x01))), trie);
+
+        assertEquals("png", index.type(index.find(bytes(0x89, 0x50, 0x4E, 0x47, 0x0D), 5)));
+        assertEquals("mp3", index.type(index.find(bytes(0x49, 0x44, 0x33, 0x03), 4)));
+        assertEquals("mp3", index.type(index.find(bytes(0x49, 0x44, 0x33), 3)));
+        assertEquals(SignatureIndex.NONE, index.find(bytes(0x89, 0x50, 0x4E, 0x00), 4));
+        assertEquals(SignatureIndex.NONE, index.find(bytes(0x00, 0x11, 0x22, 0x33), 4));
+        // "42 4D" может оказаться началом пятибайтовой сигнатуры: ее байты проверяются
+        assertEquals("bmp", index.type(index.find(bytes(0x42, 0x4D, 0x36, 0x00, 0x01), 5)));
+        assertEquals(SignatureIndex.DEFER, index.find(bytes(0x42, 0x4D, 0x00, 0x00, 0x01), 5));
+        assertEquals(SignatureIndex.DEFER, index.find(bytes(0x42), 1));
+        assertEquals("bmp", trie.match(bytes(0x42, 0x4D, 0x36, 0x00), 4));
+        assertEquals("long", trie.match(bytes(0x42, 0x4D, 0x00, 0x00, 0x01), 5));
+    }
+
+    @Test
+    void testLongerSignaturesAreChecked() {
+        List<Signature> signatures = List.of(
+                Signature.exact("riff", bytes(0x52, 0x49, 0x46, 0x46)),
+                new Signature("webp", 1, bytes(0x52, 0x49, 0x46, 0x46, 0, 0, 0, 0, 0x57, 0x45, 0x42, 0x50),
+                        bytes(0xFF, 0xFF, 0xFF, 0xFF, 0, 0, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF)),
+                new Signature("any", 0, bytes(0x00, 0x00, 0x00, 0x18), bytes(0, 0, 0, 0xFF)));
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+        SignatureIndex index = SignatureIndex.build(signatures, trie);
+
+        assertEquals("riff", index.type(index.find(bytes(0x52, 0x49, 0x46, 0x46), 4)));
+        assertEquals("riff", index.type(index.find(bytes(0x52, 0x49, 0x46, 0x46, 1, 2, 3, 4, 0x41, 0x56, 0x49, 0x20), 12)));
+        assertEquals(SignatureIndex.DEFER,
+                index.find(bytes(0x52, 0x49, 0x46, 0x46, 1, 2, 3, 4, 0x57, 0x45, 0x42, 0x50), 12));
+        // сигнатура с маской проверяется при любых первых байтах
+        assertEquals(SignatureIndex.DEFER, index.find(bytes(0x12, 0x34, 0x56, 0x18), 4));
+        assertEquals(SignatureIndex.NONE, index.find(bytes(0x12, 0x34, 0x56, 0x19), 4));
+        assertEquals("webp", trie.match(bytes(0x52, 0x49, 0x46, 0x46, 1, 2, 3, 4, 0x57, 0x45, 0x42, 0x50), 12));
+        assertEquals("riff", trie.match(bytes(0x52, 0x49, 0x46, 0x46, 1, 2, 3, 4, 0x41, 0x56, 0x49, 0x20), 12));
+        assertEquals("any", trie.match(bytes(0x12, 0x34, 0x56, 0x18), 4));
+    }
+
+    @Test
+    void testAgreesWithTheTreeOnTheDatabase() {
+        Expander.init();
+        SignatureTrie trie = Expander.signatures().trie();
+        List<Signature> signatures = Expander.signatures().database().signatures();
+        Random random = new Random(7);
+        byte[] header = new byte[trie.maxLength() + 4];
+        for (int i = 0; i < 200_000; i++) {
+            random.nextBytes(header);
+            // начала сигнатур базы с изменением последнего байта и без
+            Signature signature = signatures.get(random.nextInt(signatures.size()));
+            int prefix = random.nextInt(signature.length() + 1);
+            for (int j = 0; j < prefix; j++) {
+                int mask = signature.mask()[j] & 0xFF;
+                header[j] = (byte) (signature.pattern()[j] & mask | header[j] & ~mask);
+            }
+            int length = random.nextInt(8) == 0 ? random.nextInt(5) : header.length;
+            String expected = trie.matchTree(header, length);
+            assertEquals(expected, trie.match(header, length), () -> Arrays.toString(header) + " " + length);
+            ByteBuffer buffer = ByteBuffer.wrap(header, 0, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(expected, trie.match(buffer), () -> Arrays.toString(header) + " " + length);
+        }
+    }
+}
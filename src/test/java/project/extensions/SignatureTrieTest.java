@@ -0,0 +1,72 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureTrieTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    void testMixedLengthSignatures() {
+        Map<String, List<String>> signatures = new LinkedHashMap<>();
+        signatures.put("bmp", List.of("42 4D"));
+        signatures.put("mp3", List.of("49 44 33"));
+        signatures.put("png", List.of("89 50 4E 47"));
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+
+        assertEquals(4, trie.maxLength());
+        assertEquals("bmp", trie.match(bytes(0x42, 0x4D, 0x36, 0x00), 4));
+        assertEquals("mp3", trie.match(bytes(0x49, 0x44, 0x33, 0x03), 4));
+        assertEquals("png", trie.match(bytes(0x89, 0x50, 0x4E, 0x47), 4));
+        assertNull(trie.match(bytes(0x89, 0x50, 0x4E, 0x00), 4));
+    }
+
+    @Test
+    void testLongestMatchWins() {
+        Map<String, List<String>> signatures = new LinkedHashMap<>();
+        signatures.put("short", List.of("AA BB"));
+        signatures.put("long", List.of("AA BB CC"));
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+
+        assertEquals("long", trie.match(bytes(0xAA, 0xBB, 0xCC, 0xDD), 4));
+        assertEquals("short", trie.match(bytes(0xAA, 0xBB, 0x00, 0x00), 4));
+    }
+
+    @Test
+    void testShortHeaderIsNotPadded() {
+        Map<String, List<String>> signatures = new LinkedHashMap<>();
+        signatures.put("pdf", List.of("25 50 44 46"));
+        signatures.put("zero", List.of("25 50 00 00"));
+        SignatureTrie trie = SignatureTrie.compile(signatures);
+
+        assertNull(trie.match(bytes(0x25, 0x50, 0x00, 0x00), 2));
+        assertNull(trie.match(new byte[0], 0));
+    }
+
+    @Test
+    void testAgreesWithLegacyLookup() {
+        Expander.init();
+        byte[] header = bytes(0x37, 0x7A, 0xBC, 0xAF);
+        SignatureTrie trie = SignatureTrie.compile(Map.of("7z", List.of("37 7A BC AF")));
+
+        assertEquals(Expander.legacyLookup(header), trie.match(header, header.length));
+    }
+
+    @Test
+    void testInvalidSignature() {
+        assertThrows(IllegalArgumentException.class,
+                () -> SignatureTrie.compile(Map.of("bad", List.of("123"))));
+    }
+}
@@ -0,0 +1,319 @@
+package project.extensions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Генератор больших наборов файлов для нагрузочных тестов восстановления.
+ *
+ * <p>Набор содержит файлы со всеми сигнатурами текущей базы, файлы короче
+ * четырех байтов, большой ZIP-архив, группы файлов, претендующих на одно новое
+ * имя, и имена с несколькими точками. Содержимое всех файлов различается, поэтому
+ * исходное имя файла можно найти по хешу содержимого: {@link #reset()} после
+ * восстановления возвращает файлам исходные имена, и один набор можно
+ * восстанавливать многократно. Генератор использует фиксированное зерно, поэтому
+ * одинаковые вызовы дают одинаковые наборы.</p>
+ */
+final class StressCorpus {
+
+    /**
+     * Заголовок, не подходящий ни к одной сигнатуре встроенной базы.
+     */
+    static final byte[] UNKNOWN = {0x00, 0x11, 0x22, 0x33};
+
+    private static final byte[] PNG = {(byte) 0x89, 0x50, 0x4E, 0x47};
+
+    /**
+     * Заголовки основных типов встроенной базы сигнатур и один нераспознаваемый.
+     */
+    private static final byte[][] HEADERS = {
+            PNG,
+            {0x50, 0x4B, 0x03, 0x04},
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0},
+            {0x52, 0x49, 0x46, 0x46, 0x00, 0x00, 0x00, 0x00, 0x57, 0x45, 0x42, 0x50},
+            {0x47, 0x49, 0x46, 0x38},
+            {0x25, 0x50, 0x44, 0x46},
+            {0x37, 0x7A, (byte) 0xBC, (byte) 0xAF},
+            {0x42, 0x4D, 0x36, 0x00},
+            UNKNOWN,
+    };
+
+    private final Path root;
+    private final int directories;
+    private final Random random = new Random(42);
+
+    /**
+     * Исходные пути файлов по хешу содержимого.
+     */
+    private final Map<Long, Path> originals = new LinkedHashMap<>();
+    private long bytes;
+    private long serial;
+
+    /**
+     * Конструктор класса.
+     *
+     * @param root директория набора
+     * @param directories количество поддиректорий, по которым распределяются файлы
+     */
+    StressCorpus(Path root, int directories) {
+        this.root = root;
+        this.directories = directories;
+    }
+
+    /**
+     * Создает по файлу на каждую сигнатуру текущей базы; байты под нулевой
+     * маской заполняются случайно.
+     *
+     * @param copies количество файлов на сигнатуру
+     * @throws IOException если не удалось записать файл
+     */
+    void signatures(int copies) throws IOException {
+        List<Signature> signatures = Expander.signatures().database().signatures();
+        for (int copy = 0; copy < copies; copy++) {
+            for (int i = 0; i < signatures.size(); i++) {
+                Signature signature = signatures.get(i);
+                byte[] header = new byte[signature.length()];
+                random.nextBytes(header);
+                for (int j = 0; j < header.length; j++) {
+                    byte mask = signature.mask()[j];
+                    header[j] = (byte) ((signature.pattern()[j] & mask) | (header[j] & ~mask));
+                }
+                write(directory(i).resolve("sig-" + signature.extension() + "-" + copy + "-" + i),
+                        body(header, 256));
+            }
+        }
+    }
+
+    /**
+     * Создает файлы короче четырех байтов: пустой файл и начала всех
+     * сигнатур длиной от одного до трех байтов.
+     *
+     * @throws IOException если не удалось записать файл
+     */
+    void truncated() throws IOException {
+        Set<String> written = new HashSet<>();
+        write(directory(0).resolve("short-empty"), new byte[0]);
+        int i = 0;
+        for (Signature signature : Expander.signatures().database().signatures()) {
+            for (int length = 1; length < 4 && length <= signature.length(); length++) {
+                byte[] content = Arrays.copyOf(signature.pattern(), length);
+                if (written.add(Arrays.toString(content))) {
+                    write(directory(i).resolve("short-" + i++), content);
+                }
+            }
+        }
+    }
+
+    /**
+     * Создает ZIP-архив документа Word из несжатых записей со случайными данными.
+     *
+     * @param name имя файла
+     * @param size приблизительный размер архива в байтах
+     * @throws IOException если не удалось записать архив
+     */
+    void zip(String name, long size) throws IOException {
+        Path file = directory(0).resolve(name);
+        byte[] data = new byte[1 << 20];
+        try (OutputStream output = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(output)) {
+            zip.setLevel(0);
+            for (long written = 0, i = 0; written < size; written += data.length, i++) {
+                random.nextBytes(data);
+                ZipEntry entry = new ZipEntry("media/image" + i + ".bin");
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(data);
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            zip.write("<document/>".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        record(file);
+    }
+
+    /**
+     * Создает файлы, претендующие на занятые имена: группы по {@code group}
+     * изображений PNG с разными расширениями, которые восстанавливаются в одно
+     * имя, и изображения, новое имя которых уже занято нераспознаваемым файлом.
+     *
+     * @param count количество групп каждого вида
+     * @param group размер группы
+     * @throws IOException если не удалось записать файл
+     */
+    void collisions(int count, int group) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path directory = directory(i);
+            for (int j = 0; j < group; j++) {
+                write(directory.resolve("same-" + i + "." + j), body(PNG, 64));
+            }
+            write(directory.resolve("taken-" + i), body(PNG, 64));
+            write(directory.resolve("taken-" + i + ".png"), body(UNKNOWN, 64));
+        }
+    }
+
+    /**
+     * Создает файлы с точками в именах: несколько точек, скрытые файлы,
+     * точка в конце, две точки подряд и пробелы.
+     *
+     * @param count количество файлов каждого вида
+     * @throws IOException если не удалось записать файл
+     */
+    void dotted(int count) throws IOException {
+        String[] names = {"report.2023.%d.bin", ".hidden-%d", "trailing-%d.", "double..dots-%d", "with space-%d.tmp"};
+        for (int i = 0; i < count; i++) {
+            for (String name : names) {
+                write(directory(i).resolve(String.format(name, i)), body(PNG, 128));
+            }
+        }
+    }
+
+    /**
+     * Дополняет набор файлами основных типов, в том числе файлами, у которых
+     * расширение уже правильное, до указанного общего количества.
+     *
+     * @param total общее количество файлов набора
+     * @throws IOException если не удалось записать файл
+     */
+    void fill(int total) throws IOException {
+        for (int i = originals.size(); i < total; i++) {
+            byte[] header = HEADERS[i % HEADERS.length];
+            String name = i % 10 == 0 && header == PNG ? "file-" + i + ".png" : "file-" + i;
+            write(directory(i).resolve(name), body(header, 512 + random.nextInt(4096)));
+        }
+    }
+
+    /**
+     * Возвращает исходные пути всех файлов по хешу содержимого.
+     *
+     * @return неизменяемое отображение
+     */
+    Map<Long, Path> originals() {
+        return Collections.unmodifiableMap(originals);
+    }
+
+    /**
+     * Возвращает общий размер файлов.
+     *
+     * @return размер в байтах
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Возвращает файлам исходные имена. Сначала все файлы не на своих местах
+     * получают временные имена, чтобы возврат не зависел от порядка.
+     *
+     * @throws IOException если не удалось прочитать или переименовать файл
+     */
+    void reset() throws IOException {
+        Map<Path, Path> moves = new HashMap<>();
+        for (Map.Entry<Path, Long> entry : snapshot().entrySet()) {
+            Path original = originals.get(entry.getValue());
+            if (original == null) {
+                throw new IllegalStateException("unexpected file " + entry.getKey());
+            }
+            if (!original.equals(entry.getKey())) {
+                Path temporary = entry.getKey().resolveSibling("reset-" + serial++ + ".tmp");
+                Files.move(entry.getKey(), temporary);
+                moves.put(temporary, original);
+            }
+        }
+        for (Map.Entry<Path, Path> move : moves.entrySet()) {
+            Files.move(move.getKey(), move.getValue());
+        }
+    }
+
+    /**
+     * Возвращает хеши содержимого всех файлов набора по текущим путям.
+     *
+     * @return хеши по путям
+     * @throws IOException если не удалось прочитать файл
+     */
+    Map<Path, Long> snapshot() throws IOException {
+        Map<Path, Long> snapshot = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    snapshot.put(path, hash(path));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Вычисляет хеш содержимого файла.
+     *
+     * @param path файл
+     * @return хеш
+     * @throws IOException если не удалось прочитать файл
+     */
+    static long hash(Path path) throws IOException {
+        XxHash64 hash = new XxHash64();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = Files.newInputStream(path)) {
+            for (int read; (read = input.read(buffer)) > 0; ) {
+                hash.update(buffer, 0, read);
+            }
+        }
+        return hash.digest();
+    }
+
+    private Path directory(int i) throws IOException {
+        return Files.createDirectories(root.resolve("d" + i % directories));
+    }
+
+    /**
+     * Возвращает содержимое из заголовка, порядкового номера файла и случайных байтов.
+     */
+    private byte[] body(byte[] header, int size) {
+        byte[] body = new byte[Math.max(size, header.length + 8)];
+        random.nextBytes(body);
+        System.arraycopy(header, 0, body, 0, header.length);
+        long number = originals.size();
+        for (int i = 0; i < 8; i++) {
+            body[header.length + i] = (byte) (number >>> (8 * i));
+        }
+        return body;
+    }
+
+    private void write(Path file, byte[] content) throws IOException {
+        Files.write(file, content);
+        record(file);
+    }
+
+    private void record(Path file) throws IOException {
+        if (originals.putIfAbsent(hash(file), file) != null) {
+            throw new IllegalStateException("duplicate content in " + file);
+        }
+        bytes += Files.size(file);
+    }
+}
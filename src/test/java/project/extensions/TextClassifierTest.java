@@ -0,0 +1,85 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextClassifierTest {
+
+    @TempDir
+    Path directory;
+
+    private static String classify(String text) {
+        return TextClassifier.classify(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testStructuredFormats() {
+        assertEquals("json", classify("{\"name\": \"value\", \"list\": [1, 2.5, true, null]}\n"));
+        assertEquals("json", classify("[{\"a\":1},\n{\"a\":2}]"));
+        assertEquals("json", classify("{\"a\":1}\n{\"a\":2}\n"));
+        assertEquals("xml", classify("<?xml version=\"1.0\"?>\n<root><item/></root>"));
+        assertEquals("xml", classify("<project>\n  <name>x</name>\n</project>\n"));
+        assertEquals("html", classify("<!DOCTYPE html>\n<html><body>hi</body></html>"));
+        assertEquals("svg", classify("<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\"></svg>"));
+        assertEquals("csv", classify("id,name,price\n1,apple,\"1,50\"\n2,pear,2\n"));
+        assertEquals("csv", classify("id;name\r\n1;apple\r\n2;pear"));
+        assertEquals("tsv", classify("id\tname\n1\tapple\n"));
+        assertEquals("py", classify("#!/usr/bin/env python3\nprint('hi')\n"));
+        assertEquals("sh", classify("#!/bin/bash\necho hi\n"));
+    }
+
+    @Test
+    void testPlainText() {
+        assertEquals("txt", classify("Просто текст.\nВторая строка, без таблицы.\nТретья строка\n"));
+        assertEquals("txt", classify("[INFO] started\n[INFO] finished\n"));
+        assertEquals("txt", classify("a,b\nc\n"));
+        assertEquals("txt", TextClassifier.classify(ByteBuffer.wrap("hello, world\r\n".getBytes(StandardCharsets.UTF_16))));
+        assertEquals("txt", TextClassifier.classify(ByteBuffer.wrap(
+                "plain ascii text in utf-16\n".getBytes(StandardCharsets.UTF_16LE))));
+    }
+
+    @Test
+    void testBinaryIsRejected() {
+        assertNull(TextClassifier.classify(ByteBuffer.wrap(new byte[0])));
+        assertNull(TextClassifier.classify(ByteBuffer.wrap(new byte[]{0x00, 0x01, 0x02, 0x03})));
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        assertNull(TextClassifier.classify(ByteBuffer.wrap(random)));
+        byte[] mostlyText = "some text with a few control bytes".getBytes(StandardCharsets.US_ASCII);
+        mostlyText[4] = 0x01;
+        assertNull(TextClassifier.classify(ByteBuffer.wrap(mostlyText)));
+    }
+
+    @Test
+    void testWindowIsBounded() {
+        StringBuilder csv = new StringBuilder();
+        while (csv.length() < TextClassifier.WINDOW * 4) {
+            csv.append("1,2,3\n");
+        }
+        csv.append("binary\0\0\0\0\0\0\0");
+        assertEquals("csv", classify(csv.toString()), "bytes after the window must not be inspected");
+    }
+
+    @Test
+    void testDetectionFallsBackToText() throws IOException {
+        Expander.init();
+        Path file = Files.writeString(directory.resolve("data"), "{\"recovered\": true}\n");
+        assertEquals("json", Expander.detectExtension(file.toFile()));
+
+        StringBuilder longText = new StringBuilder();
+        while (longText.length() < 10_000) {
+            longText.append("a line of a long text file\n");
+        }
+        Path text = Files.writeString(directory.resolve("text"), longText);
+        assertEquals("txt", Expander.detectExtension(text.toFile()));
+    }
+}
@@ -0,0 +1,57 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XxHash64Test {
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void testReferenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+        assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash(ascii("a")));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash(ascii("abc")));
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64.hash(ascii("Nobody inspects the spammish repetition")));
+    }
+
+    @Test
+    void testSeedChangesTheHash() {
+        byte[] data = ascii("Nobody inspects the spammish repetition");
+        XxHash64 seeded = new XxHash64(20141025);
+        seeded.update(data, 0, data.length);
+
+        assertNotEquals(XxHash64.hash(data), seeded.digest());
+    }
+
+    @Test
+    void testResultDoesNotDependOnChunks() {
+        byte[] data = new byte[10_000];
+        new Random(7).nextBytes(data);
+        long expected = XxHash64.hash(data);
+
+        for (int chunk : new int[]{1, 3, 31, 32, 33, 4096}) {
+            XxHash64 hash = new XxHash64();
+            for (int offset = 0; offset < data.length; offset += chunk) {
+                hash.update(data, offset, Math.min(chunk, data.length - offset));
+            }
+            assertEquals(expected, hash.digest(), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void testReset() {
+        XxHash64 hash = new XxHash64();
+        hash.update(ascii("garbage"), 0, 7);
+        hash.reset();
+        hash.update(ascii("abc"), 0, 3);
+
+        assertEquals(0x44BC2CF5AD770999L, hash.digest());
+    }
+}
@@ -0,0 +1,137 @@
+package project.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipCentralDirectoryTest {
+
+    @TempDir
+    Path directory;
+
+    private Path zip(String name, String comment, String... entries) throws IOException {
+        Path file = directory.resolve(name);
+        try (OutputStream output = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(output)) {
+            if (comment != null) {
+                zip.setComment(comment);
+            }
+            for (String entry : entries) {
+                zip.putNextEntry(new ZipEntry(entry));
+                if (entry.equals("[Content_Types].xml")) {
+                    zip.write(("<Types><Override PartName=\"/main.xml\" ContentType=\"application/"
+                            + "vnd.openxmlformats-officedocument.presentationml.presentation.main+xml\"/></Types>")
+                            .getBytes(StandardCharsets.UTF_8));
+                } else {
+                    zip.write(new byte[1024]);
+                }
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void testOoxmlEntryPlacedLast() throws IOException {
+        assertEquals("docx", ZipCentralDirectory.detect(zip("a", null, "media/1.bin", "media/2.bin", "word/document.xml")));
+        assertEquals("xlsx", ZipCentralDirectory.detect(zip("b", null, "xl/workbook.xml")));
+        assertEquals("pptx", ZipCentralDirectory.detect(zip("c", "comment", "docProps/app.xml", "ppt/slide1.xml")));
+    }
+
+    @Test
+    void testPlainZip() throws IOException {
+        assertEquals("zip", ZipCentralDirectory.detect(zip("plain", null, "readme.txt", "data/word.bin")));
+    }
+
+    @Test
+    void testContentTypesFallback() throws IOException {
+        assertEquals("pptx", ZipCentralDirectory.detect(zip("custom", null, "[Content_Types].xml", "main.xml")));
+    }
+
+    @Test
+    void testTruncatedArchiveHasNoDirectory() throws IOException {
+        Path file = zip("full", null, "media/1.bin", "word/document.xml");
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = Files.write(directory.resolve("truncated"), Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(ZipCentralDirectory.detect(truncated));
+        assertEquals("docx", Expander.detectZipFileType(truncated.toFile()));
+    }
+
+    @Test
+    void testPrependedData() throws IOException {
+        byte[] archive = Files.readAllBytes(zip("inner", null, "[Content_Types].xml", "main.xml"));
+        byte[] prefixed = new byte[archive.length + 100];
+        System.arraycopy(archive, 0, prefixed, 100, archive.length);
+        Path file = Files.write(directory.resolve("sfx"), prefixed);
+
+        assertEquals("pptx", ZipCentralDirectory.detect(file));
+    }
+
+    private Path mimetypeArchive(String name, String mimetype, boolean first) throws IOException {
+        Path file = directory.resolve(name);
+        byte[] content = mimetype.getBytes(StandardCharsets.US_ASCII);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            if (!first) {
+                zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+                zip.write(new byte[64]);
+            }
+            ZipEntry entry = new ZipEntry("mimetype");
+            if (first) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(entry);
+            zip.write(content);
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(new byte[1024]);
+        }
+        return file;
+    }
+
+    @Test
+    void testMimetypeEntry() throws IOException {
+        Path odt = mimetypeArchive("document", "application/vnd.oasis.opendocument.text", true);
+        assertEquals("odt", ZipCentralDirectory.detect(odt));
+        assertEquals("odt", Expander.detectZipFileTypeByStream(odt.toFile()));
+
+        Path ods = mimetypeArchive("sheet", "application/vnd.oasis.opendocument.spreadsheet", true);
+        assertEquals("ods", ZipCentralDirectory.detect(ods));
+
+        // mimetype не первая и сжата: тип определяется по центральному каталогу
+        Path epub = mimetypeArchive("book", "application/epub+zip", false);
+        assertEquals("epub", ZipCentralDirectory.detect(epub));
+        assertEquals("epub", Expander.detectZipFileTypeByStream(epub.toFile()));
+    }
+
+    @Test
+    void testJavaAndAndroidArchives() throws IOException {
+        Path jar = zip("library", null, "META-INF/MANIFEST.MF", "project/Main.class");
+        assertEquals("jar", ZipCentralDirectory.detect(jar));
+        assertEquals("jar", Expander.detectZipFileTypeByStream(jar.toFile()));
+
+        Path apk = zip("application", null, "META-INF/MANIFEST.MF", "res/layout.xml", "classes.dex");
+        assertEquals("apk", ZipCentralDirectory.detect(apk));
+        assertEquals("apk", Expander.detectZipFileTypeByStream(apk.toFile()));
+    }
+
+    @Test
+    void testXps() throws IOException {
+        assertEquals("xps", ZipCentralDirectory.detect(
+                zip("print", null, "_rels/.rels", "FixedDocumentSequence.fdseq", "Documents/1/FixedDocument.fdoc")));
+    }
+}